@@ -22,7 +22,7 @@ public class AllSharedStoriesReading extends Reading {
         setTitle(getResources().getString(R.string.all_shared_stories));
 
         // No sourceUserId since this is all shared stories. The sourceUsedId for each story will be used.
-        readingAdapter = new MixedFeedsReadingAdapter(getFragmentManager(), getContentResolver(), defaultFeedView, null);
+        readingAdapter = new MixedFeedsReadingAdapter(getFragmentManager(), defaultFeedView, null);
 
         getLoaderManager().initLoader(0, null, this);
     }
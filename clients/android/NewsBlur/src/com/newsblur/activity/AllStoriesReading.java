@@ -20,7 +20,7 @@ public class AllStoriesReading extends Reading {
         super.onCreate(savedInstanceBundle);
 
         setTitle(getResources().getString(R.string.all_stories_row_title));
-        readingAdapter = new MixedFeedsReadingAdapter(getFragmentManager(), getContentResolver(), defaultFeedView, null);
+        readingAdapter = new MixedFeedsReadingAdapter(getFragmentManager(), defaultFeedView, null);
         getLoaderManager().initLoader(0, null, this);
     }
 
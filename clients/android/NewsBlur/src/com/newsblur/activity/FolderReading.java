@@ -21,7 +21,7 @@ public class FolderReading extends Reading {
         folderName = getIntent().getStringExtra(Reading.EXTRA_FOLDERNAME);
         setTitle(folderName);       
 
-        readingAdapter = new MixedFeedsReadingAdapter(getFragmentManager(), getContentResolver(), defaultFeedView, null);
+        readingAdapter = new MixedFeedsReadingAdapter(getFragmentManager(), defaultFeedView, null);
 
         getLoaderManager().initLoader(0, null, this);
     }
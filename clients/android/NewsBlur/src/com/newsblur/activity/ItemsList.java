@@ -184,7 +184,7 @@ public abstract class ItemsList extends NbActivity implements StateChangedListen
         updateStoryOrderPreference(newValue);
         FeedUtils.clearReadingSession(); 
         itemListFragment.resetEmptyState();
-        itemListFragment.hasUpdated();
+        itemListFragment.restartLoader();
         itemListFragment.scrollToTop();
         getFirstStories();
     }
@@ -196,7 +196,7 @@ public abstract class ItemsList extends NbActivity implements StateChangedListen
         updateReadFilterPreference(newValue);
         FeedUtils.clearReadingSession(); 
         itemListFragment.resetEmptyState();
-        itemListFragment.hasUpdated();
+        itemListFragment.restartLoader();
         itemListFragment.scrollToTop();
         getFirstStories();
     }
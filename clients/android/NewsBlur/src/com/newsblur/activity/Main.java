@@ -1,7 +1,11 @@
 package com.newsblur.activity;
 
+import java.io.File;
+import java.io.IOException;
+
 import android.app.ActionBar;
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.app.DialogFragment;
@@ -23,6 +27,7 @@ import com.newsblur.fragment.FolderListFragment;
 import com.newsblur.fragment.LogoutDialogFragment;
 import com.newsblur.service.BootReceiver;
 import com.newsblur.service.NBSyncService;
+import com.newsblur.service.SyncTelemetry;
 import com.newsblur.util.AppConstants;
 import com.newsblur.util.FeedUtils;
 import com.newsblur.util.PrefsUtils;
@@ -96,6 +101,7 @@ public class Main extends NbActivity implements StateChangedListener, SwipeRefre
             feedbackItem.setTitle(feedbackItem.getTitle() + " (v" + PrefsUtils.getVersion(this) + ")");
         } else {
             feedbackItem.setVisible(false);
+            menu.findItem(R.id.menu_send_diagnostics).setVisible(false);
         }
 
 		return true;
@@ -131,10 +137,39 @@ public class Main extends NbActivity implements StateChangedListener, SwipeRefre
                 Log.wtf(this.getClass().getName(), "device cannot even open URLs to report feedback");
             }
             return true;
+        } else if (item.getItemId() == R.id.menu_send_diagnostics) {
+            sendDiagnostics();
+            return true;
         }
 		return super.onOptionsItemSelected(item);
 	}
 	
+    /**
+     * Writes the full sync diagnostics to a file, off the UI thread, and offers to share it.
+     */
+    private void sendDiagnostics() {
+        new AsyncTask<Void, Void, File>() {
+            @Override
+            protected File doInBackground(Void... arg) {
+                try {
+                    return SyncTelemetry.dumpToFile(Main.this);
+                } catch (IOException ioe) {
+                    Log.w(Main.this.getClass().getName(), "could not save sync diagnostics", ioe);
+                    return null;
+                }
+            }
+            @Override
+            protected void onPostExecute(File f) {
+                if (f == null) return;
+                Intent i = new Intent(Intent.ACTION_SEND);
+                i.setType("text/plain");
+                i.putExtra(Intent.EXTRA_SUBJECT, "NewsBlur Android sync diagnostics (v" + PrefsUtils.getVersion(Main.this) + ")");
+                i.putExtra(Intent.EXTRA_STREAM, Uri.fromFile(f));
+                startActivity(Intent.createChooser(i, getString(R.string.menu_send_diagnostics)));
+            }
+        }.execute();
+    }
+
 	@Override
 	public void changedState(StateFilter state) {
 		folderFeedList.changeState(state);
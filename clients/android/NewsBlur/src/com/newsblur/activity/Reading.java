@@ -30,6 +30,7 @@ import android.widget.SeekBar.OnSeekBarChangeListener;
 import android.widget.Toast;
 
 import com.newsblur.R;
+import com.newsblur.database.StoryWindowLoader;
 import com.newsblur.domain.Story;
 import com.newsblur.fragment.ReadingItemFragment;
 import com.newsblur.fragment.ShareDialogFragment;
@@ -193,7 +194,14 @@ public abstract class Reading extends NbActivity implements OnPageChangeListener
 
 	@Override
 	public Loader<Cursor> onCreateLoader(int loaderId, Bundle bundle) {
-        return dbHelper.getStoriesLoader(fs, currentState);
+        StoryWindowLoader window = dbHelper.getStoriesLoader(fs, currentState);
+        // the first window has to reach the story we are opening on
+        window.setPosition((pager == null) ? passedPosition : pager.getCurrentItem());
+        return window;
+    }
+
+    private StoryWindowLoader getStoryWindow() {
+        return (StoryWindowLoader) getLoaderManager().<Cursor>getLoader(0);
     }
 
 	@Override
@@ -336,7 +344,13 @@ public abstract class Reading extends NbActivity implements OnPageChangeListener
     private void updateCursor() {
         synchronized (STORIES_MUTEX) {
             try {
-                getLoaderManager().restartLoader(0, null, this);
+                StoryWindowLoader window = getStoryWindow();
+                if (window != null) {
+                    // only the stories near the current one need re-reading
+                    window.refresh();
+                } else {
+                    getLoaderManager().restartLoader(0, null, this);
+                }
             } catch (IllegalStateException ise) {
                 ; // our heavy use of async can race loader calls, which it will gripe about, but this
                  //  is only a refresh call, so dropping a refresh during creation is perfectly fine.
@@ -489,12 +503,22 @@ public abstract class Reading extends NbActivity implements OnPageChangeListener
      * is triggered, this method will be called again by the callback to ensure another
      * load is not needed and all latches are tripped.
      */
-    private void checkStoryCount(int position) {
+    private void checkStoryCount(final int position) {
         if (AppConstants.VERBOSE_LOG) {
             Log.d(this.getClass().getName(), String.format("story %d of %d selected, stopLoad: %b", position, stories.getCount(), stopLoading));
         }
+        // page in more stories from the DB as the pager nears the end of those loaded, which calls
+        // back here when done.  only once we near the end of those stored do we fetch more.
+        final StoryWindowLoader window = getStoryWindow();
+        if (window != null) {
+            runOnUiThread(new Runnable() {
+                public void run() {
+                    window.setPosition(position);
+                }
+            });
+        }
         // if the pager is at or near the number of stories loaded, check for more unless we know we are at the end of the list
-		if ((position + AppConstants.READING_STORY_PRELOAD) >= stories.getCount()) {
+		if (((window == null) || window.isComplete()) && ((position + AppConstants.READING_STORY_PRELOAD) >= stories.getCount())) {
 			triggerRefresh(position + AppConstants.READING_STORY_PRELOAD);
 		}
         
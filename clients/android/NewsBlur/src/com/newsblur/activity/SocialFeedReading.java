@@ -26,7 +26,7 @@ public class SocialFeedReading extends Reading {
 
         setTitle(getIntent().getStringExtra(EXTRA_USERNAME));
 
-        readingAdapter = new MixedFeedsReadingAdapter(getFragmentManager(), getContentResolver(), defaultFeedView, userId);
+        readingAdapter = new MixedFeedsReadingAdapter(getFragmentManager(), defaultFeedView, userId);
 
         getLoaderManager().initLoader(0, null, this);
     }
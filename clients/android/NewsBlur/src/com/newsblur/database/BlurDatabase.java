@@ -1,18 +1,53 @@
 package com.newsblur.database;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.util.Log;
 
 public class BlurDatabase extends SQLiteOpenHelper {
 
 	public final static String DB_NAME = "blur.db";
-	private final static int VERSION = 2;
+	/** The current schema version.  Any change to the schema must bump this and add a step to migrate(). */
+	private final static int VERSION = 11;
+	/** The oldest schema version we have migrations from.  Anything older is simply rebuilt. */
+	private final static int MIN_MIGRATABLE_VERSION = 2;
+
+	private static BlurDatabase Instance;
+
+    // the classifiers in this DB, shared by every helper using it
+    private final ClassifierCache classifierCache = new ClassifierCache();
 
 	public BlurDatabase(Context context) {
 		super(context, DB_NAME, null, VERSION);
+        // write-ahead logging lets readers carry on while a writer is busy, rather than waiting on it
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
 	}
 
+    /**
+     * The DB shared by everything in this process.  WAL only helps if readers and writers go
+     * through the same instance, and every extra instance is another set of connections.
+     */
+    public static synchronized BlurDatabase getInstance(Context context) {
+        if (Instance == null) {
+            Instance = new BlurDatabase(context.getApplicationContext());
+        }
+        return Instance;
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // older platforms can only switch WAL on via an already-open DB
+        if ((Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) && (!db.isReadOnly())) {
+            db.enableWriteAheadLogging();
+        }
+    }
+
 	@Override
 	public void onCreate(SQLiteDatabase db) {
 		db.execSQL(DatabaseConstants.FEED_SQL);
@@ -20,23 +55,52 @@ public class BlurDatabase extends SQLiteOpenHelper {
 		db.execSQL(DatabaseConstants.FOLDER_SQL);
 		db.execSQL(DatabaseConstants.USER_SQL);
 		db.execSQL(DatabaseConstants.STORY_SQL);
+        db.execSQL(DatabaseConstants.STORY_CONTENT_SQL);
+        db.execSQL(DatabaseConstants.STORY_SEARCH_SQL);
         db.execSQL(DatabaseConstants.STORY_TEXT_SQL);
 		db.execSQL(DatabaseConstants.COMMENT_SQL);
 		db.execSQL(DatabaseConstants.REPLY_SQL);
 		db.execSQL(DatabaseConstants.CLASSIFIER_SQL);
 		db.execSQL(DatabaseConstants.FEED_FOLDER_SQL);
 		db.execSQL(DatabaseConstants.SOCIALFEED_STORIES_SQL);
+        db.execSQL(DatabaseConstants.SOCIAL_RIVER_SQL);
         db.execSQL(DatabaseConstants.STARRED_STORIES_COUNT_SQL);
         db.execSQL(DatabaseConstants.ACTION_SQL);
+        db.execSQL(DatabaseConstants.SYNC_QUEUE_SQL);
+        for (String sql : DatabaseConstants.STORY_INDEX_SQL) {
+            db.execSQL(sql);
+        }
+        db.execSQL(DatabaseConstants.STORY_FEED_READ_SCORE_INDEX_SQL);
+        db.execSQL(DatabaseConstants.STORY_SEARCH_ID_INDEX_SQL);
+        db.execSQL(DatabaseConstants.SOCIAL_RIVER_INDEX_SQL);
+        db.execSQL(DatabaseConstants.STORY_TEXT_LAST_READ_INDEX_SQL);
+        db.execSQL(DatabaseConstants.CLASSIFIER_INDEX_SQL);
+        db.execSQL(DatabaseConstants.STORY_SCORE_TRIGGER_SQL);
+        db.execSQL(DatabaseConstants.STORY_UNREAD_COUNT_TRIGGER_SQL);
+        db.execSQL(DatabaseConstants.STORY_CONTENT_DELETE_TRIGGER_SQL);
+        db.execSQL(DatabaseConstants.STORY_SEARCH_DELETE_TRIGGER_SQL);
+        db.execSQL(DatabaseConstants.SOCIAL_RIVER_DELETE_TRIGGER_SQL);
 	}
-	
+
 	void dropAndRecreateTables() {
 		SQLiteDatabase db = getWritableDatabase();
+		dropTables(db);
+		onCreate(db);
+        classifierCache.clear();
+	}
+
+    ClassifierCache getClassifierCache() {
+        return classifierCache;
+    }
+
+	private static void dropTables(SQLiteDatabase db) {
 		String drop = "DROP TABLE IF EXISTS ";
 		db.execSQL(drop + DatabaseConstants.FEED_TABLE);
 		db.execSQL(drop + DatabaseConstants.SOCIALFEED_TABLE);
 		db.execSQL(drop + DatabaseConstants.FOLDER_TABLE);
 		db.execSQL(drop + DatabaseConstants.STORY_TABLE);
+        db.execSQL(drop + DatabaseConstants.STORY_CONTENT_TABLE);
+        db.execSQL(drop + DatabaseConstants.STORY_SEARCH_TABLE);
         db.execSQL(drop + DatabaseConstants.STORY_TEXT_TABLE);
 		db.execSQL(drop + DatabaseConstants.USER_TABLE);
 		db.execSQL(drop + DatabaseConstants.COMMENT_TABLE);
@@ -44,15 +108,160 @@ public class BlurDatabase extends SQLiteOpenHelper {
 		db.execSQL(drop + DatabaseConstants.CLASSIFIER_TABLE);
 		db.execSQL(drop + DatabaseConstants.FEED_FOLDER_MAP_TABLE);
 		db.execSQL(drop + DatabaseConstants.SOCIALFEED_STORY_MAP_TABLE);
+        db.execSQL(drop + DatabaseConstants.SOCIAL_RIVER_TABLE);
 		db.execSQL(drop + DatabaseConstants.STARRED_STORY_COUNT_TABLE);
 		db.execSQL(drop + DatabaseConstants.ACTION_TABLE);
-		
-		onCreate(db);
+		db.execSQL(drop + DatabaseConstants.SYNC_QUEUE_TABLE);
 	}
 
+    /**
+     * Brings an older schema up to date one version at a time.  This runs inside a single
+     * transaction, so a failed migration leaves the old schema intact.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int previousVersion, int nextVersion) {
-        // note: we drop all tables and recreate any time the schema changes on app upgrade
+        if (previousVersion < MIN_MIGRATABLE_VERSION) {
+            Log.i(this.getClass().getName(), "rebuilding DB from unsupported version " + previousVersion);
+            dropTables(db);
+            onCreate(db);
+            return;
+        }
+        for (int version = previousVersion + 1; version <= nextVersion; version++) {
+            Log.i(this.getClass().getName(), "migrating DB to version " + version);
+            migrate(db, version);
+        }
+    }
+
+    /**
+     * Migrates the schema from the version before the given one to the given one.
+     */
+    private static void migrate(SQLiteDatabase db, int version) {
+        switch (version) {
+        case 3:
+            // followup state for reading actions and persistent sync queues
+            if (!hasColumn(db, DatabaseConstants.ACTION_TABLE, DatabaseConstants.ACTION_DONE_REMOTE)) {
+                db.execSQL("ALTER TABLE " + DatabaseConstants.ACTION_TABLE + " ADD COLUMN " + DatabaseConstants.ACTION_DONE_REMOTE + " INTEGER DEFAULT 0");
+            }
+            if (!hasTable(db, DatabaseConstants.SYNC_QUEUE_TABLE)) {
+                db.execSQL(DatabaseConstants.SYNC_QUEUE_SQL);
+            }
+            // indices for story queries
+            for (String sql : DatabaseConstants.STORY_INDEX_SQL) {
+                db.execSQL(sql);
+            }
+            break;
+        case 4:
+            // unread counts kept up to date by trigger rather than by recounting.  the trigger has
+            // since come to depend on the stored score, so it is now created by the step to 6.
+            break;
+        case 5:
+            // story bodies move out of the stories table, to be loaded only when read.  the old
+            // column can't be dropped, so it is just emptied.
+            if (!hasTable(db, DatabaseConstants.STORY_CONTENT_TABLE)) {
+                db.execSQL(DatabaseConstants.STORY_CONTENT_SQL);
+            }
+            if (hasColumn(db, DatabaseConstants.STORY_TABLE, DatabaseConstants.STORY_CONTENT)) {
+                db.execSQL("INSERT OR REPLACE INTO " + DatabaseConstants.STORY_CONTENT_TABLE +
+                           " (" + DatabaseConstants.STORY_CONTENT_STORY_HASH + ", " + DatabaseConstants.STORY_CONTENT + ")" +
+                           " SELECT " + DatabaseConstants.STORY_HASH + ", " + DatabaseConstants.STORY_CONTENT +
+                           " FROM " + DatabaseConstants.STORY_TABLE +
+                           " WHERE " + DatabaseConstants.STORY_CONTENT + " IS NOT NULL");
+                db.execSQL("UPDATE " + DatabaseConstants.STORY_TABLE + " SET " + DatabaseConstants.STORY_CONTENT + " = NULL");
+            }
+            db.execSQL(DatabaseConstants.STORY_CONTENT_DELETE_TRIGGER_SQL);
+            break;
+        case 6:
+            // a stored, indexed intelligence score, which the unread count trigger now works from
+            if (!hasColumn(db, DatabaseConstants.STORY_TABLE, DatabaseConstants.STORY_SCORE)) {
+                db.execSQL("ALTER TABLE " + DatabaseConstants.STORY_TABLE + " ADD COLUMN " + DatabaseConstants.STORY_SCORE + " INTEGER");
+            }
+            db.execSQL("DROP TRIGGER IF EXISTS " + DatabaseConstants.STORY_UNREAD_COUNT_TRIGGER);
+            db.execSQL("UPDATE " + DatabaseConstants.STORY_TABLE + " SET " + DatabaseConstants.STORY_SCORE + " = " + DatabaseConstants.STORY_INTELLIGENCE_SCORE);
+            db.execSQL(DatabaseConstants.STORY_FEED_READ_SCORE_INDEX_SQL);
+            db.execSQL(DatabaseConstants.STORY_SCORE_TRIGGER_SQL);
+            db.execSQL(DatabaseConstants.STORY_UNREAD_COUNT_TRIGGER_SQL);
+            break;
+        case 7:
+            // a full-text index of stories.  stories already stored are left without a search ID,
+            // and the sync service adds them to the index over time.
+            if (!hasColumn(db, DatabaseConstants.STORY_TABLE, DatabaseConstants.STORY_SEARCH_ID)) {
+                db.execSQL("ALTER TABLE " + DatabaseConstants.STORY_TABLE + " ADD COLUMN " + DatabaseConstants.STORY_SEARCH_ID + " INTEGER");
+            }
+            if (!hasTable(db, DatabaseConstants.STORY_SEARCH_TABLE)) {
+                db.execSQL(DatabaseConstants.STORY_SEARCH_SQL);
+            }
+            db.execSQL(DatabaseConstants.STORY_SEARCH_ID_INDEX_SQL);
+            db.execSQL(DatabaseConstants.STORY_SEARCH_DELETE_TRIGGER_SQL);
+            break;
+        case 8:
+            // the timestamp indices gain the story ID, for paging story lists
+            db.execSQL("DROP INDEX IF EXISTS " + DatabaseConstants.STORY_FEED_TIMESTAMP_INDEX);
+            db.execSQL("DROP INDEX IF EXISTS " + DatabaseConstants.STORY_TIMESTAMP_INDEX);
+            for (String sql : DatabaseConstants.STORY_INDEX_SQL) {
+                db.execSQL(sql);
+            }
+            break;
+        case 9:
+            // a deduplicated social river, filled from the shares of stories already stored
+            if (!hasTable(db, DatabaseConstants.SOCIAL_RIVER_TABLE)) {
+                db.execSQL(DatabaseConstants.SOCIAL_RIVER_SQL);
+            }
+            db.execSQL(DatabaseConstants.SOCIAL_RIVER_INDEX_SQL);
+            db.execSQL(DatabaseConstants.SOCIAL_RIVER_FILL_SQL);
+            db.execSQL(DatabaseConstants.SOCIAL_RIVER_DELETE_TRIGGER_SQL);
+            break;
+        case 10:
+            // story texts keyed by hash, with what is needed to keep them to a budget.  the old
+            // table could hold several rows per hash, so its texts are copied over one per hash
+            // and counted as last read now, as there is no telling when they were.
+            String oldTable = DatabaseConstants.STORY_TEXT_TABLE + "_old";
+            db.execSQL("DROP TABLE IF EXISTS " + oldTable);
+            db.execSQL("ALTER TABLE " + DatabaseConstants.STORY_TEXT_TABLE + " RENAME TO " + oldTable);
+            db.execSQL(DatabaseConstants.STORY_TEXT_SQL);
+            db.execSQL("INSERT OR REPLACE INTO " + DatabaseConstants.STORY_TEXT_TABLE +
+                       " (" + DatabaseConstants.STORY_TEXT_STORY_HASH + ", " + DatabaseConstants.STORY_TEXT_STORY_TEXT + ", " +
+                       DatabaseConstants.STORY_TEXT_SIZE + ", " + DatabaseConstants.STORY_TEXT_LAST_READ + ")" +
+                       " SELECT " + DatabaseConstants.STORY_TEXT_STORY_HASH + ", " + DatabaseConstants.STORY_TEXT_STORY_TEXT + ", " +
+                       "LENGTH(CAST(" + DatabaseConstants.STORY_TEXT_STORY_TEXT + " AS BLOB)), " + System.currentTimeMillis() +
+                       " FROM " + oldTable +
+                       " WHERE " + DatabaseConstants.STORY_TEXT_STORY_HASH + " IS NOT NULL" +
+                       " AND " + DatabaseConstants.STORY_TEXT_STORY_TEXT + " IS NOT NULL");
+            db.execSQL("DROP TABLE " + oldTable);
+            db.execSQL(DatabaseConstants.STORY_TEXT_LAST_READ_INDEX_SQL);
+            break;
+        case 11:
+            // one row per classifier, so that a change can be written as just that row.  any
+            // duplicates left by the old delete-and-reinsert writes go first, keeping the newest.
+            db.execSQL("DELETE FROM " + DatabaseConstants.CLASSIFIER_TABLE + " WHERE rowid NOT IN" +
+                       " (SELECT MAX(rowid) FROM " + DatabaseConstants.CLASSIFIER_TABLE +
+                       " GROUP BY " + DatabaseConstants.CLASSIFIER_ID + ", " + DatabaseConstants.CLASSIFIER_TYPE + ", " + DatabaseConstants.CLASSIFIER_KEY + ")");
+            db.execSQL(DatabaseConstants.CLASSIFIER_INDEX_SQL);
+            break;
+        default:
+            throw new IllegalStateException("no migration defined to DB version " + version);
+        }
+    }
+
+    private static boolean hasTable(SQLiteDatabase db, String table) {
+        Cursor c = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name = ?", new String[]{table});
+        try {
+            return (c.getCount() > 0);
+        } finally {
+            c.close();
+        }
+    }
+
+    private static boolean hasColumn(SQLiteDatabase db, String table, String column) {
+        Cursor c = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            int nameIndex = c.getColumnIndexOrThrow("name");
+            while (c.moveToNext()) {
+                if (column.equals(c.getString(nameIndex))) return true;
+            }
+            return false;
+        } finally {
+            c.close();
+        }
     }
 
     public SQLiteDatabase getRO() {
@@ -4,8 +4,10 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.Loader;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import static android.database.DatabaseUtils.dumpCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.os.CancellationSignal;
@@ -21,6 +23,7 @@ import com.newsblur.domain.SocialFeed;
 import com.newsblur.domain.Story;
 import com.newsblur.domain.UserProfile;
 import com.newsblur.network.domain.StoriesResponse;
+import com.newsblur.service.SyncTelemetry;
 import com.newsblur.util.AppConstants;
 import com.newsblur.util.FeedSet;
 import com.newsblur.util.FeedUtils;
@@ -29,13 +32,20 @@ import com.newsblur.util.ReadingAction;
 import com.newsblur.util.ReadFilter;
 import com.newsblur.util.StateFilter;
 import com.newsblur.util.StoryOrder;
+import com.newsblur.util.StoryUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Utility class for executing DB operations on the local, private NB database.
@@ -45,41 +55,117 @@ import java.util.Set;
  */
 public class BlurDatabaseHelper {
 
-    // manual synchro isn't needed if you only use one DBHelper, but at present the app uses several
-    private final static Object RW_MUTEX = new Object();
+    // the DB runs in WAL mode, so readers never wait on this.  it only takes turns among writers,
+    // which SQLite would serialise anyway, but here we can see how long each one waited.
+    private final static ReentrantLock RW_LOCK = new ReentrantLock();
+
+    // times story texts were read, by hash, not yet written back.  reads are frequent and only
+    // matter to eviction, so they are saved with the next text write or cleanup instead.
+    private final static Map<String,Long> PENDING_TEXT_READS = new HashMap<String,Long>();
+
+    // scratch table for story cleanup, holding the timestamp below which each feed's read stories go
+    private final static String CLEANUP_CUTOFF_TABLE = "story_cleanup_cutoffs";
+    private final static String CLEANUP_CUTOFF = "cutoff";
+    public final static String CLEANUP_CUTOFF_TABLE_SQL = "CREATE TEMP TABLE " + CLEANUP_CUTOFF_TABLE + " (" +
+        DatabaseConstants.STORY_FEED_ID + " INTEGER PRIMARY KEY, " +
+        CLEANUP_CUTOFF + " INTEGER)";
+
+    // the columns of a social feed to story mapping, as written by insertStories()
+    private final static String[] SOCIAL_STORY_COLUMNS = {DatabaseConstants.SOCIALFEED_STORY_USER_ID, DatabaseConstants.SOCIALFEED_STORY_STORYID};
+    private final static String[] SOCIAL_RIVER_COLUMNS = {DatabaseConstants.SOCIAL_RIVER_STORY_ID, DatabaseConstants.SOCIAL_RIVER_TIMESTAMP};
+
+    // the columns of a story body, as written by insertStories()
+    private final static String[] STORY_CONTENT_COLUMNS = {DatabaseConstants.STORY_CONTENT_STORY_HASH, DatabaseConstants.STORY_CONTENT};
+
+    // column aliases for the unread count aggregates
+    private final static String COUNT_ID = "count_id";
+    private final static String COUNT_SCORE = "count_score";
+    private final static String COUNT_NEG = "count_neg";
+    private final static String COUNT_NEUT = "count_neut";
+    private final static String COUNT_POS = "count_pos";
 
     private Context context;
     private final BlurDatabase dbWrapper;
     private SQLiteDatabase dbRO;
     private SQLiteDatabase dbRW;
+    private BulkWriter bulkWriter;
 
     public BlurDatabaseHelper(Context context) {
+        this(context, BlurDatabase.getInstance(context));
+    }
+
+    /**
+     * Uses a specific DB rather than the one shared by the whole app, as tests do.
+     */
+    public BlurDatabaseHelper(Context context, BlurDatabase dbWrapper) {
         this.context = context;
-        dbWrapper = new BlurDatabase(context);
-        synchronized (RW_MUTEX) {
+        this.dbWrapper = dbWrapper;
+        lockRW();
+        try {
             dbRO = dbWrapper.getRO();
             dbRW = dbWrapper.getRW();
+            bulkWriter = new BulkWriter(dbRW);
+        } finally {
+            unlockRW();
         }
     }
 
     public void close() {
         // when asked to close, do so via an AsyncTask. This is so that (since becoming serial in android 4.0) 
-        // the closure will happen after other async tasks are done using the conn
+        // the closure will happen after other async tasks are done using the conn.  the DB itself is
+        // shared by every helper in the process and stays open, so only our own statements are released.
         new AsyncTask<Void, Void, Void>() {
             @Override
             protected Void doInBackground(Void... arg) {
-                synchronized (RW_MUTEX) {dbWrapper.close();}
+                lockRW();
+                try {
+                    bulkWriter.close();
+                } finally {
+                    unlockRW();
+                }
                 return null;
             }
         }.execute();
     }
 
+    /**
+     * Takes the write lock, noting how long we had to wait for it if it was held.
+     */
+    private static void lockRW() {
+        if (RW_LOCK.tryLock()) return;
+        long start = System.nanoTime();
+        RW_LOCK.lock();
+        SyncTelemetry.recordLockWait((System.nanoTime() - start) / 1000000L);
+    }
+
+    private static void unlockRW() {
+        RW_LOCK.unlock();
+    }
+
+    /**
+     * Between chunks of a long write transaction, commits what has been done so far and lets
+     * any other writer waiting on us have a turn, so that none of them waits on the whole job.
+     */
+    private void yieldRW() {
+        if (!RW_LOCK.hasQueuedThreads()) return;
+        dbRW.setTransactionSuccessful();
+        dbRW.endTransaction();
+        unlockRW();
+        lockRW();
+        dbRW.beginTransaction();
+    }
+
     public boolean isOpen() {
         return dbRW.isOpen();
     }
 
     public void dropAndRecreateTables() {
-        synchronized (RW_MUTEX) {dbWrapper.dropAndRecreateTables();}
+        lockRW();
+        try {
+            dbWrapper.dropAndRecreateTables();
+        } finally {
+            unlockRW();
+        }
     }
 
     public Set<String> getAllFeeds() {
@@ -94,114 +180,368 @@ public class BlurDatabaseHelper {
         return feedIds;
     }
 
-    private List<String> getAllSocialFeeds() {
-        String q1 = "SELECT " + DatabaseConstants.SOCIAL_FEED_ID +
-                    " FROM " + DatabaseConstants.SOCIALFEED_TABLE;
-        Cursor c = dbRO.rawQuery(q1, null);
-        List<String> feedIds = new ArrayList<String>(c.getCount());
+    /**
+     * Deletes old read stories: first any beyond the newest MAX_READ_STORIES_STORED read stories
+     * of each feed (or all of them, if old stories are not to be kept), and then, if the DB is
+     * still larger than the given budget, the oldest read stories of any feed until it fits.
+     *
+     * This is not one transaction.  The deletes are done in chunks, and if another writer is
+     * waiting, the chunks done so far are committed and it gets a turn, so a crash or a reader
+     * may see a cleanup half done.  That is safe, as each chunk only deletes read stories the
+     * policy says should go, and a cleanup that is cut short can simply be run again.
+     *
+     * @param maxBytes the storage budget for the DB, or zero for none.
+     * @return the number of stories deleted.
+     */
+    public int cleanupStories(boolean keepOldStories, long maxBytes) {
+        int keep = (keepOldStories ? AppConstants.MAX_READ_STORIES_STORED : 0);
+        int deleted = 0;
+        lockRW();
+        try {
+            dbRW.beginTransaction();
+            try {
+                deleted += trimReadStoriesPerFeed(keep);
+                if (maxBytes > 0) {
+                    deleted += trimReadStoriesToSize(maxBytes);
+                }
+                dbRW.setTransactionSuccessful();
+            } finally {
+                dbRW.endTransaction();
+            }
+        } finally {
+            unlockRW();
+        }
+        return deleted;
+    }
+
+    /**
+     * The ID of each feed with stories, and the timestamp of the oldest read story it may keep,
+     * or null if it has no more read stories than that.
+     */
+    public static String getCleanupCutoffsQuery(int keep) {
+        // found in one pass over the feed/timestamp index, rather than by sorting the read
+        // stories of each feed in turn
+        String readStoriesOfFeed = " FROM " + DatabaseConstants.STORY_TABLE + " s" +
+                                   " WHERE s." + DatabaseConstants.STORY_FEED_ID + " = f." + DatabaseConstants.STORY_FEED_ID +
+                                   " AND s." + DatabaseConstants.STORY_READ + " = 1";
+        String cutoff;
+        if (keep > 0) {
+            cutoff = "(SELECT s." + DatabaseConstants.STORY_TIMESTAMP + readStoriesOfFeed +
+                     " ORDER BY s." + DatabaseConstants.STORY_TIMESTAMP + " DESC" +
+                     " LIMIT 1 OFFSET " + (keep - 1) + ")";
+        } else {
+            cutoff = "(SELECT MAX(s." + DatabaseConstants.STORY_TIMESTAMP + ") + 1" + readStoriesOfFeed + ")";
+        }
+        return "SELECT f." + DatabaseConstants.STORY_FEED_ID + ", " + cutoff +
+               " FROM (SELECT DISTINCT " + DatabaseConstants.STORY_FEED_ID + " FROM " + DatabaseConstants.STORY_TABLE + ") f";
+    }
+
+    private int trimReadStoriesPerFeed(int keep) {
+        dbRW.execSQL("DROP TABLE IF EXISTS temp." + CLEANUP_CUTOFF_TABLE);
+        dbRW.execSQL(CLEANUP_CUTOFF_TABLE_SQL);
+        dbRW.execSQL("INSERT INTO " + CLEANUP_CUTOFF_TABLE + " " + getCleanupCutoffsQuery(keep));
+        // feeds with no more read stories than they may keep have nothing to trim
+        dbRW.delete(CLEANUP_CUTOFF_TABLE, CLEANUP_CUTOFF + " IS NULL", null);
+
+        List<String> feedIds = new ArrayList<String>();
+        Cursor c = dbRW.rawQuery("SELECT " + DatabaseConstants.STORY_FEED_ID + " FROM " + CLEANUP_CUTOFF_TABLE, null);
         while (c.moveToNext()) {
-           feedIds.add(c.getString(c.getColumnIndexOrThrow(DatabaseConstants.SOCIAL_FEED_ID)));
+            feedIds.add(c.getString(0));
         }
         c.close();
-        return feedIds;
+
+        int deleted = 0;
+        for (int i = 0; i < feedIds.size(); i += AppConstants.CLEANUP_FEED_CHUNK_SIZE) {
+            List<String> chunk = feedIds.subList(i, Math.min(feedIds.size(), i + AppConstants.CLEANUP_FEED_CHUNK_SIZE));
+            deleted += dbRW.delete(DatabaseConstants.STORY_TABLE, getCleanupStoriesSelection(chunk), null);
+            yieldRW();
+        }
+        dbRW.execSQL("DROP TABLE " + CLEANUP_CUTOFF_TABLE);
+        return deleted;
+    }
+
+    /**
+     * Selects the read stories of the given feeds that are older than their cutoff, once the
+     * cutoffs have been put in the table made by CLEANUP_CUTOFF_TABLE_SQL.
+     */
+    public static String getCleanupStoriesSelection(Collection<String> feedIds) {
+        return DatabaseConstants.STORY_READ + " = 1" +
+               " AND " + DatabaseConstants.STORY_FEED_ID + " IN (" + TextUtils.join(",", feedIds) + ")" +
+               " AND " + DatabaseConstants.STORY_TIMESTAMP + " < " +
+               "(SELECT " + CLEANUP_CUTOFF + " FROM " + CLEANUP_CUTOFF_TABLE + " c" +
+               " WHERE c." + DatabaseConstants.STORY_FEED_ID + " = " + DatabaseConstants.STORY_TABLE + "." + DatabaseConstants.STORY_FEED_ID + ")";
+    }
+
+    /**
+     * The IDs of the oldest read stories, one chunk's worth.
+     */
+    public static String getOldestReadStoriesQuery() {
+        return "SELECT " + DatabaseConstants.STORY_ID + " FROM " + DatabaseConstants.STORY_TABLE +
+               " WHERE " + DatabaseConstants.STORY_READ + " = 1" +
+               " ORDER BY " + DatabaseConstants.STORY_TIMESTAMP + " ASC" +
+               " LIMIT " + AppConstants.CLEANUP_STORY_CHUNK_SIZE;
     }
 
-    public void cleanupStories(boolean keepOldStories) {
-        for (String feedId : getAllFeeds()) {
-            String q = "DELETE FROM " + DatabaseConstants.STORY_TABLE + 
-                       " WHERE " + DatabaseConstants.STORY_ID + " IN " +
-                       "( SELECT " + DatabaseConstants.STORY_ID + " FROM " + DatabaseConstants.STORY_TABLE +
-                       " WHERE " + DatabaseConstants.STORY_READ + " = 1" +
-                       " AND " + DatabaseConstants.STORY_FEED_ID + " = " + feedId +
-                       " ORDER BY " + DatabaseConstants.STORY_TIMESTAMP + " DESC" +
-                       " LIMIT -1 OFFSET " + (keepOldStories ? AppConstants.MAX_READ_STORIES_STORED : 0) +
-                       ")";
-            synchronized (RW_MUTEX) {dbRW.execSQL(q);}
+    private int trimReadStoriesToSize(long maxBytes) {
+        String oldestRead = getOldestReadStoriesQuery();
+        String oldestReadHashes = "SELECT " + DatabaseConstants.STORY_HASH + " FROM " + DatabaseConstants.STORY_TABLE +
+                                  " WHERE " + DatabaseConstants.STORY_ID + " IN (" + oldestRead + ")";
+        int deleted = 0;
+        while (getStorageBytes() > maxBytes) {
+            dbRW.delete(DatabaseConstants.STORY_TEXT_TABLE, DatabaseConstants.STORY_TEXT_STORY_HASH + " IN (" + oldestReadHashes + ")", null);
+            int count = dbRW.delete(DatabaseConstants.STORY_TABLE, DatabaseConstants.STORY_ID + " IN (" + oldestRead + ")", null);
+            if (count < 1) break;
+            deleted += count;
+            yieldRW();
         }
+        return deleted;
     }
 
-    public void cleanupAllStories() {
-        synchronized (RW_MUTEX) {dbRW.delete(DatabaseConstants.STORY_TABLE, null, null);}
+    /**
+     * The space taken up by the DB, not counting pages that are free for re-use.
+     */
+    public long getStorageBytes() {
+        long usedPages = DatabaseUtils.longForQuery(dbRW, "PRAGMA page_count", null) -
+                         DatabaseUtils.longForQuery(dbRW, "PRAGMA freelist_count", null);
+        return usedPages * DatabaseUtils.longForQuery(dbRW, "PRAGMA page_size", null);
     }
 
-    public void cleanupStoryText() {
-        String q = "DELETE FROM " + DatabaseConstants.STORY_TEXT_TABLE +
-                   " WHERE " + DatabaseConstants.STORY_TEXT_STORY_HASH + " NOT IN " +
-                   "( SELECT " + DatabaseConstants.STORY_HASH + " FROM " + DatabaseConstants.STORY_TABLE +
-                   ")";
-        synchronized (RW_MUTEX) {dbRW.execSQL(q);}
+    public void cleanupAllStories() {
+        lockRW();
+        try {
+            dbRW.delete(DatabaseConstants.STORY_TABLE, null, null);
+        } finally {
+            unlockRW();
+        }
     }
 
-    public void cleanupFeedsFolders() {
-        synchronized (RW_MUTEX) {dbRW.delete(DatabaseConstants.FEED_TABLE, null, null);}
-        synchronized (RW_MUTEX) {dbRW.delete(DatabaseConstants.FOLDER_TABLE, null, null);}
-        synchronized (RW_MUTEX) {dbRW.delete(DatabaseConstants.FEED_FOLDER_MAP_TABLE, null, null);}
+    /**
+     * Deletes the texts of stories we no longer have, and then, if the rest take up more than
+     * the given budget, those least recently read until they fit.
+     *
+     * @return the number of texts deleted.
+     */
+    public int cleanupStoryText(long maxBytes) {
+        // one probe of the stories hash index per text, rather than reading every story hash
+        String orphaned = "NOT EXISTS (SELECT 1 FROM " + DatabaseConstants.STORY_TABLE +
+                          " WHERE " + DatabaseConstants.STORY_HASH + " = " + DatabaseConstants.STORY_TEXT_TABLE + "." + DatabaseConstants.STORY_TEXT_STORY_HASH + ")";
+        int deleted = 0;
+        lockRW();
+        try {
+            // so that eviction goes by what has really been read
+            writeStoryTextReads();
+            deleted += dbRW.delete(DatabaseConstants.STORY_TEXT_TABLE, orphaned, null);
+        } finally {
+            unlockRW();
+        }
+
+        long excess = DatabaseUtils.longForQuery(dbRO, "SELECT IFNULL(SUM(" + DatabaseConstants.STORY_TEXT_SIZE + "), 0) FROM " + DatabaseConstants.STORY_TEXT_TABLE, null) - maxBytes;
+        if (excess <= 0) return deleted;
+        // find how far into the eviction order the excess runs, then delete up to there.  texts
+        // fetched together share a time, so this may take a few more than strictly needed.
+        String q = "SELECT " + DatabaseConstants.STORY_TEXT_LAST_READ + ", " + DatabaseConstants.STORY_TEXT_SIZE +
+                   " FROM " + DatabaseConstants.STORY_TEXT_TABLE +
+                   " ORDER BY " + DatabaseConstants.STORY_TEXT_LAST_READ + " ASC";
+        long cutoff = 0L;
+        Cursor c = dbRO.rawQuery(q, null);
+        try {
+            while ((excess > 0) && c.moveToNext()) {
+                cutoff = c.getLong(0);
+                excess -= c.getLong(1);
+            }
+        } finally {
+            c.close();
+        }
+        lockRW();
+        try {
+            deleted += dbRW.delete(DatabaseConstants.STORY_TEXT_TABLE, DatabaseConstants.STORY_TEXT_LAST_READ + " <= ?", new String[]{Long.toString(cutoff)});
+        } finally {
+            unlockRW();
+        }
+        return deleted;
     }
 
     public void deleteFeed(String feedId) {
         String[] selArgs = new String[] {feedId};
-        synchronized (RW_MUTEX) {dbRW.delete(DatabaseConstants.FEED_TABLE, DatabaseConstants.FEED_ID + " = ?", selArgs);}
-        synchronized (RW_MUTEX) {dbRW.delete(DatabaseConstants.FEED_FOLDER_MAP_TABLE, DatabaseConstants.FEED_FOLDER_FEED_ID + " = ?", selArgs);}
-        synchronized (RW_MUTEX) {dbRW.delete(DatabaseConstants.STORY_TABLE, DatabaseConstants.STORY_FEED_ID + " = ?", selArgs);}
+        lockRW();
+        try {
+            dbRW.delete(DatabaseConstants.FEED_TABLE, DatabaseConstants.FEED_ID + " = ?", selArgs);
+            dbRW.delete(DatabaseConstants.FEED_FOLDER_MAP_TABLE, DatabaseConstants.FEED_FOLDER_FEED_ID + " = ?", selArgs);
+            dbRW.delete(DatabaseConstants.STORY_TABLE, DatabaseConstants.STORY_FEED_ID + " = ?", selArgs);
+        } finally {
+            unlockRW();
+        }
     }
 
-    private void bulkInsertValues(String table, List<ContentValues> valuesList) {
-        if (valuesList.size() < 1) return;
-        synchronized (RW_MUTEX) {
-            dbRW.beginTransaction();
+    /**
+     * Inserts or replaces rows via a prepared statement, committing every DB_WRITE_BATCH_SIZE
+     * rows so that others may use the DB in between.
+     */
+    private void bulkInsertRows(String table, String[] columns, List<? extends BulkWriter.Row> rows) {
+        for (int i = 0; i < rows.size(); i += AppConstants.DB_WRITE_BATCH_SIZE) {
+            List<? extends BulkWriter.Row> batch = rows.subList(i, Math.min(rows.size(), i + AppConstants.DB_WRITE_BATCH_SIZE));
+            lockRW();
             try {
-                for(ContentValues values: valuesList) {
-                    dbRW.insertWithOnConflict(table, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                dbRW.beginTransaction();
+                try {
+                    bulkWriter.write(table, columns, batch);
+                    dbRW.setTransactionSuccessful();
+                } finally {
+                    dbRW.endTransaction();
                 }
+            } finally {
+                unlockRW();
+            }
+        }
+    }
+
+    /**
+     * Brings the feed, folder, and social feed tables in line with the given values, touching
+     * only rows that actually differ.  All changes are made in a single transaction.
+     *
+     * @return the number of rows inserted, updated, or deleted.
+     */
+    public int updateFeedsFolders(List<ContentValues> feedValues,
+                                  List<ContentValues> folderValues,
+                                  List<ContentValues> ffmValues,
+                                  List<ContentValues> socialFeedValues) {
+        int touched = 0;
+        lockRW();
+        try {
+            dbRW.beginTransaction();
+            try {
+                touched += reconcileTable(DatabaseConstants.FEED_TABLE, new String[]{DatabaseConstants.FEED_ID}, feedValues);
+                touched += reconcileTable(DatabaseConstants.FOLDER_TABLE, new String[]{DatabaseConstants.FOLDER_NAME}, folderValues);
+                touched += reconcileTable(DatabaseConstants.FEED_FOLDER_MAP_TABLE, new String[]{DatabaseConstants.FEED_FOLDER_FOLDER_NAME, DatabaseConstants.FEED_FOLDER_FEED_ID}, ffmValues);
+                touched += reconcileTable(DatabaseConstants.SOCIALFEED_TABLE, new String[]{DatabaseConstants.SOCIAL_FEED_ID}, socialFeedValues);
                 dbRW.setTransactionSuccessful();
             } finally {
                 dbRW.endTransaction();
             }
+        } finally {
+            unlockRW();
         }
+        return touched;
     }
 
-    public void insertFeedsFolders(List<ContentValues> feedValues,
-                                   List<ContentValues> folderValues,
-                                   List<ContentValues> ffmValues,
-                                   List<ContentValues> socialFeedValues) {
-        bulkInsertValues(DatabaseConstants.FEED_TABLE, feedValues);
-        bulkInsertValues(DatabaseConstants.FOLDER_TABLE, folderValues);
-        bulkInsertValues(DatabaseConstants.FEED_FOLDER_MAP_TABLE, ffmValues);
-        bulkInsertValues(DatabaseConstants.SOCIALFEED_TABLE, socialFeedValues);
+    /**
+     * Makes the rows of a table match the given list of rows, as identified by the key columns.
+     * Existing rows that match exactly are left alone.  Must be called within a transaction on
+     * dbRW while holding the RW mutex.
+     */
+    private int reconcileTable(String table, String[] keyColumns, List<ContentValues> rows) {
+        Map<String,ContentValues> wanted = new HashMap<String,ContentValues>(rows.size());
+        Set<String> columns = new HashSet<String>();
+        for (String col : keyColumns) columns.add(col);
+        for (ContentValues values : rows) {
+            wanted.put(getRowKey(values, keyColumns), values);
+            for (Map.Entry<String,Object> entry : values.valueSet()) columns.add(entry.getKey());
+        }
+
+        // the rowid goes first, so it can be read by position whatever the table calls it
+        List<String> queryColumns = new ArrayList<String>(columns.size() + 1);
+        queryColumns.add("rowid");
+        queryColumns.addAll(columns);
+
+        // changes are only made once the cursor is done with the table
+        List<Long> deletes = new ArrayList<Long>();
+        Map<Long,ContentValues> updates = new HashMap<Long,ContentValues>();
+        Set<String> seen = new HashSet<String>(rows.size());
+        Cursor c = dbRW.query(table, queryColumns.toArray(new String[queryColumns.size()]), null, null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                String[] keyArgs = new String[keyColumns.length];
+                for (int i=0; i<keyColumns.length; i++) {
+                    keyArgs[i] = c.getString(c.getColumnIndexOrThrow(keyColumns[i]));
+                }
+                String key = TextUtils.join("\u0000", keyArgs);
+                ContentValues values = wanted.get(key);
+                // unwanted rows go, as do duplicates of a row already kept for the same key
+                if ((values == null) || seen.contains(key)) {
+                    deletes.add(c.getLong(0));
+                    continue;
+                }
+                seen.add(key);
+                if (!rowMatches(c, values)) {
+                    updates.put(c.getLong(0), values);
+                }
+            }
+        } finally {
+            c.close();
+        }
+
+        String rowSelection = "rowid = ?";
+        for (Long rowId : deletes) {
+            dbRW.delete(table, rowSelection, new String[]{Long.toString(rowId)});
+        }
+        for (Map.Entry<Long,ContentValues> entry : updates.entrySet()) {
+            dbRW.update(table, entry.getValue(), rowSelection, new String[]{Long.toString(entry.getKey())});
+        }
+        int touched = deletes.size() + updates.size();
+
+        for (Map.Entry<String,ContentValues> entry : wanted.entrySet()) {
+            if (seen.contains(entry.getKey())) continue;
+            dbRW.insertWithOnConflict(table, null, entry.getValue(), SQLiteDatabase.CONFLICT_REPLACE);
+            touched++;
+        }
+        return touched;
+    }
+
+    private static String getRowKey(ContentValues values, String[] keyColumns) {
+        String[] parts = new String[keyColumns.length];
+        for (int i=0; i<keyColumns.length; i++) {
+            parts[i] = values.getAsString(keyColumns[i]);
+        }
+        return TextUtils.join("\u0000", parts);
+    }
+
+    /**
+     * Compares the current cursor row to a set of values as SQLite would have stored them.
+     */
+    private static boolean rowMatches(Cursor c, ContentValues values) {
+        for (Map.Entry<String,Object> entry : values.valueSet()) {
+            Object v = entry.getValue();
+            String wanted;
+            if (v == null) {
+                wanted = null;
+            } else if (v instanceof Boolean) {
+                wanted = ((Boolean) v) ? "1" : "0";
+            } else {
+                wanted = v.toString();
+            }
+            if (!TextUtils.equals(wanted, c.getString(c.getColumnIndexOrThrow(entry.getKey())))) return false;
+        }
+        return true;
     }
 
     public void updateStarredStoriesCount(int count) {
         ContentValues values = new ContentValues();
         values.put(DatabaseConstants.STARRED_STORY_COUNT_COUNT, count);
         // this DB just has one row and one column.  blow it away and replace it.
-        synchronized (RW_MUTEX) {dbRW.delete(DatabaseConstants.STARRED_STORY_COUNT_TABLE, null, null);}
-        synchronized (RW_MUTEX) {dbRW.insert(DatabaseConstants.STARRED_STORY_COUNT_TABLE, null, values);}
-    }
-
-    public List<String> getStoryHashesForFeed(String feedId) {
-        String q = "SELECT " + DatabaseConstants.STORY_HASH + 
-                   " FROM " + DatabaseConstants.STORY_TABLE +
-                   " WHERE " + DatabaseConstants.STORY_FEED_ID + " = ?";
-        Cursor c = dbRO.rawQuery(q, new String[]{feedId});
-        List<String> hashes = new ArrayList<String>(c.getCount());
-        while (c.moveToNext()) {
-           hashes.add(c.getString(c.getColumnIndexOrThrow(DatabaseConstants.STORY_HASH)));
+        lockRW();
+        try {
+            dbRW.delete(DatabaseConstants.STARRED_STORY_COUNT_TABLE, null, null);
+            dbRW.insert(DatabaseConstants.STARRED_STORY_COUNT_TABLE, null, values);
+        } finally {
+            unlockRW();
         }
-        c.close();
-        return hashes;
     }
 
-    public List<String> getUnreadStoryHashes() {
-        String q = "SELECT " + DatabaseConstants.STORY_HASH + 
-                   " FROM " + DatabaseConstants.STORY_TABLE +
-                   " WHERE " + DatabaseConstants.STORY_READ + " = 0" ;
+    /**
+     * Gets the hash of every story we have, mapped to whether it is read.
+     */
+    public Map<String,Boolean> getStoryReadStates() {
+        String q = "SELECT " + DatabaseConstants.STORY_HASH + ", " + DatabaseConstants.STORY_READ +
+                   " FROM " + DatabaseConstants.STORY_TABLE;
         Cursor c = dbRO.rawQuery(q, null);
-        List<String> hashes = new ArrayList<String>(c.getCount());
+        Map<String,Boolean> states = new HashMap<String,Boolean>(c.getCount());
+        int hashIndex = c.getColumnIndexOrThrow(DatabaseConstants.STORY_HASH);
+        int readIndex = c.getColumnIndexOrThrow(DatabaseConstants.STORY_READ);
         while (c.moveToNext()) {
-           hashes.add(c.getString(c.getColumnIndexOrThrow(DatabaseConstants.STORY_HASH)));
+            states.put(c.getString(hashIndex), (c.getInt(readIndex) != 0));
         }
         c.close();
-        return hashes;
+        return states;
     }
 
     public void insertStories(StoriesResponse apiResponse) {
@@ -211,40 +551,43 @@ public class BlurDatabaseHelper {
 
         // handle users
         if (apiResponse.users != null) {
-            List<ContentValues> userValues = new ArrayList<ContentValues>(apiResponse.users.length);
-            for (UserProfile user : apiResponse.users) {
-                userValues.add(user.getValues());
-            }
-            bulkInsertValues(DatabaseConstants.USER_TABLE, userValues);
+            bulkInsertRows(DatabaseConstants.USER_TABLE, UserProfile.ROW_COLUMNS, Arrays.asList(apiResponse.users));
         }
 
         // handle supplemental feed data that may have been included (usually in social requests)
         if (apiResponse.feeds != null) {
-            List<ContentValues> feedValues = new ArrayList<ContentValues>(apiResponse.feeds.size());
-            for (Feed feed : apiResponse.feeds) {
-                feedValues.add(feed.getValues());
-            }
-            bulkInsertValues(DatabaseConstants.FEED_TABLE, feedValues);
+            bulkInsertRows(DatabaseConstants.FEED_TABLE, Feed.ROW_COLUMNS, apiResponse.feeds);
         }
 
         // handle story content
-        List<ContentValues> storyValues = new ArrayList<ContentValues>(apiResponse.stories.length);
-        List<ContentValues> socialStoryValues = new ArrayList<ContentValues>();
+        List<BulkWriter.Row> socialStoryRows = new ArrayList<BulkWriter.Row>();
+        List<BulkWriter.Row> socialRiverRows = new ArrayList<BulkWriter.Row>();
+        List<BulkWriter.Row> contentRows = new ArrayList<BulkWriter.Row>(apiResponse.stories.length);
         for (Story story : apiResponse.stories) {
-            ContentValues values = story.getValues();
-            // the basic columns are fine for the stories table
-            storyValues.add(values);
+            contentRows.add(BulkWriter.rowOf(story.storyHash, StoryCodec.encode(story.content)));
             // if a story was shared by a user, also insert it into the social table under their userid, too
             for (String sharedUserId : story.sharedUserIds) {
-                ContentValues socialValues = new ContentValues();
-                socialValues.put(DatabaseConstants.SOCIALFEED_STORY_USER_ID, sharedUserId);
-                socialValues.put(DatabaseConstants.SOCIALFEED_STORY_STORYID, values.getAsString(DatabaseConstants.STORY_ID));
-                socialStoryValues.add(socialValues);
+                socialStoryRows.add(BulkWriter.rowOf(sharedUserId, story.id));
+            }
+            // and into the social river just the once, however many shared it
+            if (story.sharedUserIds.length > 0) {
+                socialRiverRows.add(BulkWriter.rowOf(story.id, story.timestamp));
             }
             impliedFeedId = story.feedId;
         }
-        bulkInsertValues(DatabaseConstants.STORY_TABLE, storyValues);
-        bulkInsertValues(DatabaseConstants.SOCIALFEED_STORY_MAP_TABLE, socialStoryValues);
+        // stories are written by INSERT OR REPLACE, which the unread count trigger never sees, so
+        // the feeds of any we had that come back with a new read state or score are recounted
+        Set<String> recountFeedIds = new HashSet<String>();
+        Set<String> recountSocialFeedIds = new HashSet<String>();
+        findFeedsOfChangedStories(apiResponse.stories, recountFeedIds, recountSocialFeedIds);
+        bulkInsertRows(DatabaseConstants.STORY_TABLE, Story.ROW_COLUMNS, Arrays.asList(apiResponse.stories));
+        bulkInsertRows(DatabaseConstants.STORY_CONTENT_TABLE, STORY_CONTENT_COLUMNS, contentRows);
+        bulkInsertRows(DatabaseConstants.SOCIALFEED_STORY_MAP_TABLE, SOCIAL_STORY_COLUMNS, socialStoryRows);
+        bulkInsertRows(DatabaseConstants.SOCIAL_RIVER_TABLE, SOCIAL_RIVER_COLUMNS, socialRiverRows);
+        if ((recountFeedIds.size() > 0) || (recountSocialFeedIds.size() > 0)) {
+            recountFeeds(recountFeedIds, recountSocialFeedIds);
+        }
+        indexStoriesForSearch(apiResponse.stories);
 
         // handle classifiers
         if (apiResponse.classifiers != null) {
@@ -254,41 +597,138 @@ public class BlurDatabaseHelper {
                 if (classifierFeedId.equals("-1")) {
                     classifierFeedId = impliedFeedId;
                 }
-                List<ContentValues> classifierValues = entry.getValue().getContentValues();
-                for (ContentValues values : classifierValues) {
-                    values.put(DatabaseConstants.CLASSIFIER_ID, classifierFeedId);
-                }
-                synchronized (RW_MUTEX) {dbRW.delete(DatabaseConstants.CLASSIFIER_TABLE, DatabaseConstants.CLASSIFIER_ID + " = ?", new String[] { classifierFeedId });}
-                bulkInsertValues(DatabaseConstants.CLASSIFIER_TABLE, classifierValues);
+                // every page of stories repeats them, so usually this writes nothing
+                putClassifier(classifierFeedId, entry.getValue());
             }
         }
 
         // handle comments
-        List<ContentValues> commentValues = new ArrayList<ContentValues>();
-        List<ContentValues> replyValues = new ArrayList<ContentValues>();
+        List<Comment> comments = new ArrayList<Comment>();
+        List<Reply> replies = new ArrayList<Reply>();
         for (Story story : apiResponse.stories) {
             for (Comment comment : story.publicComments) {
                 comment.storyId = story.id;
                 comment.id = TextUtils.concat(story.id, story.feedId, comment.userId).toString();
-                commentValues.add(comment.getValues());
+                comments.add(comment);
                 for (Reply reply : comment.replies) {
                     reply.commentId = comment.id;
-                    replyValues.add(reply.getValues());
+                    replies.add(reply);
                 }
             }
             for (Comment comment : story.friendsComments) {
                 comment.storyId = story.id;
                 comment.id = TextUtils.concat(story.id, story.feedId, comment.userId).toString();
                 comment.byFriend = true;
-                commentValues.add(comment.getValues());
+                comments.add(comment);
                 for (Reply reply : comment.replies) {
                     reply.commentId = comment.id;
-                    replyValues.add(reply.getValues());
+                    replies.add(reply);
                 }
             }
         }
-        bulkInsertValues(DatabaseConstants.COMMENT_TABLE, commentValues);
-        bulkInsertValues(DatabaseConstants.REPLY_TABLE, replyValues);
+        bulkInsertRows(DatabaseConstants.COMMENT_TABLE, Comment.ROW_COLUMNS, comments);
+        bulkInsertRows(DatabaseConstants.REPLY_TABLE, Reply.ROW_COLUMNS, replies);
+    }
+
+    /**
+     * Adds the feeds and social feeds of those of the given stories that we already have, but
+     * that have since been read, unread or, while unread, rescored, to the given sets.
+     */
+    private void findFeedsOfChangedStories(Story[] stories, Set<String> feedIds, Set<String> socialFeedIds) {
+        Map<String,Story> storiesByHash = new HashMap<String,Story>(stories.length);
+        for (Story story : stories) {
+            storiesByHash.put(story.storyHash, story);
+        }
+        List<String> hashes = new ArrayList<String>(storiesByHash.keySet());
+        lockRW();
+        try {
+            for (int i = 0; i < hashes.size(); i += AppConstants.DB_HASH_CHUNK_SIZE) {
+                List<String> chunk = hashes.subList(i, Math.min(hashes.size(), i + AppConstants.DB_HASH_CHUNK_SIZE));
+                String[] selArgs = chunk.toArray(new String[chunk.size()]);
+                Cursor c = dbRW.rawQuery("SELECT " + DatabaseConstants.STORY_HASH + ", " + DatabaseConstants.STORY_READ + ", " + DatabaseConstants.STORY_SCORE +
+                                         " FROM " + DatabaseConstants.STORY_TABLE +
+                                         " WHERE " + DatabaseConstants.STORY_HASH + " IN (" + makePlaceholders(selArgs.length) + ")", selArgs);
+                List<String> changed = new ArrayList<String>();
+                while (c.moveToNext()) {
+                    Story story = storiesByHash.get(c.getString(0));
+                    boolean wasRead = (c.getInt(1) != 0);
+                    boolean rescored = (c.isNull(2) || (c.getInt(2) != story.intelligence.getScore()));
+                    if ((wasRead != story.read) || ((!story.read) && rescored)) {
+                        changed.add(story.storyHash);
+                        feedIds.add(story.feedId);
+                        for (String sharedUserId : story.sharedUserIds) {
+                            socialFeedIds.add(sharedUserId);
+                        }
+                    }
+                }
+                c.close();
+                if (changed.size() > 0) {
+                    String[] changedArgs = changed.toArray(new String[changed.size()]);
+                    findFeedsOfStories(DatabaseConstants.STORY_HASH + " IN (" + makePlaceholders(changedArgs.length) + ")", changedArgs, feedIds, socialFeedIds);
+                }
+            }
+        } finally {
+            unlockRW();
+        }
+    }
+
+    /**
+     * Gets the classifiers of a feed, from the cache if they have been read or written since the
+     * DB was opened.  The result is shared, so must not be changed; see Classifier.copy().
+     */
+    public Classifier getClassifierForFeed(String feedId) {
+        ClassifierCache cache = dbWrapper.getClassifierCache();
+        Classifier classifier = cache.get(feedId);
+        if (classifier != null) return classifier;
+        Cursor c = dbRO.query(DatabaseConstants.CLASSIFIER_TABLE, null, DatabaseConstants.CLASSIFIER_ID + " = ?", new String[]{feedId}, null, null, null);
+        classifier = Classifier.fromCursor(c);
+        c.close();
+        classifier.feedId = feedId;
+        return cache.putIfAbsent(feedId, classifier);
+    }
+
+    /**
+     * Stores the classifiers of a feed, writing only the rows that differ from those already
+     * stored, and nothing at all if none do.  The given classifiers become the cached ones, so
+     * must not be changed afterwards.
+     */
+    public void putClassifier(String feedId, Classifier classifier) {
+        classifier.feedId = feedId;
+        lockRW();
+        try {
+            // read under the lock, so that no other write can land between this and ours
+            Classifier stored = getClassifierForFeed(feedId);
+            if (classifier.equals(stored)) return;
+            dbRW.beginTransaction();
+            try {
+                for (int type : Classifier.TYPES) {
+                    Map<String,Integer> was = stored.getMapForType(type);
+                    Map<String,Integer> is = classifier.getMapForType(type);
+                    String typeArg = Integer.toString(type);
+                    for (Map.Entry<String,Integer> entry : is.entrySet()) {
+                        if (entry.getValue().equals(was.get(entry.getKey()))) continue;
+                        ContentValues values = new ContentValues();
+                        values.put(DatabaseConstants.CLASSIFIER_ID, feedId);
+                        values.put(DatabaseConstants.CLASSIFIER_TYPE, typeArg);
+                        values.put(DatabaseConstants.CLASSIFIER_KEY, entry.getKey());
+                        values.put(DatabaseConstants.CLASSIFIER_VALUE, entry.getValue());
+                        dbRW.insertWithOnConflict(DatabaseConstants.CLASSIFIER_TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                    }
+                    for (String key : was.keySet()) {
+                        if (is.containsKey(key)) continue;
+                        dbRW.delete(DatabaseConstants.CLASSIFIER_TABLE,
+                                    DatabaseConstants.CLASSIFIER_ID + " = ? AND " + DatabaseConstants.CLASSIFIER_TYPE + " = ? AND " + DatabaseConstants.CLASSIFIER_KEY + " = ?",
+                                    new String[]{feedId, typeArg, key});
+                    }
+                }
+                dbRW.setTransactionSuccessful();
+            } finally {
+                dbRW.endTransaction();
+            }
+            dbWrapper.getClassifierCache().put(feedId, classifier);
+        } finally {
+            unlockRW();
+        }
     }
 
     public Set<String> getFeedsForFolder(String folderName) {
@@ -304,11 +744,75 @@ public class BlurDatabaseHelper {
         return feedIds;
     }
 
+    /**
+     * Marks many stories read at once, with a chunk of hashes per statement.  This is not one
+     * transaction: if another writer is waiting, the chunks done so far are committed and it
+     * gets a turn, so others may see some of the stories marked before the rest.  No chunk is
+     * ever seen half done.
+     *
+     * This is how stories read elsewhere are caught up with, so the feeds of each chunk are
+     * recounted rather than left to the unread count trigger.
+     */
     public void markStoryHashesRead(List<String> hashes) {
-        // NOTE: attempting to wrap these updates in a transaction for speed makes them silently fail
-        for (String hash : hashes) {
-            setStoryReadState(hash, true);
+        ContentValues values = new ContentValues();
+        values.put(DatabaseConstants.STORY_READ, true);
+        values.put(DatabaseConstants.STORY_READ_THIS_SESSION, true);
+        lockRW();
+        try {
+            dbRW.beginTransaction();
+            try {
+                for (int i = 0; i < hashes.size(); i += AppConstants.DB_HASH_CHUNK_SIZE) {
+                    List<String> chunk = hashes.subList(i, Math.min(hashes.size(), i + AppConstants.DB_HASH_CHUNK_SIZE));
+                    String[] selArgs = chunk.toArray(new String[chunk.size()]);
+                    String selection = DatabaseConstants.STORY_HASH + " IN (" + makePlaceholders(selArgs.length) + ")";
+                    // the counts we have came from the server, which already leaves out stories read
+                    // elsewhere, so the trigger would take these off twice.  recount their feeds instead.
+                    Set<String> feedIds = new HashSet<String>();
+                    Set<String> socialFeedIds = new HashSet<String>();
+                    findFeedsOfStories(selection + " AND " + DatabaseConstants.STORY_READ + " = 0", selArgs, feedIds, socialFeedIds);
+                    dbRW.update(DatabaseConstants.STORY_TABLE, values, selection, selArgs);
+                    writeRecounts(feedIds, socialFeedIds);
+                    yieldRW();
+                }
+                dbRW.setTransactionSuccessful();
+            } finally {
+                dbRW.endTransaction();
+            }
+        } finally {
+            unlockRW();
+        }
+    }
+
+    /**
+     * Adds the feeds and social feeds of the stories matching the given selection to the given
+     * sets.  Must be called while holding the RW mutex.
+     */
+    private void findFeedsOfStories(String selection, String[] selArgs, Set<String> feedIds, Set<String> socialFeedIds) {
+        Cursor c = dbRW.rawQuery("SELECT DISTINCT " + DatabaseConstants.STORY_FEED_ID + " FROM " + DatabaseConstants.STORY_TABLE +
+                                 " WHERE " + selection, selArgs);
+        while (c.moveToNext()) {
+            feedIds.add(c.getString(0));
+        }
+        c.close();
+        c = dbRW.rawQuery("SELECT DISTINCT " + DatabaseConstants.SOCIALFEED_STORY_MAP_TABLE + "." + DatabaseConstants.SOCIALFEED_STORY_USER_ID +
+                          " FROM " + DatabaseConstants.SOCIALFEED_STORY_MAP_TABLE + DatabaseConstants.JOIN_STORIES_ON_SOCIALFEED_MAP +
+                          " WHERE " + selection, selArgs);
+        while (c.moveToNext()) {
+            socialFeedIds.add(c.getString(0));
         }
+        c.close();
+    }
+
+    /**
+     * Makes a list of the given number of bind placeholders, for use in an IN clause.
+     */
+    private static String makePlaceholders(int count) {
+        StringBuilder sb = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(",");
+            sb.append("?");
+        }
+        return sb.toString();
     }
 
     public void setStoryReadState(String hash, boolean read) {
@@ -327,34 +831,38 @@ public class BlurDatabaseHelper {
     }
 
     /**
-     * Marks a story (un)read and also adjusts unread counts for it.
+     * Marks a story (un)read.  The unread counts of its feed and social feeds are adjusted
+     * to match by trigger.
      */
     public void setStoryReadState(Story story, boolean read) {
-        // read flag
         ContentValues values = new ContentValues();
         values.put(DatabaseConstants.STORY_READ, read);
         values.put(DatabaseConstants.STORY_READ_THIS_SESSION, read);
-        synchronized (RW_MUTEX) {dbRW.update(DatabaseConstants.STORY_TABLE, values, DatabaseConstants.STORY_HASH + " = ?", new String[]{story.storyHash});}
-        // non-social feed count
-        refreshFeedCounts(FeedSet.singleFeed(story.feedId));
-        // social feed counts
-        Set<String> socialIds = new HashSet<String>();
-        if (!TextUtils.isEmpty(story.socialUserId)) {
-            socialIds.add(story.socialUserId);
-        }
-        if (story.friendUserIds != null) {
-            for (String id : story.friendUserIds) {
-                socialIds.add(id);
-            }
-        }
-        if (socialIds.size() > 0) {
-            refreshFeedCounts(FeedSet.multipleSocialFeeds(socialIds));
+        lockRW();
+        try {
+            dbRW.update(DatabaseConstants.STORY_TABLE, values, DatabaseConstants.STORY_HASH + " = ?", new String[]{story.storyHash});
+        } finally {
+            unlockRW();
         }
     }
 
     public void markStoriesRead(FeedSet fs, Long olderThan, Long newerThan) {
         ContentValues values = new ContentValues();
         values.put(DatabaseConstants.STORY_READ, true);
+        String selection = getMarkStoriesReadSelection(fs, olderThan, newerThan);
+        // unread counts follow along via trigger
+        lockRW();
+        try {
+            dbRW.update(DatabaseConstants.STORY_TABLE, values, selection, null);
+        } finally {
+            unlockRW();
+        }
+    }
+
+    /**
+     * Selects the stories markStoriesRead() marks, or null for all of them.
+     */
+    public static String getMarkStoriesReadSelection(FeedSet fs, Long olderThan, Long newerThan) {
         String rangeSelection = null;
         if (olderThan != null) rangeSelection = DatabaseConstants.STORY_TIMESTAMP + " <= " + olderThan.toString();
         if (newerThan != null) rangeSelection = DatabaseConstants.STORY_TIMESTAMP + " >= " + newerThan.toString();
@@ -374,22 +882,20 @@ public class BlurDatabaseHelper {
         } else {
             throw new IllegalStateException("Asked to mark stories for FeedSet of unknown type.");
         }
-        synchronized (RW_MUTEX) {dbRW.update(DatabaseConstants.STORY_TABLE, values, conjoinSelections(feedSelection, rangeSelection), null);}
-
-        refreshFeedCounts(fs);
+        return conjoinSelections(feedSelection, rangeSelection);
     }
 
     /**
      * Refreshes the counts in the feeds/socialfeeds tables by counting stories in the story table.
      */
     public void refreshFeedCounts(FeedSet fs) {
-        // decompose the FeedSet into a list of single feeds that need to be recounted
-        List<String> feedIds = new ArrayList<String>();
-        List<String> socialFeedIds = new ArrayList<String>();
+        // decompose the FeedSet into the feeds that need to be recounted, where null means all of them
+        Collection<String> feedIds = new ArrayList<String>();
+        Collection<String> socialFeedIds = new ArrayList<String>();
 
         if (fs.isAllNormal()) {
-            feedIds.addAll(getAllFeeds());
-            socialFeedIds.addAll(getAllSocialFeeds());
+            feedIds = null;
+            socialFeedIds = null;
         } else if (fs.getMultipleFeeds() != null) { 
             feedIds.addAll(fs.getMultipleFeeds());
         } else if (fs.getSingleFeed() != null) {
@@ -402,24 +908,178 @@ public class BlurDatabaseHelper {
             throw new IllegalStateException("Asked to refresh story counts for FeedSet of unknown type.");
         }
 
-        // now recount the number of unreads in each feed, one by one
-        for (String feedId : feedIds) {
-            FeedSet singleFs = FeedSet.singleFeed(feedId);
+        recountFeeds(feedIds, socialFeedIds);
+    }
+
+    /**
+     * Recounts unreads for the given feeds and social feeds, or for all of them if null.  Each
+     * kind of feed is counted by one aggregate query over the unread stories, and the counts are
+     * written back in the same transaction.
+     */
+    private void recountFeeds(Collection<String> feedIds, Collection<String> socialFeedIds) {
+        lockRW();
+        try {
+            dbRW.beginTransaction();
+            try {
+                writeRecounts(feedIds, socialFeedIds);
+                dbRW.setTransactionSuccessful();
+            } finally {
+                dbRW.endTransaction();
+            }
+        } finally {
+            unlockRW();
+        }
+    }
+
+    /**
+     * The body of recountFeeds().  Must be called within a transaction on dbRW while holding
+     * the RW mutex.
+     */
+    private void writeRecounts(Collection<String> feedIds, Collection<String> socialFeedIds) {
+        if ((feedIds == null) || (feedIds.size() > 0)) {
+            String idSelection = null;
+            if (feedIds != null) {
+                idSelection = DatabaseConstants.FEED_ID + " IN (" + TextUtils.join(",", feedIds) + ")";
+            }
+            writeUnreadCounts(getScoredFeedUnreadsQuery(feedIds), DatabaseConstants.FEED_TABLE, DatabaseConstants.FEED_ID, idSelection,
+                              DatabaseConstants.FEED_NEGATIVE_COUNT, DatabaseConstants.FEED_NEUTRAL_COUNT, DatabaseConstants.FEED_POSITIVE_COUNT);
+        }
+        if ((socialFeedIds == null) || (socialFeedIds.size() > 0)) {
+            String idSelection = null;
+            if (socialFeedIds != null) {
+                idSelection = DatabaseConstants.SOCIAL_FEED_ID + " IN (" + TextUtils.join(",", socialFeedIds) + ")";
+            }
+            writeUnreadCounts(getScoredSocialUnreadsQuery(socialFeedIds), DatabaseConstants.SOCIALFEED_TABLE, DatabaseConstants.SOCIAL_FEED_ID, idSelection,
+                              DatabaseConstants.SOCIAL_FEED_NEGATIVE_COUNT, DatabaseConstants.SOCIAL_FEED_NEUTRAL_COUNT, DatabaseConstants.SOCIAL_FEED_POSITIVE_COUNT);
+        }
+    }
+
+    /**
+     * Compares the incrementally kept unread counts of every feed and social feed with a full
+     * recount, and fixes any that have drifted.
+     *
+     * @return the number of feeds and social feeds that needed fixing.
+     */
+    public int repairUnreadCounts() {
+        int repaired = 0;
+        lockRW();
+        try {
+            dbRW.beginTransaction();
+            try {
+                repaired += repairUnreadCounts(getScoredFeedUnreadsQuery(null), DatabaseConstants.FEED_TABLE, DatabaseConstants.FEED_ID,
+                                               DatabaseConstants.FEED_NEGATIVE_COUNT, DatabaseConstants.FEED_NEUTRAL_COUNT, DatabaseConstants.FEED_POSITIVE_COUNT);
+                repaired += repairUnreadCounts(getScoredSocialUnreadsQuery(null), DatabaseConstants.SOCIALFEED_TABLE, DatabaseConstants.SOCIAL_FEED_ID,
+                                               DatabaseConstants.SOCIAL_FEED_NEGATIVE_COUNT, DatabaseConstants.SOCIAL_FEED_NEUTRAL_COUNT, DatabaseConstants.SOCIAL_FEED_POSITIVE_COUNT);
+                dbRW.setTransactionSuccessful();
+            } finally {
+                dbRW.endTransaction();
+            }
+        } finally {
+            unlockRW();
+        }
+        return repaired;
+    }
+
+    /**
+     * The feed ID and score of each unread story in the given feeds, or all feeds if null.
+     */
+    private static String getScoredFeedUnreadsQuery(Collection<String> feedIds) {
+        StringBuilder q = new StringBuilder("SELECT " + DatabaseConstants.STORY_FEED_ID + " AS " + COUNT_ID);
+        q.append(", " + DatabaseConstants.STORY_SCORE + " AS " + COUNT_SCORE);
+        q.append(" FROM " + DatabaseConstants.STORY_TABLE);
+        q.append(" WHERE " + DatabaseConstants.STORY_READ + " = 0");
+        if (feedIds != null) {
+            q.append(" AND " + DatabaseConstants.STORY_FEED_ID + " IN (" + TextUtils.join(",", feedIds) + ")");
+        }
+        return q.toString();
+    }
+
+    /**
+     * The social feed ID and score of each unread story in the given social feeds, or all social
+     * feeds if null.  Like the unread count trigger, this counts every mapped story, whether or
+     * not we have its feed.
+     */
+    private static String getScoredSocialUnreadsQuery(Collection<String> socialFeedIds) {
+        StringBuilder q = new StringBuilder("SELECT " + DatabaseConstants.SOCIALFEED_STORY_MAP_TABLE + "." + DatabaseConstants.SOCIALFEED_STORY_USER_ID + " AS " + COUNT_ID);
+        q.append(", " + DatabaseConstants.STORY_SCORE + " AS " + COUNT_SCORE);
+        q.append(" FROM " + DatabaseConstants.SOCIALFEED_STORY_MAP_TABLE);
+        q.append(DatabaseConstants.JOIN_STORIES_ON_SOCIALFEED_MAP);
+        q.append(" WHERE " + DatabaseConstants.STORY_READ + " = 0");
+        if (socialFeedIds != null) {
+            q.append(" AND " + DatabaseConstants.SOCIALFEED_STORY_MAP_TABLE + "." + DatabaseConstants.SOCIALFEED_STORY_USER_ID + " IN (" + TextUtils.join(",", socialFeedIds) + ")");
+        }
+        return q.toString();
+    }
+
+    /**
+     * The per-feed unread counts of the given feeds, as recounted by refreshFeedCounts().
+     */
+    public static String getFeedUnreadCountsQuery(Collection<String> feedIds) {
+        return getGroupedUnreadCountsQuery(getScoredFeedUnreadsQuery(feedIds));
+    }
+
+    /**
+     * Groups the output of one of the scored unread queries into per-feed counts.
+     */
+    private static String getGroupedUnreadCountsQuery(String scoredUnreadsQuery) {
+        return "SELECT " + COUNT_ID + ", " +
+               "SUM(" + COUNT_SCORE + " < 0) AS " + COUNT_NEG + ", " +
+               "SUM(" + COUNT_SCORE + " = 0) AS " + COUNT_NEUT + ", " +
+               "SUM(" + COUNT_SCORE + " > 0) AS " + COUNT_POS +
+               " FROM (" + scoredUnreadsQuery + ")" +
+               " GROUP BY " + COUNT_ID;
+    }
+
+    /**
+     * Groups the scored unread stories selected by the given query by feed and writes the
+     * counts to the given table.  Feeds selected by idSelection are zeroed first, since feeds
+     * with no unreads at all don't show up in the aggregate.  Must be called within a transaction.
+     */
+    private void writeUnreadCounts(String scoredUnreadsQuery, String table, String idColumn, String idSelection, String negColumn, String neutColumn, String posColumn) {
+        ContentValues zeroes = new ContentValues();
+        zeroes.put(negColumn, 0);
+        zeroes.put(neutColumn, 0);
+        zeroes.put(posColumn, 0);
+        dbRW.update(table, zeroes, idSelection, null);
+
+        Cursor c = dbRW.rawQuery(getGroupedUnreadCountsQuery(scoredUnreadsQuery), null);
+        while (c.moveToNext()) {
             ContentValues values = new ContentValues();
-            values.put(DatabaseConstants.FEED_NEGATIVE_COUNT, getUnreadCount(singleFs, StateFilter.NEG));
-            values.put(DatabaseConstants.FEED_NEUTRAL_COUNT, getUnreadCount(singleFs, StateFilter.NEUT));
-            values.put(DatabaseConstants.FEED_POSITIVE_COUNT, getUnreadCount(singleFs, StateFilter.BEST));
-            synchronized (RW_MUTEX) {dbRW.update(DatabaseConstants.FEED_TABLE, values, DatabaseConstants.FEED_ID + " = ?", new String[]{feedId});}
+            values.put(negColumn, c.getInt(1));
+            values.put(neutColumn, c.getInt(2));
+            values.put(posColumn, c.getInt(3));
+            dbRW.update(table, values, idColumn + " = ?", new String[]{c.getString(0)});
         }
+        c.close();
+    }
 
-        for (String socialId : socialFeedIds) {
-            FeedSet singleFs = FeedSet.singleSocialFeed(socialId, "");
+    /**
+     * Finds the rows of the given table whose counts don't match a recount of the scored unread
+     * stories selected by the given query, and corrects them.  Must be called within a transaction.
+     */
+    private int repairUnreadCounts(String scoredUnreadsQuery, String table, String idColumn, String negColumn, String neutColumn, String posColumn) {
+        String neg = "IFNULL(c." + COUNT_NEG + ", 0)";
+        String neut = "IFNULL(c." + COUNT_NEUT + ", 0)";
+        String pos = "IFNULL(c." + COUNT_POS + ", 0)";
+        String q = "SELECT t." + idColumn + ", " + neg + ", " + neut + ", " + pos +
+                   " FROM " + table + " t" +
+                   " LEFT JOIN (" + getGroupedUnreadCountsQuery(scoredUnreadsQuery) + ") c" +
+                   " ON c." + COUNT_ID + " = t." + idColumn +
+                   " WHERE (t." + negColumn + " IS NOT " + neg + ")" +
+                   " OR (t." + neutColumn + " IS NOT " + neut + ")" +
+                   " OR (t." + posColumn + " IS NOT " + pos + ")";
+        int repaired = 0;
+        Cursor c = dbRW.rawQuery(q, null);
+        while (c.moveToNext()) {
             ContentValues values = new ContentValues();
-            values.put(DatabaseConstants.SOCIAL_FEED_NEGATIVE_COUNT, getUnreadCount(singleFs, StateFilter.NEG));
-            values.put(DatabaseConstants.SOCIAL_FEED_NEUTRAL_COUNT, getUnreadCount(singleFs, StateFilter.NEUT));
-            values.put(DatabaseConstants.SOCIAL_FEED_POSITIVE_COUNT, getUnreadCount(singleFs, StateFilter.BEST));
-            synchronized (RW_MUTEX) {dbRW.update(DatabaseConstants.SOCIALFEED_TABLE, values, DatabaseConstants.SOCIAL_FEED_ID + " = ?", new String[]{socialId});}
+            values.put(negColumn, c.getInt(1));
+            values.put(neutColumn, c.getInt(2));
+            values.put(posColumn, c.getInt(3));
+            dbRW.update(table, values, idColumn + " = ?", new String[]{c.getString(0)});
+            repaired++;
         }
+        c.close();
+        return repaired;
     }
 
     public int getUnreadCount(FeedSet fs, StateFilter stateFilter) {
@@ -430,16 +1090,135 @@ public class BlurDatabaseHelper {
     }
 
     public void enqueueAction(ReadingAction ra) {
-        synchronized (RW_MUTEX) {dbRW.insertOrThrow(DatabaseConstants.ACTION_TABLE, null, ra.toContentValues());}
+        lockRW();
+        try {
+            dbRW.insertOrThrow(DatabaseConstants.ACTION_TABLE, null, ra.toContentValues());
+        } finally {
+            unlockRW();
+        }
     }
 
+    /**
+     * Gets queued reading actions.  Actions that have been done remotely but still need their
+     * local followup step are only included if requested.
+     */
     public Cursor getActions(boolean includeDone) {
         String q = "SELECT * FROM " + DatabaseConstants.ACTION_TABLE;
+        if (!includeDone) {
+            q = q + " WHERE " + DatabaseConstants.ACTION_DONE_REMOTE + " = 0";
+        }
         return dbRO.rawQuery(q, null);
     }
 
+    /**
+     * Marks an action as having been done remotely, so it will survive only until the sync
+     * service has performed its local followup step.
+     */
+    public void markActionDoneRemote(String actionId) {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseConstants.ACTION_DONE_REMOTE, 1);
+        lockRW();
+        try {
+            dbRW.update(DatabaseConstants.ACTION_TABLE, values, DatabaseConstants.ACTION_ID + " = ?", new String[]{actionId});
+        } finally {
+            unlockRW();
+        }
+    }
+
     public void clearAction(String actionId) {
-        synchronized (RW_MUTEX) {dbRW.delete(DatabaseConstants.ACTION_TABLE, DatabaseConstants.ACTION_ID + " = ?", new String[]{actionId});}
+        lockRW();
+        try {
+            dbRW.delete(DatabaseConstants.ACTION_TABLE, DatabaseConstants.ACTION_ID + " = ?", new String[]{actionId});
+        } finally {
+            unlockRW();
+        }
+    }
+
+    /**
+     * Loads the persisted contents of a sync work queue, in the order items were first added.
+     * Any items claimed by a previous run that never acknowledged them are returned as well.
+     */
+    public Map<String,Long> getSyncQueue(String queueName) {
+        String q = "SELECT " + DatabaseConstants.SYNC_QUEUE_ITEM + ", " + DatabaseConstants.SYNC_QUEUE_VALUE +
+                   " FROM " + DatabaseConstants.SYNC_QUEUE_TABLE +
+                   " WHERE " + DatabaseConstants.SYNC_QUEUE_NAME + " = ?" +
+                   " ORDER BY rowid";
+        Cursor c = dbRO.rawQuery(q, new String[]{queueName});
+        Map<String,Long> items = new LinkedHashMap<String,Long>(c.getCount());
+        while (c.moveToNext()) {
+            items.put(c.getString(0), c.getLong(1));
+        }
+        c.close();
+        return items;
+    }
+
+    /**
+     * Releases all claims on queued work, so that items taken by a run that died before
+     * acknowledging them are handed out again.
+     */
+    public void releaseSyncQueueClaims() {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseConstants.SYNC_QUEUE_CLAIMED, 0);
+        lockRW();
+        try {
+            dbRW.update(DatabaseConstants.SYNC_QUEUE_TABLE, values, DatabaseConstants.SYNC_QUEUE_CLAIMED + " = 1", null);
+        } finally {
+            unlockRW();
+        }
+    }
+
+    /**
+     * Removes every persisted item of a sync work queue.
+     */
+    public void clearSyncQueue(String queueName) {
+        lockRW();
+        try {
+            dbRW.delete(DatabaseConstants.SYNC_QUEUE_TABLE, DatabaseConstants.SYNC_QUEUE_NAME + " = ?", new String[]{queueName});
+        } finally {
+            unlockRW();
+        }
+    }
+
+    /**
+     * Applies a set of buffered changes to a sync work queue in a single transaction.
+     *
+     * @param clearFirst remove all existing items before applying the other changes
+     * @param puts items to add or update, with their values
+     * @param deletes acknowledged items to remove
+     * @param claims items that have been handed to a worker
+     */
+    public void writeSyncQueue(String queueName, boolean clearFirst, Map<String,Long> puts, Set<String> deletes, Set<String> claims) {
+        String nameClause = DatabaseConstants.SYNC_QUEUE_NAME + " = ?";
+        String itemClause = nameClause + " AND " + DatabaseConstants.SYNC_QUEUE_ITEM + " = ?";
+        lockRW();
+        try {
+            dbRW.beginTransaction();
+            try {
+                if (clearFirst) {
+                    dbRW.delete(DatabaseConstants.SYNC_QUEUE_TABLE, nameClause, new String[]{queueName});
+                }
+                for (String item : deletes) {
+                    dbRW.delete(DatabaseConstants.SYNC_QUEUE_TABLE, itemClause, new String[]{queueName, item});
+                }
+                for (Map.Entry<String,Long> entry : puts.entrySet()) {
+                    ContentValues values = new ContentValues();
+                    values.put(DatabaseConstants.SYNC_QUEUE_NAME, queueName);
+                    values.put(DatabaseConstants.SYNC_QUEUE_ITEM, entry.getKey());
+                    values.put(DatabaseConstants.SYNC_QUEUE_VALUE, entry.getValue());
+                    dbRW.insertWithOnConflict(DatabaseConstants.SYNC_QUEUE_TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                ContentValues claimed = new ContentValues();
+                claimed.put(DatabaseConstants.SYNC_QUEUE_CLAIMED, 1);
+                for (String item : claims) {
+                    dbRW.update(DatabaseConstants.SYNC_QUEUE_TABLE, claimed, itemClause, new String[]{queueName, item});
+                }
+                dbRW.setTransactionSuccessful();
+            } finally {
+                dbRW.endTransaction();
+            }
+        } finally {
+            unlockRW();
+        }
     }
 
     public Cursor getStory(String hash) {
@@ -451,30 +1230,272 @@ public class BlurDatabaseHelper {
     public void setStoryStarred(String hash, boolean starred) {
         ContentValues values = new ContentValues();
         values.put(DatabaseConstants.STORY_STARRED, starred);
-        synchronized (RW_MUTEX) {dbRW.update(DatabaseConstants.STORY_TABLE, values, DatabaseConstants.STORY_HASH + " = ?", new String[]{hash});}
+        lockRW();
+        try {
+            dbRW.update(DatabaseConstants.STORY_TABLE, values, DatabaseConstants.STORY_HASH + " = ?", new String[]{hash});
+        } finally {
+            unlockRW();
+        }
     }
 
-    public String getStoryText(String hash) {
-        String q = "SELECT " + DatabaseConstants.STORY_TEXT_STORY_TEXT +
-                   " FROM " + DatabaseConstants.STORY_TEXT_TABLE +
-                   " WHERE " + DatabaseConstants.STORY_TEXT_STORY_HASH + " = ?";
+    /**
+     * Gets the full body of a story, which story cursors leave out.  Bodies are stored compressed
+     * and only decoded here, so this is only for when a story is actually shown.
+     */
+    public String getStoryContent(String hash) {
+        String q = "SELECT " + DatabaseConstants.STORY_CONTENT +
+                   " FROM " + DatabaseConstants.STORY_CONTENT_TABLE +
+                   " WHERE " + DatabaseConstants.STORY_CONTENT_STORY_HASH + " = ?";
         Cursor c = dbRO.rawQuery(q, new String[]{hash});
         if (c.getCount() < 1) {
             c.close();
             return null;
         } else {
             c.moveToFirst();
-            String result = c.getString(c.getColumnIndexOrThrow(DatabaseConstants.STORY_TEXT_STORY_TEXT));
+            String result = StoryCodec.decode(c, c.getColumnIndexOrThrow(DatabaseConstants.STORY_CONTENT));
             c.close();
             return result;
         }
     }
 
-    public void putStoryText(String hash, String text) {
-        ContentValues values = new ContentValues();
-        values.put(DatabaseConstants.STORY_TEXT_STORY_HASH, hash);
-        values.put(DatabaseConstants.STORY_TEXT_STORY_TEXT, text);
-        synchronized (RW_MUTEX) {dbRW.insertOrThrow(DatabaseConstants.STORY_TEXT_TABLE, null, values);}
+    /**
+     * Gets the original text of a story, if we have it, and marks it as just read so that it is
+     * among the last to be evicted.  The mark is only kept in memory until the next text write
+     * or cleanup, so that reading never waits on the write lock.
+     */
+    public String getStoryText(String hash) {
+        String q = "SELECT " + DatabaseConstants.STORY_TEXT_STORY_TEXT +
+                   " FROM " + DatabaseConstants.STORY_TEXT_TABLE +
+                   " WHERE " + DatabaseConstants.STORY_TEXT_STORY_HASH + " = ?";
+        Cursor c = dbRO.rawQuery(q, new String[]{hash});
+        if (c.getCount() < 1) {
+            c.close();
+            return null;
+        }
+        c.moveToFirst();
+        String result = StoryCodec.decode(c, c.getColumnIndexOrThrow(DatabaseConstants.STORY_TEXT_STORY_TEXT));
+        c.close();
+
+        synchronized (PENDING_TEXT_READS) {
+            PENDING_TEXT_READS.put(hash, System.currentTimeMillis());
+        }
+        return result;
+    }
+
+    /**
+     * Writes back the read times noted by getStoryText().  Must be called holding the write lock.
+     */
+    private void writeStoryTextReads() {
+        Map<String,Long> reads;
+        synchronized (PENDING_TEXT_READS) {
+            if (PENDING_TEXT_READS.isEmpty()) return;
+            reads = new HashMap<String,Long>(PENDING_TEXT_READS);
+            PENDING_TEXT_READS.clear();
+        }
+        dbRW.beginTransaction();
+        try {
+            for (Map.Entry<String,Long> entry : reads.entrySet()) {
+                ContentValues values = new ContentValues();
+                values.put(DatabaseConstants.STORY_TEXT_LAST_READ, entry.getValue());
+                dbRW.update(DatabaseConstants.STORY_TEXT_TABLE, values, DatabaseConstants.STORY_TEXT_STORY_HASH + " = ?", new String[]{entry.getKey()});
+            }
+            dbRW.setTransactionSuccessful();
+        } finally {
+            dbRW.endTransaction();
+        }
+    }
+
+    /**
+     * Adds stories to the full-text index, or updates their entries if they are already there.
+     * Story texts are indexed as they are fetched, by putStoryTexts().
+     */
+    private void indexStoriesForSearch(Story[] stories) {
+        List<Story> storyList = Arrays.asList(stories);
+        for (int i = 0; i < storyList.size(); i += AppConstants.DB_WRITE_BATCH_SIZE) {
+            List<Story> batch = storyList.subList(i, Math.min(storyList.size(), i + AppConstants.DB_WRITE_BATCH_SIZE));
+            lockRW();
+            try {
+                dbRW.beginTransaction();
+                try {
+                    SearchIndexWriter writer = new SearchIndexWriter();
+                    try {
+                        for (Story story : batch) {
+                            writer.write(Story.getSearchId(story.storyHash), story.title, story.authors, TextUtils.join(" ", story.tags), story.content);
+                        }
+                    } finally {
+                        writer.close();
+                    }
+                    dbRW.setTransactionSuccessful();
+                } finally {
+                    dbRW.endTransaction();
+                }
+            } finally {
+                unlockRW();
+            }
+        }
+    }
+
+    /**
+     * Adds up to the given number of stories that are stored but not yet in the full-text index,
+     * such as those stored before there was one, along with any text fetched for them.
+     *
+     * @return the number of stories indexed, which is less than the limit once all are.
+     */
+    public int indexUnsearchedStories(int limit) {
+        String q = "SELECT s." + DatabaseConstants.STORY_HASH +
+                   ", s." + DatabaseConstants.STORY_TITLE +
+                   ", s." + DatabaseConstants.STORY_AUTHORS +
+                   ", s." + DatabaseConstants.STORY_TAGS +
+                   ", c." + DatabaseConstants.STORY_CONTENT +
+                   ", t." + DatabaseConstants.STORY_TEXT_STORY_TEXT +
+                   " FROM " + DatabaseConstants.STORY_TABLE + " s" +
+                   " LEFT JOIN " + DatabaseConstants.STORY_CONTENT_TABLE + " c" +
+                   " ON c." + DatabaseConstants.STORY_CONTENT_STORY_HASH + " = s." + DatabaseConstants.STORY_HASH +
+                   " LEFT JOIN " + DatabaseConstants.STORY_TEXT_TABLE + " t" +
+                   " ON t." + DatabaseConstants.STORY_TEXT_STORY_HASH + " = s." + DatabaseConstants.STORY_HASH +
+                   " WHERE s." + DatabaseConstants.STORY_SEARCH_ID + " IS NULL" +
+                   " LIMIT " + limit;
+        int indexed = 0;
+        lockRW();
+        try {
+            dbRW.beginTransaction();
+            try {
+                SearchIndexWriter writer = new SearchIndexWriter();
+                SQLiteStatement setId = dbRW.compileStatement("UPDATE " + DatabaseConstants.STORY_TABLE +
+                                                              " SET " + DatabaseConstants.STORY_SEARCH_ID + " = ?" +
+                                                              " WHERE " + DatabaseConstants.STORY_HASH + " = ?");
+                Cursor c = dbRW.rawQuery(q, null);
+                try {
+                    while (c.moveToNext()) {
+                        String hash = c.getString(0);
+                        Long searchId = Story.getSearchId(hash);
+                        // tags are stored as a comma-joined list
+                        String tags = (c.isNull(3) ? null : c.getString(3).replace(',', ' '));
+                        writer.write(searchId, c.getString(1), c.getString(2), tags, StoryCodec.decode(c, 4));
+                        if (!c.isNull(5)) writer.writeText(searchId, StoryCodec.decode(c, 5));
+                        setId.bindLong(1, searchId);
+                        setId.bindString(2, hash);
+                        setId.executeUpdateDelete();
+                        indexed++;
+                    }
+                } finally {
+                    c.close();
+                    setId.close();
+                    writer.close();
+                }
+                dbRW.setTransactionSuccessful();
+            } finally {
+                dbRW.endTransaction();
+            }
+        } finally {
+            unlockRW();
+        }
+        return indexed;
+    }
+
+    /**
+     * Finds stored stories matching a full-text search, best matches first and then newest first.
+     *
+     * @return the hashes of up to the given number of matching stories.
+     */
+    public List<String> searchStoryHashes(String query, int limit) {
+        String q = "SELECT " + DatabaseConstants.STORY_TABLE + "." + DatabaseConstants.STORY_HASH +
+                   " FROM " + DatabaseConstants.STORY_TABLE +
+                   DatabaseConstants.getStorySearchJoin(query) +
+                   " ORDER BY " + DatabaseConstants.STORY_SEARCH_RANK + " DESC, " + DatabaseConstants.STORY_TIMESTAMP + " DESC" +
+                   " LIMIT " + limit;
+        List<String> hashes = new ArrayList<String>();
+        Cursor c = dbRO.rawQuery(q, null);
+        while (c.moveToNext()) {
+            hashes.add(c.getString(0));
+        }
+        c.close();
+        return hashes;
+    }
+
+    /**
+     * Upserts rows of the full-text index through prepared statements.  FTS tables can't be
+     * relied on to honour INSERT OR REPLACE, so each row is updated and, failing that, inserted.
+     * Must be used within a transaction, under the write lock.
+     */
+    private class SearchIndexWriter {
+        private final SQLiteStatement update = dbRW.compileStatement("UPDATE " + DatabaseConstants.STORY_SEARCH_TABLE +
+            " SET " + DatabaseConstants.STORY_SEARCH_TITLE + " = ?, " +
+            DatabaseConstants.STORY_SEARCH_AUTHORS + " = ?, " +
+            DatabaseConstants.STORY_SEARCH_TAGS + " = ?, " +
+            DatabaseConstants.STORY_SEARCH_CONTENT + " = ?" +
+            " WHERE docid = ?");
+        private final SQLiteStatement insert = dbRW.compileStatement("INSERT INTO " + DatabaseConstants.STORY_SEARCH_TABLE +
+            " (" + DatabaseConstants.STORY_SEARCH_TITLE + ", " +
+            DatabaseConstants.STORY_SEARCH_AUTHORS + ", " +
+            DatabaseConstants.STORY_SEARCH_TAGS + ", " +
+            DatabaseConstants.STORY_SEARCH_CONTENT + ", docid)" +
+            " VALUES (?, ?, ?, ?, ?)");
+        private final SQLiteStatement updateText = dbRW.compileStatement("UPDATE " + DatabaseConstants.STORY_SEARCH_TABLE +
+            " SET " + DatabaseConstants.STORY_SEARCH_TEXT + " = ?" +
+            " WHERE docid = ?");
+
+        void write(Long searchId, String title, String authors, String tags, String content) {
+            Object[] values = new Object[] {title, authors, tags, StoryUtils.getSearchText(content), searchId};
+            bind(update, values);
+            if (update.executeUpdateDelete() < 1) {
+                bind(insert, values);
+                insert.executeInsert();
+            }
+        }
+
+        void writeText(Long searchId, String text) {
+            bind(updateText, new Object[] {StoryUtils.getSearchText(text), searchId});
+            updateText.executeUpdateDelete();
+        }
+
+        void close() {
+            update.close();
+            insert.close();
+            updateText.close();
+        }
+
+        private void bind(SQLiteStatement statement, Object[] values) {
+            statement.clearBindings();
+            for (int i = 0; i < values.length; i++) {
+                DatabaseUtils.bindObjectToProgram(statement, i + 1, values[i]);
+            }
+        }
+    }
+
+    /**
+     * Stores a batch of original story texts, keyed by story hash, in a single transaction.  A
+     * text fetched again replaces the one stored, and counts as just read.  Any read times
+     * noted since the last write are saved along with them.
+     */
+    public void putStoryTexts(Map<String,String> texts) {
+        if (texts.size() < 1) return;
+        lockRW();
+        try {
+            dbRW.beginTransaction();
+            try {
+                writeStoryTextReads();
+                long now = System.currentTimeMillis();
+                for (Map.Entry<String,String> entry : texts.entrySet()) {
+                    byte[] encoded = StoryCodec.encode(entry.getValue());
+                    ContentValues values = new ContentValues();
+                    values.put(DatabaseConstants.STORY_TEXT_STORY_HASH, entry.getKey());
+                    values.put(DatabaseConstants.STORY_TEXT_STORY_TEXT, encoded);
+                    values.put(DatabaseConstants.STORY_TEXT_SIZE, (encoded == null) ? 0 : encoded.length);
+                    values.put(DatabaseConstants.STORY_TEXT_LAST_READ, now);
+                    dbRW.insertWithOnConflict(DatabaseConstants.STORY_TEXT_TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                    // stories not yet indexed get their text when they are
+                    values = new ContentValues();
+                    values.put(DatabaseConstants.STORY_SEARCH_TEXT, StoryUtils.getSearchText(entry.getValue()));
+                    dbRW.update(DatabaseConstants.STORY_SEARCH_TABLE, values, "docid = ?", new String[]{Story.getSearchId(entry.getKey()).toString()});
+                }
+                dbRW.setTransactionSuccessful();
+            } finally {
+                dbRW.endTransaction();
+            }
+        } finally {
+            unlockRW();
+        }
     }
 
     /**
@@ -483,7 +1504,12 @@ public class BlurDatabaseHelper {
     public void markSavedReadingSession() {
         ContentValues values = new ContentValues();
         values.put(DatabaseConstants.STORY_READ_THIS_SESSION, true);
-        synchronized (RW_MUTEX) {dbRW.update(DatabaseConstants.STORY_TABLE, values, DatabaseConstants.STORY_STARRED + " = 1", null);}
+        lockRW();
+        try {
+            dbRW.update(DatabaseConstants.STORY_TABLE, values, DatabaseConstants.STORY_STARRED + " = 1", null);
+        } finally {
+            unlockRW();
+        }
     }
 
     /**
@@ -492,7 +1518,12 @@ public class BlurDatabaseHelper {
     public void clearReadingSession() {
         ContentValues values = new ContentValues();
         values.put(DatabaseConstants.STORY_READ_THIS_SESSION, false);
-        synchronized (RW_MUTEX) {dbRW.update(DatabaseConstants.STORY_TABLE, values, null, null);}
+        lockRW();
+        try {
+            dbRW.update(DatabaseConstants.STORY_TABLE, values, null, null);
+        } finally {
+            unlockRW();
+        }
     }
 
     public Loader<Cursor> getSocialFeedsLoader(final StateFilter stateFilter) {
@@ -535,10 +1566,8 @@ public class BlurDatabaseHelper {
         return dbRO.query(DatabaseConstants.STARRED_STORY_COUNT_TABLE, null, null, null, null, null, null);
     }
 
-    public Loader<Cursor> getStoriesLoader(final FeedSet fs, final StateFilter stateFilter) {
-        return new QueryCursorLoader(context) {
-            protected Cursor createCursor() {return getStoriesCursor(fs, stateFilter, cancellationSignal);}
-        };
+    public StoryWindowLoader getStoriesLoader(FeedSet fs, StateFilter stateFilter) {
+        return new StoryWindowLoader(context, this, fs, stateFilter);
     }
 
     public Cursor getStoriesCursor(FeedSet fs, StateFilter stateFilter, CancellationSignal cancellationSignal) {
@@ -547,26 +1576,98 @@ public class BlurDatabaseHelper {
         return getStoriesCursor(fs, stateFilter, readFilter, order, cancellationSignal);
     }
 
+    /**
+     * Gets one page of a story list, in the same order as getStoriesCursor(): the stories after
+     * the given one (or from the start, if null), through the given one (or to the end, if null),
+     * and no more than the given number (or all of them, if zero).
+     */
+    public Cursor getStoriesPage(FeedSet fs, StateFilter stateFilter, StoryWindowLoader.Key after, StoryWindowLoader.Key through, int limit, CancellationSignal cancellationSignal) {
+        ReadFilter readFilter = PrefsUtils.getReadFilter(context, fs);
+        StoryOrder order = PrefsUtils.getStoryOrder(context, fs);
+        StoryQuery q = getStoriesPageQuery(fs, stateFilter, readFilter, order, after, through, limit);
+        return rawQuery(q.sql, q.args, cancellationSignal);
+    }
+
     private Cursor getStoriesCursor(FeedSet fs, StateFilter stateFilter, ReadFilter readFilter, StoryOrder order, CancellationSignal cancellationSignal) {
+        StoryQuery q = getStoriesQuery(fs, stateFilter, readFilter, order);
+        return rawQuery(q.sql, q.args, cancellationSignal);
+    }
+
+    /**
+     * A story list query, as built for getStoriesCursor() and getStoriesPage().
+     */
+    public static class StoryQuery {
+        public final String sql;
+        public final String[] args;
+
+        private StoryQuery(String sql, String[] args) {
+            this.sql = sql;
+            this.args = args;
+        }
+    }
+
+    /**
+     * The query getStoriesCursor() runs for a story list with the given filters and order.
+     */
+    public static StoryQuery getStoriesQuery(FeedSet fs, StateFilter stateFilter, ReadFilter readFilter, StoryOrder order) {
+        return getStoriesQuery(fs, stateFilter, readFilter, order, "", Collections.<String>emptyList(), 0);
+    }
+
+    /**
+     * The query getStoriesPage() runs for a page of a story list with the given filters and order.
+     */
+    public static StoryQuery getStoriesPageQuery(FeedSet fs, StateFilter stateFilter, ReadFilter readFilter, StoryOrder order, StoryWindowLoader.Key after, StoryWindowLoader.Key through, int limit) {
+        if (!StoryWindowLoader.isPageable(fs)) {
+            throw new IllegalArgumentException("story list is not ordered by timestamp and can't be paged");
+        }
+        StringBuilder keySelection = new StringBuilder();
+        List<String> keyArgs = new ArrayList<String>();
+        // the social river is ordered by its own copy of the key, so must be paged by it too
+        if (after != null) {
+            keySelection.append(" AND " + (fs.isAllSocial() ? DatabaseConstants.getSocialRiverAfterKeySelection(order) : DatabaseConstants.getStoryAfterKeySelection(order)));
+            after.addArgs(keyArgs);
+        }
+        if (through != null) {
+            keySelection.append(" AND " + (fs.isAllSocial() ? DatabaseConstants.getSocialRiverThroughKeySelection(order) : DatabaseConstants.getStoryThroughKeySelection(order)));
+            through.addArgs(keyArgs);
+        }
+        return getStoriesQuery(fs, stateFilter, readFilter, order, keySelection.toString(), keyArgs, limit);
+    }
+
+    private static StoryQuery getStoriesQuery(FeedSet fs, StateFilter stateFilter, ReadFilter readFilter, StoryOrder order, String keySelection, List<String> keyArgs, int limit) {
+        // a search narrows any set of stories down to those that match, best matches first
+        String searchJoin = "";
+        boolean ranked = false;
+        if (fs.getSearchQuery() != null) {
+            searchJoin = DatabaseConstants.getStorySearchJoin(fs.getSearchQuery());
+            ranked = true;
+        }
+        String limitClause = (limit > 0) ? (" LIMIT " + limit) : "";
 
         if (fs.getSingleFeed() != null) {
 
             StringBuilder q = new StringBuilder("SELECT ");
             q.append(TextUtils.join(",", DatabaseConstants.STORY_COLUMNS));
             q.append(" FROM " + DatabaseConstants.STORY_TABLE);
+            q.append(searchJoin);
             q.append(" WHERE " + DatabaseConstants.STORY_FEED_ID + " = ?");
-            DatabaseConstants.appendStorySelectionGroupOrder(q, readFilter, order, stateFilter, null);
-            return rawQuery(q.toString(), new String[]{fs.getSingleFeed()}, cancellationSignal);
+            q.append(keySelection);
+            DatabaseConstants.appendStorySelectionGroupOrder(q, readFilter, order, stateFilter, null, ranked);
+            q.append(limitClause);
+            return new StoryQuery(q.toString(), withArgs(keyArgs, fs.getSingleFeed()));
 
         } else if (fs.getMultipleFeeds() != null) {
 
             StringBuilder q = new StringBuilder(DatabaseConstants.MULTIFEED_STORIES_QUERY_BASE);
             q.append(" FROM " + DatabaseConstants.STORY_TABLE);
             q.append(DatabaseConstants.JOIN_FEEDS_ON_STORIES);
+            q.append(searchJoin);
             q.append(" WHERE " + DatabaseConstants.STORY_TABLE + "." + DatabaseConstants.STORY_FEED_ID + " IN ( ");
             q.append(TextUtils.join(",", fs.getMultipleFeeds()) + ")");
-            DatabaseConstants.appendStorySelectionGroupOrder(q, readFilter, order, stateFilter, null);
-            return rawQuery(q.toString(), null, cancellationSignal);
+            q.append(keySelection);
+            DatabaseConstants.appendStorySelectionGroupOrder(q, readFilter, order, stateFilter, null, ranked);
+            q.append(limitClause);
+            return new StoryQuery(q.toString(), withArgs(keyArgs));
 
         } else if (fs.getSingleSocialFeed() != null) {
 
@@ -574,43 +1675,70 @@ public class BlurDatabaseHelper {
             q.append(" FROM " + DatabaseConstants.SOCIALFEED_STORY_MAP_TABLE);
             q.append(DatabaseConstants.JOIN_STORIES_ON_SOCIALFEED_MAP);
             q.append(DatabaseConstants.JOIN_FEEDS_ON_STORIES);
+            q.append(searchJoin);
             q.append(" WHERE " + DatabaseConstants.SOCIALFEED_STORY_MAP_TABLE + "." + DatabaseConstants.SOCIALFEED_STORY_USER_ID + " = ? ");
-            DatabaseConstants.appendStorySelectionGroupOrder(q, readFilter, order, stateFilter, null);
-            return rawQuery(q.toString(), new String[]{fs.getSingleSocialFeed().getKey()}, cancellationSignal);
+            q.append(keySelection);
+            DatabaseConstants.appendStorySelectionGroupOrder(q, readFilter, order, stateFilter, null, ranked);
+            q.append(limitClause);
+            return new StoryQuery(q.toString(), withArgs(keyArgs, fs.getSingleSocialFeed().getKey()));
 
         } else if (fs.isAllNormal()) {
 
             StringBuilder q = new StringBuilder(DatabaseConstants.MULTIFEED_STORIES_QUERY_BASE);
             q.append(" FROM " + DatabaseConstants.STORY_TABLE);
             q.append(DatabaseConstants.JOIN_FEEDS_ON_STORIES);
+            q.append(searchJoin);
             q.append(" WHERE 1");
-            DatabaseConstants.appendStorySelectionGroupOrder(q, readFilter, order, stateFilter, null);
-            return rawQuery(q.toString(), null, cancellationSignal);
+            q.append(keySelection);
+            DatabaseConstants.appendStorySelectionGroupOrder(q, readFilter, order, stateFilter, null, ranked);
+            q.append(limitClause);
+            return new StoryQuery(q.toString(), withArgs(keyArgs));
 
         } else if (fs.isAllSocial()) {
 
+            // the social river already holds each shared story just once, in list order, so
+            // this needs neither a grouping nor a sort
             StringBuilder q = new StringBuilder(DatabaseConstants.MULTIFEED_STORIES_QUERY_BASE);
-            q.append(" FROM " + DatabaseConstants.SOCIALFEED_STORY_MAP_TABLE);
-            q.append(DatabaseConstants.JOIN_STORIES_ON_SOCIALFEED_MAP);
+            q.append(" FROM " + DatabaseConstants.SOCIAL_RIVER_TABLE);
+            q.append(DatabaseConstants.JOIN_STORIES_ON_SOCIAL_RIVER);
             q.append(DatabaseConstants.JOIN_FEEDS_ON_STORIES);
-            DatabaseConstants.appendStorySelectionGroupOrder(q, readFilter, order, stateFilter, DatabaseConstants.STORY_TABLE + "." + DatabaseConstants.STORY_ID);
-            return rawQuery(q.toString(), null, cancellationSignal);
+            q.append(searchJoin);
+            q.append(" WHERE 1");
+            q.append(keySelection);
+            DatabaseConstants.appendStorySelectionGroupOrder(q, readFilter, null, stateFilter, null, ranked);
+            q.append(ranked ? ", " : " ORDER BY ");
+            q.append(DatabaseConstants.getSocialRiverSortOrder(order));
+            q.append(limitClause);
+            return new StoryQuery(q.toString(), withArgs(keyArgs));
 
         } else if (fs.isAllSaved()) {
 
             StringBuilder q = new StringBuilder(DatabaseConstants.MULTIFEED_STORIES_QUERY_BASE);
             q.append(" FROM " + DatabaseConstants.STORY_TABLE);
             q.append(DatabaseConstants.JOIN_FEEDS_ON_STORIES);
+            q.append(searchJoin);
             q.append(" WHERE ((" + DatabaseConstants.STORY_STARRED + " = 1)");
             q.append(" OR (" + DatabaseConstants.STORY_READ_THIS_SESSION + " = 1))");
-            q.append(" ORDER BY " + DatabaseConstants.STARRED_STORY_ORDER);
-            return rawQuery(q.toString(), null, cancellationSignal);
+            q.append(" ORDER BY ");
+            if (ranked) q.append(DatabaseConstants.STORY_SEARCH_RANK + " DESC, ");
+            q.append(DatabaseConstants.STARRED_STORY_ORDER);
+            return new StoryQuery(q.toString(), null);
 
         } else {
             throw new IllegalStateException("Asked to get stories for FeedSet of unknown type.");
         }
     }
 
+    /**
+     * The given selection args followed by the given key args, or null if there are none.
+     */
+    private static String[] withArgs(List<String> keyArgs, String... args) {
+        if ((args.length + keyArgs.size()) < 1) return null;
+        List<String> all = new ArrayList<String>(Arrays.asList(args));
+        all.addAll(keyArgs);
+        return all.toArray(new String[all.size()]);
+    }
+
     public static void closeQuietly(Cursor c) {
         if (c == null) return;
         try {c.close();} catch (Exception e) {;}
@@ -0,0 +1,125 @@
+package com.newsblur.database;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes rows in bulk through prepared INSERT OR REPLACE statements, compiled once per table
+ * and column list and then re-used, binding each row's values positionally rather than
+ * building ContentValues for it.
+ *
+ * Not thread safe: callers must serialise access, as they already must for writes.
+ */
+public class BulkWriter {
+
+    /**
+     * Something that can be written as a row of a table.
+     */
+    public interface Row {
+        /** The values for this row, in the order of the columns it is written with. */
+        Object[] getRowValues();
+    }
+
+    private final SQLiteDatabase db;
+    private final Map<String,SQLiteStatement> statements = new HashMap<String,SQLiteStatement>();
+
+    BulkWriter(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    /**
+     * Inserts or replaces the given rows, in a transaction that must already be open on the
+     * DB this writer was made for.
+     */
+    void write(String table, String[] columns, List<? extends Row> rows) {
+        SQLiteStatement statement = getStatement(table, columns);
+        for (Row row : rows) {
+            bindRow(statement, columns, row.getRowValues());
+            statement.executeInsert();
+        }
+    }
+
+    void close() {
+        for (SQLiteStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+    }
+
+    private SQLiteStatement getStatement(String table, String[] columns) {
+        String key = table + ":" + TextUtils.join(",", columns);
+        SQLiteStatement statement = statements.get(key);
+        if (statement == null) {
+            StringBuilder q = new StringBuilder("INSERT OR REPLACE INTO " + table + " (");
+            q.append(TextUtils.join(",", columns));
+            q.append(") VALUES (");
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) q.append(",");
+                q.append("?");
+            }
+            q.append(")");
+            statement = db.compileStatement(q.toString());
+            statements.put(key, statement);
+        }
+        return statement;
+    }
+
+    private static void bindRow(SQLiteStatement statement, String[] columns, Object[] values) {
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException("row has " + values.length + " values for " + columns.length + " columns");
+        }
+        statement.clearBindings();
+        for (int i = 0; i < values.length; i++) {
+            DatabaseUtils.bindObjectToProgram(statement, i + 1, values[i]);
+        }
+    }
+
+    /**
+     * Wraps raw values as a row.
+     */
+    public static Row rowOf(final Object... values) {
+        return new Row() {
+            public Object[] getRowValues() {
+                return values;
+            }
+        };
+    }
+
+    /**
+     * Builds ContentValues from a row, for the places that still need them.
+     */
+    public static ContentValues toContentValues(String[] columns, Object[] values) {
+        ContentValues cv = new ContentValues(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                cv.putNull(columns[i]);
+            } else if (value instanceof String) {
+                cv.put(columns[i], (String) value);
+            } else if (value instanceof Long) {
+                cv.put(columns[i], (Long) value);
+            } else if (value instanceof Integer) {
+                cv.put(columns[i], (Integer) value);
+            } else if (value instanceof Boolean) {
+                cv.put(columns[i], (Boolean) value);
+            } else if (value instanceof Double) {
+                cv.put(columns[i], (Double) value);
+            } else if (value instanceof Float) {
+                cv.put(columns[i], (Float) value);
+            } else if (value instanceof byte[]) {
+                cv.put(columns[i], (byte[]) value);
+            } else {
+                throw new IllegalArgumentException("unsupported type for column " + columns[i] + ": " + value.getClass().getName());
+            }
+        }
+        return cv;
+    }
+
+}
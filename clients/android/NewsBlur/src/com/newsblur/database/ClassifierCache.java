@@ -0,0 +1,50 @@
+package com.newsblur.database;
+
+import com.newsblur.domain.Classifier;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The classifiers of each feed, as last read from or written to the DB.  This lets the reading
+ * UI have them without a query per story, and lets unchanged classifiers go unwritten.
+ *
+ * Cached classifiers are shared, so they must never be changed in place: change a copy and
+ * store that via BlurDatabaseHelper instead.
+ */
+class ClassifierCache {
+
+    private final Map<String,Classifier> classifiers = new HashMap<String,Classifier>();
+
+    /**
+     * The cached classifiers of a feed, or null if they have not been read yet.
+     */
+    synchronized Classifier get(String feedId) {
+        return classifiers.get(feedId);
+    }
+
+    /**
+     * Caches classifiers that were just written to the DB.
+     */
+    synchronized void put(String feedId, Classifier classifier) {
+        classifiers.put(feedId, classifier);
+    }
+
+    /**
+     * Caches classifiers that were just read from the DB, unless a write has cached newer ones
+     * in the meantime.
+     *
+     * @return whichever classifiers are now cached.
+     */
+    synchronized Classifier putIfAbsent(String feedId, Classifier classifier) {
+        Classifier cached = classifiers.get(feedId);
+        if (cached != null) return cached;
+        classifiers.put(feedId, classifier);
+        return classifier;
+    }
+
+    synchronized void clear() {
+        classifiers.clear();
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.newsblur.database;
 
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.text.TextUtils;
 import android.provider.BaseColumns;
 
@@ -53,6 +54,11 @@ public class DatabaseConstants {
 	public static final String SOCIALFEED_STORY_USER_ID = "socialfeed_story_user_id";
 	public static final String SOCIALFEED_STORY_STORYID = "socialfeed_story_storyid";
 
+    // each story shared by any social feed, once, for the all-shared-stories river
+    public static final String SOCIAL_RIVER_TABLE = "social_river";
+    public static final String SOCIAL_RIVER_STORY_ID = "social_river_story_id";
+    public static final String SOCIAL_RIVER_TIMESTAMP = "social_river_timestamp";
+
     public static final String STARRED_STORY_COUNT_TABLE = "starred_story_count";
     public static final String STARRED_STORY_COUNT_COUNT = "count";
 
@@ -74,7 +80,6 @@ public class DatabaseConstants {
 	public static final String STORY_TITLE = "title";
 	public static final String STORY_TIMESTAMP = "timestamp";
 	public static final String STORY_SHARED_DATE = "sharedDate";
-    public static final String STORY_CONTENT = "content";
     public static final String STORY_SHORT_CONTENT = "short_content";
 	public static final String STORY_COMMENT_COUNT = "comment_count";
 	public static final String STORY_FEED_ID = "feed_id";
@@ -82,6 +87,8 @@ public class DatabaseConstants {
 	public static final String STORY_INTELLIGENCE_TAGS = "intelligence_tags";
 	public static final String STORY_INTELLIGENCE_FEED = "intelligence_feed";
 	public static final String STORY_INTELLIGENCE_TITLE = "intelligence_title";
+    public static final String STORY_SCORE = "score";
+    public static final String STORY_SEARCH_ID = "search_id";
 	public static final String STORY_PERMALINK = "permalink";
 	public static final String STORY_READ = "read";
 	public static final String STORY_READ_THIS_SESSION = "read_this_session";
@@ -98,9 +105,23 @@ public class DatabaseConstants {
 	public static final String STORY_TAGS = "tags";
     public static final String STORY_HASH = "story_hash";
 
+    public static final String STORY_CONTENT_TABLE = "story_content";
+    public static final String STORY_CONTENT_STORY_HASH = "story_hash";
+    public static final String STORY_CONTENT = "content";
+
+    public static final String STORY_SEARCH_TABLE = "story_search";
+    public static final String STORY_SEARCH_TITLE = "title";
+    public static final String STORY_SEARCH_AUTHORS = "authors";
+    public static final String STORY_SEARCH_TAGS = "tags";
+    public static final String STORY_SEARCH_CONTENT = "content";
+    public static final String STORY_SEARCH_TEXT = "story_text";
+    public static final String STORY_SEARCH_RANK = "search_rank";
+
     public static final String STORY_TEXT_TABLE = "storytext";
     public static final String STORY_TEXT_STORY_HASH = "story_hash";
     public static final String STORY_TEXT_STORY_TEXT = "story_text";
+    public static final String STORY_TEXT_SIZE = "story_text_size";
+    public static final String STORY_TEXT_LAST_READ = "story_text_last_read";
 
 	public static final String COMMENT_TABLE = "comments";
 	public static final String COMMENT_ID = BaseColumns._ID;
@@ -135,6 +156,13 @@ public class DatabaseConstants {
     public static final String ACTION_FEED_ID = "feed_id";
     public static final String ACTION_INCLUDE_OLDER = "include_older";
     public static final String ACTION_INCLUDE_NEWER = "include_newer";
+    public static final String ACTION_DONE_REMOTE = "done_remote";
+
+    public static final String SYNC_QUEUE_TABLE = "sync_queue";
+    public static final String SYNC_QUEUE_NAME = "queue_name";
+    public static final String SYNC_QUEUE_ITEM = "item";
+    public static final String SYNC_QUEUE_VALUE = "value";
+    public static final String SYNC_QUEUE_CLAIMED = "claimed";
 
 	static final String FOLDER_SQL = "CREATE TABLE " + FOLDER_TABLE + " (" +
 		FOLDER_ID + INTEGER + " PRIMARY KEY AUTOINCREMENT, " +
@@ -201,7 +229,6 @@ public class DatabaseConstants {
 	static final String STORY_SQL = "CREATE TABLE " + STORY_TABLE + " (" + 
 		STORY_HASH + TEXT + ", " +
 		STORY_AUTHORS + TEXT + ", " +
-		STORY_CONTENT + TEXT + ", " +
 		STORY_SHORT_CONTENT + TEXT + ", " +
 		STORY_TIMESTAMP + INTEGER + ", " +
 		STORY_SHARED_DATE + INTEGER + ", " +
@@ -213,6 +240,8 @@ public class DatabaseConstants {
 		STORY_INTELLIGENCE_FEED + INTEGER + ", " +
 		STORY_INTELLIGENCE_TAGS + INTEGER + ", " +
 		STORY_INTELLIGENCE_TITLE + INTEGER + ", " +
+		STORY_SCORE + INTEGER + ", " +
+		STORY_SEARCH_ID + INTEGER + ", " +
 		STORY_COMMENT_COUNT + INTEGER + ", " +
 		STORY_SHARE_COUNT + INTEGER + ", " +
 		STORY_SOCIAL_USER_ID + TEXT + ", " +
@@ -229,9 +258,29 @@ public class DatabaseConstants {
 		STORY_TITLE + TEXT +
         ")";
 
+    // full story bodies are big, so they live apart from the stories that list views page through
+    static final String STORY_CONTENT_SQL = "CREATE TABLE " + STORY_CONTENT_TABLE + " (" +
+        STORY_CONTENT_STORY_HASH + TEXT + " PRIMARY KEY, " +
+        STORY_CONTENT + TEXT +
+        ")";
+
+    // full-text index of stories, keyed by a hash of the story hash, since the rowids of stories
+    // change every time they are replaced
+    static final String STORY_SEARCH_SQL = "CREATE VIRTUAL TABLE " + STORY_SEARCH_TABLE + " USING fts4(" +
+        STORY_SEARCH_TITLE + ", " +
+        STORY_SEARCH_AUTHORS + ", " +
+        STORY_SEARCH_TAGS + ", " +
+        STORY_SEARCH_CONTENT + ", " +
+        STORY_SEARCH_TEXT +
+        ")";
+
+    // texts are kept to a byte budget, evicting those least recently read, so each row keeps
+    // the size of its encoded text and when it was last fetched or read
     static final String STORY_TEXT_SQL = "CREATE TABLE " + STORY_TEXT_TABLE + " (" +
-        STORY_TEXT_STORY_HASH + TEXT + ", " +
-        STORY_TEXT_STORY_TEXT + TEXT +
+        STORY_TEXT_STORY_HASH + TEXT + " PRIMARY KEY, " +
+        STORY_TEXT_STORY_TEXT + TEXT + ", " +
+        STORY_TEXT_SIZE + INTEGER + " NOT NULL DEFAULT 0, " +
+        STORY_TEXT_LAST_READ + INTEGER + " NOT NULL DEFAULT 0" +
         ")";
 
 	static final String CLASSIFIER_SQL = "CREATE TABLE " + CLASSIFIER_TABLE + " (" +
@@ -253,6 +302,11 @@ public class DatabaseConstants {
 		"PRIMARY KEY (" + SOCIALFEED_STORY_STORYID  + ", " + SOCIALFEED_STORY_USER_ID + ") " + 
 	    ")";
 
+    static final String SOCIAL_RIVER_SQL = "CREATE TABLE " + SOCIAL_RIVER_TABLE + " (" +
+        SOCIAL_RIVER_STORY_ID + TEXT + " PRIMARY KEY, " +
+        SOCIAL_RIVER_TIMESTAMP + INTEGER + " NOT NULL" +
+        ")";
+
     static final String STARRED_STORIES_COUNT_SQL = "CREATE TABLE " + STARRED_STORY_COUNT_TABLE + " (" +
         STARRED_STORY_COUNT_COUNT + INTEGER + " NOT NULL" +
         ")";
@@ -270,9 +324,137 @@ public class DatabaseConstants {
         ACTION_STORY_HASH + TEXT + ", " +
         ACTION_FEED_ID + TEXT + ", " +
         ACTION_INCLUDE_OLDER + INTEGER + ", " +
-        ACTION_INCLUDE_NEWER + INTEGER +
+        ACTION_INCLUDE_NEWER + INTEGER + ", " +
+        ACTION_DONE_REMOTE + INTEGER + " DEFAULT 0" +
+        ")";
+
+    static final String SYNC_QUEUE_SQL = "CREATE TABLE " + SYNC_QUEUE_TABLE + " (" +
+        SYNC_QUEUE_NAME + TEXT + " NOT NULL, " +
+        SYNC_QUEUE_ITEM + TEXT + " NOT NULL, " +
+        SYNC_QUEUE_VALUE + INTEGER + " DEFAULT 0, " +
+        SYNC_QUEUE_CLAIMED + INTEGER + " DEFAULT 0, " +
+        "PRIMARY KEY (" + SYNC_QUEUE_NAME + ", " + SYNC_QUEUE_ITEM + ")" +
         ")";
 
+    // indices on the stories table, each matching the shape of one or more hot queries. the
+    // SQL is idempotent so that it can be shared by table creation and migrations.
+    public static final String STORY_HASH_INDEX = "stories_hash_read_idx";
+    public static final String STORY_FEED_TIMESTAMP_INDEX = "stories_feed_timestamp_idx";
+    public static final String STORY_TIMESTAMP_INDEX = "stories_timestamp_idx";
+    public static final String STORY_STARRED_INDEX = "stories_starred_idx";
+    public static final String STORY_READ_THIS_SESSION_INDEX = "stories_session_idx";
+    static final String[] STORY_INDEX_SQL = {
+        // lookups and updates by hash, and whole-table hash/read-state reconciliation
+        "CREATE INDEX IF NOT EXISTS " + STORY_HASH_INDEX + " ON " + STORY_TABLE + " (" + STORY_HASH + ", " + STORY_READ + ")",
+        // single- and multi-feed story lists, range mark-reads, and per-feed cleanup.  the story ID
+        // breaks timestamp ties, so that lists can be paged by (timestamp, story ID) without a sort.
+        "CREATE INDEX IF NOT EXISTS " + STORY_FEED_TIMESTAMP_INDEX + " ON " + STORY_TABLE + " (" + STORY_FEED_ID + ", " + STORY_TIMESTAMP + ", " + STORY_ID + ")",
+        // the all-stories river and global range mark-reads
+        "CREATE INDEX IF NOT EXISTS " + STORY_TIMESTAMP_INDEX + " ON " + STORY_TABLE + " (" + STORY_TIMESTAMP + ", " + STORY_ID + ")",
+        // saved stories
+        "CREATE INDEX IF NOT EXISTS " + STORY_STARRED_INDEX + " ON " + STORY_TABLE + " (" + STORY_STARRED + ", " + STORY_STARRED_DATE + ")",
+        // the other half of the saved stories selection
+        "CREATE INDEX IF NOT EXISTS " + STORY_READ_THIS_SESSION_INDEX + " ON " + STORY_TABLE + " (" + STORY_READ_THIS_SESSION + ")"
+    };
+
+    // unread and intelligence filtered story lists, and unread counts straight off the index
+    public static final String STORY_FEED_READ_SCORE_INDEX = "stories_feed_read_score_idx";
+    static final String STORY_FEED_READ_SCORE_INDEX_SQL = "CREATE INDEX IF NOT EXISTS " + STORY_FEED_READ_SCORE_INDEX +
+        " ON " + STORY_TABLE + " (" + STORY_FEED_ID + ", " + STORY_READ + ", " + STORY_SCORE + ")";
+
+    // joining search matches back to their stories
+    public static final String STORY_SEARCH_ID_INDEX = "stories_search_idx";
+    static final String STORY_SEARCH_ID_INDEX_SQL = "CREATE INDEX IF NOT EXISTS " + STORY_SEARCH_ID_INDEX +
+        " ON " + STORY_TABLE + " (" + STORY_SEARCH_ID + ")";
+
+    // the classifiers of a feed, and one row per classifier
+    public static final String CLASSIFIER_INDEX = "classifiers_feed_type_key_idx";
+    static final String CLASSIFIER_INDEX_SQL = "CREATE UNIQUE INDEX IF NOT EXISTS " + CLASSIFIER_INDEX +
+        " ON " + CLASSIFIER_TABLE + " (" + CLASSIFIER_ID + ", " + CLASSIFIER_TYPE + ", " + CLASSIFIER_KEY + ")";
+
+    // story texts in eviction order
+    public static final String STORY_TEXT_LAST_READ_INDEX = "storytext_last_read_idx";
+    static final String STORY_TEXT_LAST_READ_INDEX_SQL = "CREATE INDEX IF NOT EXISTS " + STORY_TEXT_LAST_READ_INDEX +
+        " ON " + STORY_TEXT_TABLE + " (" + STORY_TEXT_LAST_READ + ")";
+
+    // the social river in list order, with the story ID to break ties as for the story indices
+    public static final String SOCIAL_RIVER_INDEX = "social_river_timestamp_idx";
+    static final String SOCIAL_RIVER_INDEX_SQL = "CREATE INDEX IF NOT EXISTS " + SOCIAL_RIVER_INDEX +
+        " ON " + SOCIAL_RIVER_TABLE + " (" + SOCIAL_RIVER_TIMESTAMP + ", " + SOCIAL_RIVER_STORY_ID + ")";
+
+    // keeps the stored score of a story in step with its intelligence, whoever updates the latter.
+    // new stories come with their score already set.
+    public static final String STORY_SCORE_TRIGGER = "stories_score_trigger";
+    static final String STORY_SCORE_TRIGGER_SQL = "CREATE TRIGGER IF NOT EXISTS " + STORY_SCORE_TRIGGER +
+        " AFTER UPDATE OF " + STORY_INTELLIGENCE_AUTHORS + ", " + STORY_INTELLIGENCE_FEED + ", " +
+        STORY_INTELLIGENCE_TAGS + ", " + STORY_INTELLIGENCE_TITLE + " ON " + STORY_TABLE +
+        " BEGIN " +
+        "UPDATE " + STORY_TABLE + " SET " + STORY_SCORE + " = " + getIntelligenceScore("NEW.") +
+        " WHERE " + STORY_ID + " = NEW." + STORY_ID + "; " +
+        "END";
+
+    // keeps the unread counts of feeds and social feeds up to date as stories are marked (un)read
+    // or rescored, by backing out each story's old contribution and adding its new one.  the
+    // counts are clamped at zero, since they start out as whatever the server last told us.
+    // stories read elsewhere, which the server has already counted, and re-fetched stories,
+    // which are written by INSERT OR REPLACE and so never fire this, are recounted instead.
+    public static final String STORY_UNREAD_COUNT_TRIGGER = "stories_unread_count_trigger";
+    static final String STORY_UNREAD_COUNT_TRIGGER_SQL = "CREATE TRIGGER IF NOT EXISTS " + STORY_UNREAD_COUNT_TRIGGER +
+        " AFTER UPDATE OF " + STORY_READ + ", " + STORY_SCORE + " ON " + STORY_TABLE +
+        " WHEN (OLD." + STORY_READ + " = 0) OR (NEW." + STORY_READ + " = 0)" +
+        " BEGIN " +
+        "UPDATE " + FEED_TABLE + " SET " + getUnreadCountDeltas(FEED_NEGATIVE_COUNT, FEED_NEUTRAL_COUNT, FEED_POSITIVE_COUNT) +
+        " WHERE " + FEED_ID + " = NEW." + STORY_FEED_ID + "; " +
+        "UPDATE " + SOCIALFEED_TABLE + " SET " + getUnreadCountDeltas(SOCIAL_FEED_NEGATIVE_COUNT, SOCIAL_FEED_NEUTRAL_COUNT, SOCIAL_FEED_POSITIVE_COUNT) +
+        " WHERE " + SOCIAL_FEED_ID + " IN (SELECT " + SOCIALFEED_STORY_USER_ID + " FROM " + SOCIALFEED_STORY_MAP_TABLE +
+        " WHERE " + SOCIALFEED_STORY_STORYID + " = NEW." + STORY_ID + "); " +
+        "END";
+
+    // drops the body of a story along with it, unless another row still shares its hash
+    public static final String STORY_CONTENT_DELETE_TRIGGER = "stories_content_delete_trigger";
+    static final String STORY_CONTENT_DELETE_TRIGGER_SQL = "CREATE TRIGGER IF NOT EXISTS " + STORY_CONTENT_DELETE_TRIGGER +
+        " AFTER DELETE ON " + STORY_TABLE +
+        " BEGIN " +
+        "DELETE FROM " + STORY_CONTENT_TABLE + " WHERE " + STORY_CONTENT_STORY_HASH + " = OLD." + STORY_HASH +
+        " AND NOT EXISTS (SELECT 1 FROM " + STORY_TABLE + " WHERE " + STORY_HASH + " = OLD." + STORY_HASH + "); " +
+        "END";
+
+    // drops a story from the search index along with it, unless another row still shares its hash
+    public static final String STORY_SEARCH_DELETE_TRIGGER = "stories_search_delete_trigger";
+    static final String STORY_SEARCH_DELETE_TRIGGER_SQL = "CREATE TRIGGER IF NOT EXISTS " + STORY_SEARCH_DELETE_TRIGGER +
+        " AFTER DELETE ON " + STORY_TABLE +
+        " WHEN OLD." + STORY_SEARCH_ID + " IS NOT NULL" +
+        " BEGIN " +
+        "DELETE FROM " + STORY_SEARCH_TABLE + " WHERE docid = OLD." + STORY_SEARCH_ID +
+        " AND NOT EXISTS (SELECT 1 FROM " + STORY_TABLE + " WHERE " + STORY_HASH + " = OLD." + STORY_HASH + "); " +
+        "END";
+
+    // drops a story from the social river along with it
+    public static final String SOCIAL_RIVER_DELETE_TRIGGER = "stories_social_river_delete_trigger";
+    static final String SOCIAL_RIVER_DELETE_TRIGGER_SQL = "CREATE TRIGGER IF NOT EXISTS " + SOCIAL_RIVER_DELETE_TRIGGER +
+        " AFTER DELETE ON " + STORY_TABLE +
+        " BEGIN " +
+        "DELETE FROM " + SOCIAL_RIVER_TABLE + " WHERE " + SOCIAL_RIVER_STORY_ID + " = OLD." + STORY_ID + "; " +
+        "END";
+
+    // fills the social river from the share mappings of stories already stored
+    static final String SOCIAL_RIVER_FILL_SQL = "INSERT OR REPLACE INTO " + SOCIAL_RIVER_TABLE +
+        " (" + SOCIAL_RIVER_STORY_ID + ", " + SOCIAL_RIVER_TIMESTAMP + ")" +
+        " SELECT " + STORY_ID + ", " + STORY_TIMESTAMP + " FROM " + STORY_TABLE +
+        " WHERE " + STORY_ID + " IN (SELECT " + SOCIALFEED_STORY_STORYID + " FROM " + SOCIALFEED_STORY_MAP_TABLE + ")";
+
+    private static String getUnreadCountDeltas(String negColumn, String neutColumn, String posColumn) {
+        return negColumn + " = " + getUnreadCountDelta(negColumn, " < 0") + ", " +
+               neutColumn + " = " + getUnreadCountDelta(neutColumn, " = 0") + ", " +
+               posColumn + " = " + getUnreadCountDelta(posColumn, " > 0");
+    }
+
+    private static String getUnreadCountDelta(String column, String scoreTest) {
+        return "MAX(0, " + column +
+            " - (CASE WHEN (OLD." + STORY_READ + " = 0) AND (OLD." + STORY_SCORE + scoreTest + ") THEN 1 ELSE 0 END)" +
+            " + (CASE WHEN (NEW." + STORY_READ + " = 0) AND (NEW." + STORY_SCORE + scoreTest + ") THEN 1 ELSE 0 END))";
+    }
+
 	public static final String[] FEED_COLUMNS = {
 		FEED_TABLE + "." + FEED_ACTIVE, FEED_TABLE + "." + FEED_ID, FEED_TABLE + "." + FEED_FAVICON_URL, FEED_TABLE + "." + FEED_TITLE, FEED_TABLE + "." + FEED_LINK, FEED_TABLE + "." + FEED_ADDRESS, FEED_TABLE + "." + FEED_SUBSCRIBERS, FEED_TABLE + "." + FEED_UPDATED_SECONDS, FEED_TABLE + "." + FEED_FAVICON_FADE, FEED_TABLE + "." + FEED_FAVICON_COLOR, FEED_TABLE + "." + FEED_FAVICON_BORDER, FEED_TABLE + "." + FEED_FAVICON_TEXT,
 		FEED_TABLE + "." + FEED_FAVICON, FEED_TABLE + "." + FEED_POSITIVE_COUNT, FEED_TABLE + "." + FEED_NEUTRAL_COUNT, FEED_TABLE + "." + FEED_NEGATIVE_COUNT
@@ -291,20 +473,37 @@ public class DatabaseConstants {
 	};
 
     public static final String SUM_STORY_TOTAL = "storyTotal";
-	private static String STORY_SUM_TOTAL = " CASE " + 
-	"WHEN MAX(" + STORY_INTELLIGENCE_AUTHORS + "," + STORY_INTELLIGENCE_TAGS + "," + STORY_INTELLIGENCE_TITLE + ") > 0 " + 
-	"THEN MAX(" + STORY_INTELLIGENCE_AUTHORS + "," + STORY_INTELLIGENCE_TAGS + "," + STORY_INTELLIGENCE_TITLE + ") " +
-	"WHEN MIN(" + STORY_INTELLIGENCE_AUTHORS + "," + STORY_INTELLIGENCE_TAGS + "," + STORY_INTELLIGENCE_TITLE + ") < 0 " + 
-	"THEN MIN(" + STORY_INTELLIGENCE_AUTHORS + "," + STORY_INTELLIGENCE_TAGS + "," + STORY_INTELLIGENCE_TITLE + ") " +
-	"ELSE " + STORY_INTELLIGENCE_FEED + " " +
-	"END AS " + SUM_STORY_TOTAL;
-	private static final String STORY_INTELLIGENCE_BEST = SUM_STORY_TOTAL + " > 0 ";
-	private static final String STORY_INTELLIGENCE_SOME = SUM_STORY_TOTAL + " >= 0 ";
-	private static final String STORY_INTELLIGENCE_NEUT = SUM_STORY_TOTAL + " = 0 ";
-	private static final String STORY_INTELLIGENCE_NEG = SUM_STORY_TOTAL + " < 0 ";
+    /**
+     * The overall intelligence score of a story: its strongest classifier, else its feed's.  This is
+     * stored as STORY_SCORE, which is what queries should use.
+     */
+	public static final String STORY_INTELLIGENCE_SCORE = getIntelligenceScore("");
+
+    /**
+     * The intelligence score expression, for the story columns with the given prefix, such as
+     * "NEW." within a trigger.
+     */
+    private static String getIntelligenceScore(String prefix) {
+        String authors = prefix + STORY_INTELLIGENCE_AUTHORS;
+        String tags = prefix + STORY_INTELLIGENCE_TAGS;
+        String title = prefix + STORY_INTELLIGENCE_TITLE;
+        return " CASE " +
+            "WHEN MAX(" + authors + "," + tags + "," + title + ") > 0 " +
+            "THEN MAX(" + authors + "," + tags + "," + title + ") " +
+            "WHEN MIN(" + authors + "," + tags + "," + title + ") < 0 " +
+            "THEN MIN(" + authors + "," + tags + "," + title + ") " +
+            "ELSE " + prefix + STORY_INTELLIGENCE_FEED + " " +
+            "END";
+    }
+
+	private static String STORY_SUM_TOTAL = STORY_SCORE + " AS " + SUM_STORY_TOTAL;
+	private static final String STORY_INTELLIGENCE_BEST = STORY_SCORE + " > 0 ";
+	private static final String STORY_INTELLIGENCE_SOME = STORY_SCORE + " >= 0 ";
+	private static final String STORY_INTELLIGENCE_NEUT = STORY_SCORE + " = 0 ";
+	private static final String STORY_INTELLIGENCE_NEG = STORY_SCORE + " < 0 ";
 
 	public static final String[] STORY_COLUMNS = {
-		STORY_AUTHORS, STORY_COMMENT_COUNT, STORY_CONTENT, STORY_SHORT_CONTENT, STORY_TIMESTAMP, STORY_SHARED_DATE, STORY_SHORTDATE, STORY_LONGDATE,
+		STORY_AUTHORS, STORY_COMMENT_COUNT, STORY_SHORT_CONTENT, STORY_TIMESTAMP, STORY_SHARED_DATE, STORY_SHORTDATE, STORY_LONGDATE,
         STORY_TABLE + "." + STORY_FEED_ID, STORY_TABLE + "." + STORY_ID, STORY_INTELLIGENCE_AUTHORS, STORY_INTELLIGENCE_FEED, STORY_INTELLIGENCE_TAGS,
         STORY_INTELLIGENCE_TITLE, STORY_PERMALINK, STORY_READ, STORY_STARRED, STORY_STARRED_DATE, STORY_SHARE_COUNT, STORY_TAGS, STORY_TITLE,
         STORY_SOCIAL_USER_ID, STORY_SOURCE_USER_ID, STORY_SHARED_USER_IDS, STORY_FRIEND_USER_IDS, STORY_PUBLIC_USER_IDS, STORY_SUM_TOTAL, STORY_HASH
@@ -320,6 +519,9 @@ public class DatabaseConstants {
     public static final String JOIN_STORIES_ON_SOCIALFEED_MAP = 
         " INNER JOIN " + STORY_TABLE + " ON " + STORY_TABLE + "." + STORY_ID + " = " + SOCIALFEED_STORY_MAP_TABLE + "." + SOCIALFEED_STORY_STORYID;
 
+    public static final String JOIN_STORIES_ON_SOCIAL_RIVER =
+        " INNER JOIN " + STORY_TABLE + " ON " + STORY_TABLE + "." + STORY_ID + " = " + SOCIAL_RIVER_TABLE + "." + SOCIAL_RIVER_STORY_ID;
+
     public static final String STARRED_STORY_ORDER = STORY_STARRED_DATE + " DESC";
 
     /**
@@ -327,6 +529,14 @@ public class DatabaseConstants {
      * filtration parameters, dedup column, and ordering requirements.
      */ 
     public static void appendStorySelectionGroupOrder(StringBuilder q, ReadFilter readFilter, StoryOrder order, StateFilter stateFilter, String dedupCol) {
+        appendStorySelectionGroupOrder(q, readFilter, order, stateFilter, dedupCol, false);
+    }
+
+    /**
+     * As above, but for a query that includes the search join, optionally putting the best
+     * matches first.
+     */
+    public static void appendStorySelectionGroupOrder(StringBuilder q, ReadFilter readFilter, StoryOrder order, StateFilter stateFilter, String dedupCol, boolean ranked) {
         if (readFilter == ReadFilter.UNREAD) {
             // When a user is viewing "unread only" stories, what they really want are stories that were unread when they started reading,
             // or else the selection set will constantly change as they see things!
@@ -345,11 +555,43 @@ public class DatabaseConstants {
             q.append( " GROUP BY " + dedupCol);
         }
 
-        if (order != null) {
+        if (ranked) {
+            q.append(" ORDER BY " + STORY_SEARCH_RANK + " DESC");
+            if (order != null) q.append(", " + getStorySortOrder(order));
+        } else if (order != null) {
             q.append(" ORDER BY " + getStorySortOrder(order));
         }
     }
 
+    /**
+     * A join that limits a story query to those matching a full-text search, and gives each its
+     * rank as STORY_SEARCH_RANK.  Matches are ranked by how many times the search terms appear,
+     * counting the (col, term, offset, size) quadruples that offsets() reports.
+     */
+    public static String getStorySearchJoin(String query) {
+        String offsets = "offsets(" + STORY_SEARCH_TABLE + ")";
+        return " INNER JOIN (SELECT docid AS search_docid, " +
+            "(LENGTH(" + offsets + ") - LENGTH(REPLACE(" + offsets + ", ' ', '')) + 1) / 4 AS " + STORY_SEARCH_RANK +
+            " FROM " + STORY_SEARCH_TABLE +
+            " WHERE " + STORY_SEARCH_TABLE + " MATCH " + DatabaseUtils.sqlEscapeString(getSearchMatch(query)) + ")" +
+            " ON " + STORY_TABLE + "." + STORY_SEARCH_ID + " = search_docid";
+    }
+
+    /**
+     * Turns what the user typed into an FTS query matching stories with every word in it, or
+     * words starting with it.  Anything that isn't a letter or digit is dropped, so user input
+     * can never be a malformed query.
+     */
+    public static String getSearchMatch(String query) {
+        StringBuilder match = new StringBuilder();
+        for (String term : query.split("[^\\p{L}\\p{N}]+")) {
+            if (term.length() < 1) continue;
+            if (match.length() > 0) match.append(" ");
+            match.append(term).append("*");
+        }
+        return match.toString();
+    }
+
     /**
      * Selection args to filter stories.
      */
@@ -402,12 +644,60 @@ public class DatabaseConstants {
         }
     }
 
+    /**
+     * The order of a story list.  Ties on timestamp are broken by story ID, so that every story
+     * has a unique place in the list and lists can be paged by that pair.
+     */
     public static String getStorySortOrder(StoryOrder storyOrder) {
-        if (storyOrder == StoryOrder.NEWEST) {
-            return STORY_TIMESTAMP + " DESC";
-        } else {
-            return STORY_TIMESTAMP + " ASC";
-        }
+        return getSortOrder(storyOrder, STORY_TIMESTAMP, STORY_TABLE + "." + STORY_ID);
+    }
+
+    /**
+     * The same order for the social river, by its own copy of the key, so that it can be read
+     * straight off the river index.
+     */
+    public static String getSocialRiverSortOrder(StoryOrder storyOrder) {
+        return getSortOrder(storyOrder, SOCIAL_RIVER_TABLE + "." + SOCIAL_RIVER_TIMESTAMP, SOCIAL_RIVER_TABLE + "." + SOCIAL_RIVER_STORY_ID);
+    }
+
+    private static String getSortOrder(StoryOrder storyOrder, String timestamp, String id) {
+        String direction = (storyOrder == StoryOrder.NEWEST) ? " DESC" : " ASC";
+        return timestamp + direction + ", " + id + direction;
+    }
+
+    /**
+     * A selection of the stories that come after a given one in a list of the given order.  Its
+     * args are that story's timestamp, its timestamp again, and its ID.  The timestamp is bounded
+     * on its own, and not just within the OR, so that it can narrow the index range.
+     */
+    public static String getStoryAfterKeySelection(StoryOrder storyOrder) {
+        return getKeySelection(STORY_TABLE + "." + STORY_TIMESTAMP, STORY_TABLE + "." + STORY_ID, (storyOrder == StoryOrder.NEWEST) ? "<" : ">", false);
+    }
+
+    /**
+     * A selection of the stories that come no later than a given one in a list of the given
+     * order, taking args as above.
+     */
+    public static String getStoryThroughKeySelection(StoryOrder storyOrder) {
+        return getKeySelection(STORY_TABLE + "." + STORY_TIMESTAMP, STORY_TABLE + "." + STORY_ID, (storyOrder == StoryOrder.NEWEST) ? ">" : "<", true);
+    }
+
+    /**
+     * As getStoryAfterKeySelection(), for the social river.
+     */
+    public static String getSocialRiverAfterKeySelection(StoryOrder storyOrder) {
+        return getKeySelection(SOCIAL_RIVER_TABLE + "." + SOCIAL_RIVER_TIMESTAMP, SOCIAL_RIVER_TABLE + "." + SOCIAL_RIVER_STORY_ID, (storyOrder == StoryOrder.NEWEST) ? "<" : ">", false);
+    }
+
+    /**
+     * As getStoryThroughKeySelection(), for the social river.
+     */
+    public static String getSocialRiverThroughKeySelection(StoryOrder storyOrder) {
+        return getKeySelection(SOCIAL_RIVER_TABLE + "." + SOCIAL_RIVER_TIMESTAMP, SOCIAL_RIVER_TABLE + "." + SOCIAL_RIVER_STORY_ID, (storyOrder == StoryOrder.NEWEST) ? ">" : "<", true);
+    }
+
+    private static String getKeySelection(String timestamp, String id, String op, boolean inclusive) {
+        return "(" + timestamp + " " + op + "= ? AND (" + timestamp + " " + op + " ? OR " + id + " " + op + (inclusive ? "=" : "") + " ?))";
     }
     
     public static Long nullIfZero(Long l) {
@@ -27,14 +27,12 @@ public class FeedProvider extends ContentProvider {
 	public static final String AUTHORITY = "com.newsblur";
 	public static final String VERSION = "v1";
 	
-	public static final Uri CLASSIFIER_URI = Uri.parse("content://" + AUTHORITY + "/" + VERSION + "/classifiers/");
 	public static final Uri USERS_URI = Uri.parse("content://" + AUTHORITY + "/" + VERSION + "/users/");
 	public static final Uri COMMENTS_URI = Uri.parse("content://" + AUTHORITY + "/" + VERSION + "/comments/");
 	public static final Uri REPLIES_URI = Uri.parse("content://" + AUTHORITY + "/" + VERSION + "/replies/");
 	
 	private static final int STORY_COMMENTS = 9;
 	private static final int REPLIES = 15;
-	private static final int CLASSIFIERS_FOR_FEED = 19;
 	private static final int USERS = 21;
 	
 	private BlurDatabase databaseHelper;
@@ -42,7 +40,6 @@ public class FeedProvider extends ContentProvider {
 	private static UriMatcher uriMatcher;
 	static {
 		uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
-		uriMatcher.addURI(AUTHORITY, VERSION + "/classifiers/#/", CLASSIFIERS_FOR_FEED);
 		uriMatcher.addURI(AUTHORITY, VERSION + "/comments/", STORY_COMMENTS);
 		uriMatcher.addURI(AUTHORITY, VERSION + "/replies/", REPLIES);
 		uriMatcher.addURI(AUTHORITY, VERSION + "/users/", USERS);
@@ -50,14 +47,7 @@ public class FeedProvider extends ContentProvider {
 
 	@Override
 	public int delete(Uri uri, String selection, String[] selectionArgs) {
-		final SQLiteDatabase db = databaseHelper.getWritableDatabase();
-		switch (uriMatcher.match(uri)) {
-			case CLASSIFIERS_FOR_FEED:
-				return db.delete(DatabaseConstants.CLASSIFIER_TABLE, DatabaseConstants.CLASSIFIER_ID + " = ?", new String[] { uri.getLastPathSegment() });
-				
-			default:
-				return 0;
-		}
+		return 0;
 	}
 
 	@Override
@@ -76,12 +66,6 @@ public class FeedProvider extends ContentProvider {
 			resultUri = uri.buildUpon().appendPath(values.getAsString(DatabaseConstants.USER_USERID)).build();
 			break;
 			
-			// Inserting a classifier for a feed
-		case CLASSIFIERS_FOR_FEED:
-			values.put(DatabaseConstants.CLASSIFIER_ID, uri.getLastPathSegment());
-			db.insertWithOnConflict(DatabaseConstants.CLASSIFIER_TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
-			break;
-
 			// Inserting a comment
 		case STORY_COMMENTS:
 			db.insertWithOnConflict(DatabaseConstants.COMMENT_TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
@@ -101,7 +85,7 @@ public class FeedProvider extends ContentProvider {
 
 	@Override
 	public boolean onCreate() {
-		databaseHelper = new BlurDatabase(getContext().getApplicationContext());
+		databaseHelper = BlurDatabase.getInstance(getContext());
 		return true;
 	}
 
@@ -154,10 +138,6 @@ public class FeedProvider extends ContentProvider {
 		case USERS:
 			return db.query(DatabaseConstants.USER_TABLE, projection, selection, selectionArgs, null, null, null);	
 
-			// Query for classifiers for a given feed
-		case CLASSIFIERS_FOR_FEED:
-			return db.query(DatabaseConstants.CLASSIFIER_TABLE, null, DatabaseConstants.CLASSIFIER_ID + " = ?", new String[] { uri.getLastPathSegment() }, null, null, null);
-			
 			// Querying for a stories from a feed
 		case STORY_COMMENTS:
 			if (selectionArgs.length == 1) {
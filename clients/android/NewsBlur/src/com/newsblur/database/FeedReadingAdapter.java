@@ -4,7 +4,6 @@ import android.app.Fragment;
 import android.app.FragmentManager;
 
 import com.newsblur.activity.ReadingAdapter;
-import com.newsblur.domain.Classifier;
 import com.newsblur.domain.Feed;
 import com.newsblur.domain.Story;
 import com.newsblur.fragment.ReadingItemFragment;
@@ -13,18 +12,16 @@ import com.newsblur.util.DefaultFeedView;
 public class FeedReadingAdapter extends ReadingAdapter {
 
 	private final Feed feed;
-	private Classifier classifier;
 
-	public FeedReadingAdapter(FragmentManager fm, Feed feed, Classifier classifier, DefaultFeedView defaultFeedView) {
+	public FeedReadingAdapter(FragmentManager fm, Feed feed, DefaultFeedView defaultFeedView) {
         // sourceUserId not required for feed reading
 		super(fm, defaultFeedView, null);
 		this.feed = feed;
-		this.classifier = classifier;
     }
 
 	@Override
 	protected synchronized ReadingItemFragment getReadingItemFragment(Story story) {
-        return ReadingItemFragment.newInstance(story, feed.title, feed.faviconColor, feed.faviconFade, feed.faviconBorder, feed.faviconText, feed.faviconUrl, classifier, false, defaultFeedView, sourceUserId);
+        return ReadingItemFragment.newInstance(story, feed.title, feed.faviconColor, feed.faviconFade, feed.faviconBorder, feed.faviconText, feed.faviconUrl, false, defaultFeedView, sourceUserId);
 	}
 
 }
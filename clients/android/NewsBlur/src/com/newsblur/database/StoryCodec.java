@@ -0,0 +1,149 @@
+package com.newsblur.database;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import com.newsblur.util.AppConstants;
+
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the large HTML columns (story bodies and original text) for storage.  Values are
+ * deflated against a preset dictionary of markup common to feed HTML, which is where most of
+ * the saving on short stories comes from.
+ *
+ * An encoded value is a BLOB: one format byte, the big-endian length of the UTF-8 text, then
+ * the zlib stream.  Values stored before compression are plain TEXT and are read as they are.
+ */
+public class StoryCodec {
+
+    // the format byte of values deflated against DICTIONARY.  the dictionary can never change
+    // for a given format, so changing it means adding a format.
+    private static final byte FORMAT_DEFLATE_DICT_1 = 1;
+    private static final int HEADER_SIZE = 5;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // deflate finds dictionary matches more cheaply the nearer they are to the end, so the most
+    // common fragments come last
+    private static final byte[] DICTIONARY = (
+        "<table><tbody><tr><td></td></tr></tbody></table><h1></h1><h2></h2><h3></h3><h4></h4>" +
+        "<pre><code></code></pre><sup></sup><hr /><ol><li></li></ol><noscript></noscript>" +
+        "<iframe width=\"560\" height=\"315\" src=\"https://www.youtube.com/embed/\" frameborder=\"0\" allowfullscreen></iframe>" +
+        "<div class=\"feedflare\"><a href=\"http://feeds.feedburner.com/~ff/\"><img src=\"http://feeds.feedburner.com/~ff/?d=\" border=\"0\"></img></a></div>" +
+        "<img src=\"http://feeds.feedburner.com/~r/\" height=\"1\" width=\"1\" alt=\"\"/>" +
+        "<figure><figcaption></figcaption></figure><blockquote></blockquote><ul><li></li></ul>" +
+        "<span style=\"font-weight: bold;\"></span><b></b><i></i><em></em><strong></strong>" +
+        "The post appeared first on Read more Continue reading &raquo; &hellip; &#8217;s &#8220; &#8221; &mdash; &nbsp;" +
+        " target=\"_blank\" rel=\"nofollow\" title=\"\" class=\"aligncenter size-full wp-image-\" " +
+        "<img alt=\"\" src=\"https://\" width=\"\" height=\"\" />.jpg.png.gif?w=" +
+        "<div class=\"\"><div></div></div><br /><br/>" +
+        " of the and to in is that for with on it this you are was as be by at from have " +
+        "<p><a href=\"https://www.</a></p><p><a href=\"http://www.\">.com/</a>.</p>\n<p>"
+        ).getBytes(UTF8);
+
+    private StoryCodec() {} // util class - no instances
+
+    /**
+     * Encodes text for storage at the default compression level.
+     */
+    public static byte[] encode(String text) {
+        return encode(text, AppConstants.STORY_COMPRESSION_LEVEL);
+    }
+
+    /**
+     * Encodes text for storage at the given deflate level, 1 to 9.
+     */
+    public static byte[] encode(String text, int level) {
+        if (text == null) return null;
+        byte[] raw = text.getBytes(UTF8);
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(raw);
+            deflater.finish();
+            // room for the worst case, where deflate stores the input as-is
+            byte[] out = new byte[HEADER_SIZE + raw.length + (raw.length / 1000) + 64];
+            out[0] = FORMAT_DEFLATE_DICT_1;
+            out[1] = (byte) (raw.length >>> 24);
+            out[2] = (byte) (raw.length >>> 16);
+            out[3] = (byte) (raw.length >>> 8);
+            out[4] = (byte) raw.length;
+            int size = HEADER_SIZE;
+            while (!deflater.finished()) {
+                if (size == out.length) {
+                    byte[] grown = new byte[out.length * 2];
+                    System.arraycopy(out, 0, grown, 0, size);
+                    out = grown;
+                }
+                size += deflater.deflate(out, size, out.length - size);
+            }
+            byte[] result = new byte[size];
+            System.arraycopy(out, 0, result, 0, size);
+            return result;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decodes a value made by encode().
+     *
+     * @throws IllegalArgumentException if the value is not one encode() could have made.
+     */
+    public static String decode(byte[] data) {
+        if ((data.length < HEADER_SIZE) || (data[0] != FORMAT_DEFLATE_DICT_1)) {
+            throw new IllegalArgumentException("unknown story encoding");
+        }
+        int length = ((data[1] & 0xff) << 24) | ((data[2] & 0xff) << 16) | ((data[3] & 0xff) << 8) | (data[4] & 0xff);
+        // one byte spare, so that a stream longer than it claims to be shows up as one
+        byte[] raw = new byte[length + 1];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, HEADER_SIZE, data.length - HEADER_SIZE);
+            int size = 0;
+            while (!inflater.finished()) {
+                int n = inflater.inflate(raw, size, raw.length - size);
+                if ((n == 0) && inflater.needsDictionary()) {
+                    inflater.setDictionary(DICTIONARY);
+                } else if (((n == 0) && inflater.needsInput() && !inflater.finished()) || (size + n > length)) {
+                    throw new IllegalArgumentException("story encoding does not match its length");
+                }
+                size += n;
+            }
+            if (size != length) {
+                throw new IllegalArgumentException("story encoding does not match its length");
+            }
+            return new String(raw, 0, size, UTF8);
+        } catch (DataFormatException dfe) {
+            throw new IllegalArgumentException("corrupt story encoding", dfe);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Reads a stored value from a cursor, whether encoded or stored before compression.
+     *
+     * @return the text, or null if there is none or it can't be decoded.
+     */
+    public static String decode(Cursor c, int columnIndex) {
+        switch (c.getType(columnIndex)) {
+        case Cursor.FIELD_TYPE_NULL:
+            return null;
+        case Cursor.FIELD_TYPE_BLOB:
+            try {
+                return decode(c.getBlob(columnIndex));
+            } catch (IllegalArgumentException iae) {
+                Log.e(StoryCodec.class.getName(), "could not decode stored story", iae);
+                return null;
+            }
+        default:
+            return c.getString(columnIndex);
+        }
+    }
+
+}
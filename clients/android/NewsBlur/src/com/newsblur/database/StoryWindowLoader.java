@@ -0,0 +1,293 @@
+package com.newsblur.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.DataSetObserver;
+import android.database.MergeCursor;
+
+import com.newsblur.util.AppConstants;
+import com.newsblur.util.FeedSet;
+import com.newsblur.util.StateFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads a story list a page at a time, rather than running the whole ordered query on every
+ * load.  Pages are bounded by the (timestamp, story ID) of their stories, so reading one is a
+ * short range scan of a timestamp index, and any page can be re-read on its own.
+ *
+ * The window starts as the first page and grows a page at a time as the view nears its end.
+ * When the DB changes, only the pages near the view are re-read at once; the rest are re-read
+ * when the view next comes near them.  Views tell the window where they are via setPosition().
+ */
+public class StoryWindowLoader extends QueryCursorLoader {
+
+    private static final int PAGE_SIZE = AppConstants.STORY_WINDOW_PAGE_SIZE;
+
+    /**
+     * The place of a story in a list: its timestamp, with its story ID to break ties.
+     */
+    public static class Key {
+        private final long timestamp;
+        private final String storyId;
+
+        public Key(long timestamp, String storyId) {
+            this.timestamp = timestamp;
+            this.storyId = storyId;
+        }
+
+        private static Key fromCursor(Cursor c) {
+            return new Key(c.getLong(c.getColumnIndexOrThrow(DatabaseConstants.STORY_TIMESTAMP)),
+                           c.getString(c.getColumnIndexOrThrow(DatabaseConstants.STORY_ID)));
+        }
+
+        /** Adds the args for one of the key selections in DatabaseConstants. */
+        void addArgs(List<String> args) {
+            args.add(Long.toString(timestamp));
+            args.add(Long.toString(timestamp));
+            args.add(storyId);
+        }
+    }
+
+    private static class Page {
+        // the key of the story before this page, or null if it is the first page
+        private final Key after;
+        // the key of the last story in this page, or of the one before it if it is empty
+        private Key last;
+        private Cursor cursor;
+        // whether the page stopped at PAGE_SIZE stories rather than at the end of the list
+        private boolean full;
+        private boolean stale;
+
+        private Page(Key after) {
+            this.after = after;
+            this.last = after;
+        }
+    }
+
+    private final BlurDatabaseHelper dbHelper;
+    private final FeedSet fs;
+    private final StateFilter stateFilter;
+
+    // the pages of the window, in order, only touched by the load itself
+    private final List<Page> pages = new ArrayList<Page>();
+    // page cursors that a load replaced, to be closed once the window holding them is replaced
+    private final List<Cursor> retired = new ArrayList<Cursor>();
+
+    // what the view wants and what the last load found, shared with the UI thread via this
+    private int position;
+    private int wantedCount = PAGE_SIZE;
+    private boolean refreshWanted;
+    private boolean loadPending;
+    private int loadedCount;
+    private boolean complete;
+    private List<int[]> staleRanges = new ArrayList<int[]>();
+
+    public StoryWindowLoader(Context context, BlurDatabaseHelper dbHelper, FeedSet fs, StateFilter stateFilter) {
+        super(context);
+        this.dbHelper = dbHelper;
+        this.fs = fs;
+        this.stateFilter = stateFilter;
+    }
+
+    /**
+     * Whether a story list is ordered by timestamp and so can be paged.  Saved stories and
+     * searches aren't, and are short enough to just be read whole.
+     */
+    public static boolean isPageable(FeedSet fs) {
+        return ((!fs.isAllSaved()) && (fs.getSearchQuery() == null));
+    }
+
+    /**
+     * Tells the window which position the view is showing.  If that is within a page of the end
+     * of the window, or near pages that a refresh skipped, they are loaded.
+     */
+    public void setPosition(int position) {
+        synchronized (this) {
+            this.position = position;
+            int wanted = position + PAGE_SIZE;
+            if (wanted > wantedCount) wantedCount = wanted;
+            boolean load = (((!complete) && (wanted > loadedCount)) || isStaleNear(position));
+            if ((!load) || loadPending) return;
+            loadPending = true;
+        }
+        onContentChanged();
+    }
+
+    /**
+     * Re-reads the window after the DB has changed.  Only the pages near the view are read now.
+     */
+    public void refresh() {
+        synchronized (this) {
+            refreshWanted = true;
+            loadPending = true;
+        }
+        onContentChanged();
+    }
+
+    /**
+     * Whether the window reaches the end of the stories stored for this list, so that any more
+     * would have to be fetched.
+     */
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    private synchronized boolean isStaleNear(int position) {
+        for (int[] range : staleRanges) {
+            if ((range[0] <= position + PAGE_SIZE) && (range[1] >= position - PAGE_SIZE)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected Cursor createCursor() {
+        int near;
+        int wanted;
+        boolean refresh;
+        synchronized (this) {
+            near = position;
+            wanted = wantedCount;
+            refresh = refreshWanted;
+            refreshWanted = false;
+            loadPending = false;
+        }
+
+        synchronized (pages) {
+            if (pages.isEmpty()) {
+                pages.add(new Page(null));
+            }
+            if (refresh || (!isPageable(fs))) {
+                for (Page page : pages) {
+                    page.stale = true;
+                }
+            }
+
+            // re-read what needs it, near the view
+            int offset = 0;
+            for (int i = 0; i < pages.size(); i++) {
+                Page page = pages.get(i);
+                int count = (page.cursor == null) ? 0 : page.cursor.getCount();
+                boolean isNear = (offset <= near + PAGE_SIZE) && (offset + count >= near - PAGE_SIZE);
+                if ((page.cursor == null) || (page.stale && (isNear || (!isPageable(fs))))) {
+                    readPage(page, (i == pages.size() - 1));
+                }
+                offset += page.cursor.getCount();
+            }
+
+            // then grow the window as far as the view wants it
+            Page lastPage = pages.get(pages.size() - 1);
+            while (lastPage.full && (offset < wanted)) {
+                Page page = new Page(lastPage.last);
+                readPage(page, true);
+                pages.add(page);
+                offset += page.cursor.getCount();
+                lastPage = page;
+            }
+
+            List<int[]> stale = new ArrayList<int[]>();
+            Cursor[] cursors = new Cursor[pages.size()];
+            offset = 0;
+            for (int i = 0; i < pages.size(); i++) {
+                Page page = pages.get(i);
+                int count = page.cursor.getCount();
+                if (page.stale) stale.add(new int[] {offset, offset + count});
+                cursors[i] = new PageCursor(page.cursor);
+                offset += count;
+            }
+            synchronized (this) {
+                loadedCount = offset;
+                complete = !lastPage.full;
+                staleRanges = stale;
+            }
+            return new MergeCursor(cursors);
+        }
+    }
+
+    /**
+     * Reads a page.  The last page of the window is read up to PAGE_SIZE stories, unless it was
+     * already full, as then it would overlap the next page to be read.  Any other page is read
+     * over the same range of keys as before, however many stories are now in it.
+     */
+    private void readPage(Page page, boolean isLast) {
+        Cursor c;
+        if (!isPageable(fs)) {
+            c = dbHelper.getStoriesCursor(fs, stateFilter, cancellationSignal);
+        } else if (isLast && (!page.full)) {
+            c = dbHelper.getStoriesPage(fs, stateFilter, page.after, null, PAGE_SIZE, cancellationSignal);
+            page.full = (c.getCount() >= PAGE_SIZE);
+            if (c.moveToLast()) {
+                page.last = Key.fromCursor(c);
+            } else {
+                page.last = page.after;
+            }
+        } else {
+            c = dbHelper.getStoriesPage(fs, stateFilter, page.after, page.last, 0, cancellationSignal);
+        }
+        c.getCount();
+        if (page.cursor != null) {
+            synchronized (retired) {
+                retired.add(page.cursor);
+            }
+        }
+        page.cursor = c;
+        page.stale = false;
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        boolean shown = isStarted() && (!isReset());
+        super.deliverResult(cursor);
+        // whatever was showing the pages that were replaced has now been handed the new ones
+        if (shown) closeRetired();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        closeRetired();
+        synchronized (pages) {
+            for (Page page : pages) {
+                if (page.cursor != null) page.cursor.close();
+            }
+            pages.clear();
+        }
+    }
+
+    private void closeRetired() {
+        synchronized (retired) {
+            for (Cursor c : retired) {
+                c.close();
+            }
+            retired.clear();
+        }
+    }
+
+    /**
+     * A page as part of a window.  The loader closes pages itself when they are no longer in
+     * any window, so closing a window mustn't close them, and windows don't watch them.
+     */
+    private static class PageCursor extends CursorWrapper {
+        private PageCursor(Cursor cursor) {
+            super(cursor);
+        }
+
+        @Override
+        public void close() {
+            ; // the loader's to do
+        }
+
+        @Override
+        public void registerDataSetObserver(DataSetObserver observer) {
+            ; // pages are never requeried in place
+        }
+
+        @Override
+        public void unregisterDataSetObserver(DataSetObserver observer) {
+            ;
+        }
+    }
+
+}
@@ -1,12 +1,9 @@
 package com.newsblur.domain;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
-import android.content.ContentValues;
 import android.database.Cursor;
 import android.util.Log;
 
@@ -17,6 +14,7 @@ public class Classifier implements Serializable {
 	
 	private static final long serialVersionUID = 8958319817246110753L;
 	public static final int AUTHOR = 0, FEED = 1, TITLE = 2, TAG = 3;
+	public static final int[] TYPES = {AUTHOR, FEED, TITLE, TAG};
 	public static final int LIKE = 1, DISLIKE = -1, CLEAR_DISLIKE = 3, CLEAR_LIKE = 4;
 	
 	@SerializedName("authors")
@@ -41,57 +39,47 @@ public class Classifier implements Serializable {
                 return this.authors;
             case Classifier.FEED:
                 return this.feeds;
+            case Classifier.TITLE:
+                return this.title;
             default:
                 Log.wtf(this.getClass().getName(), "Unknown classifier type requested.");
                 return null;
 		}
     }
 	
-	public List<ContentValues> getContentValues() {
-		List<ContentValues> valuesList = new ArrayList<ContentValues>();
-		for (String key : authors.keySet()) {
-			ContentValues authorValues = new ContentValues();
-			authorValues.put(DatabaseConstants.CLASSIFIER_ID, feedId);
-			authorValues.put(DatabaseConstants.CLASSIFIER_KEY, key);
-			authorValues.put(DatabaseConstants.CLASSIFIER_TYPE, AUTHOR);
-			authorValues.put(DatabaseConstants.CLASSIFIER_VALUE, authors.get(key));
-			
-			valuesList.add(authorValues);
-		}
-		
-		for (String key : title.keySet()) {
-			ContentValues titleValues = new ContentValues();
-			titleValues.put(DatabaseConstants.CLASSIFIER_ID, feedId);
-			titleValues.put(DatabaseConstants.CLASSIFIER_KEY, key);
-			titleValues.put(DatabaseConstants.CLASSIFIER_TYPE, TITLE);
-			titleValues.put(DatabaseConstants.CLASSIFIER_VALUE, title.get(key));
-			
-			valuesList.add(titleValues);
-		}
-		
-		for (String key : tags.keySet()) {
-			ContentValues tagValues = new ContentValues();
-			tagValues.put(DatabaseConstants.CLASSIFIER_ID, feedId);
-			tagValues.put(DatabaseConstants.CLASSIFIER_KEY, key);
-			tagValues.put(DatabaseConstants.CLASSIFIER_TYPE, TAG);
-			tagValues.put(DatabaseConstants.CLASSIFIER_VALUE, tags.get(key));
-			
-			valuesList.add(tagValues);
-		}
-		
-		for (String key : feeds.keySet()) {
-			ContentValues feedValues = new ContentValues();
-			feedValues.put(DatabaseConstants.CLASSIFIER_ID, feedId);
-			feedValues.put(DatabaseConstants.CLASSIFIER_KEY, key);
-			feedValues.put(DatabaseConstants.CLASSIFIER_TYPE, FEED);
-			feedValues.put(DatabaseConstants.CLASSIFIER_VALUE, feeds.get(key));
-			
-			valuesList.add(feedValues);
-		}
-		
-		return valuesList;
+	/**
+	 * A copy to be changed, as classifiers handed out by the DB are shared and must not be.
+	 */
+	public Classifier copy() {
+		Classifier copy = new Classifier();
+		copy.authors.putAll(authors);
+		copy.title.putAll(title);
+		copy.tags.putAll(tags);
+		copy.feeds.putAll(feeds);
+		copy.feedId = feedId;
+		return copy;
 	}
-	
+
+	/**
+	 * Classifiers are equal if they classify the same way, whichever feed they came from.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof Classifier)) return false;
+		Classifier c = (Classifier) o;
+		return (authors.equals(c.authors) && title.equals(c.title) && tags.equals(c.tags) && feeds.equals(c.feeds));
+	}
+
+	@Override
+	public int hashCode() {
+		int result = authors.hashCode();
+		result = 31 * result + title.hashCode();
+		result = 31 * result + tags.hashCode();
+		result = 31 * result + feeds.hashCode();
+		return result;
+	}
+
 	public static Classifier fromCursor(final Cursor cursor) {
 		Classifier classifier = new Classifier();
 		
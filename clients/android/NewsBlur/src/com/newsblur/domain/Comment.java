@@ -7,9 +7,10 @@ import android.database.Cursor;
 import android.text.TextUtils;
 
 import com.google.gson.annotations.SerializedName;
+import com.newsblur.database.BulkWriter;
 import com.newsblur.database.DatabaseConstants;
 
-public class Comment implements Serializable {
+public class Comment implements Serializable, BulkWriter.Row {
 	private static final long serialVersionUID = -2018705258520565390L;
 
 	public String id;
@@ -38,18 +39,23 @@ public class Comment implements Serializable {
 	
 	public boolean byFriend = false;
 
+	/** The columns of getRowValues(), in order. */
+	public static final String[] ROW_COLUMNS = {
+		DatabaseConstants.COMMENT_DATE, DatabaseConstants.COMMENT_STORYID, DatabaseConstants.COMMENT_LIKING_USERS, DatabaseConstants.COMMENT_TEXT,
+		DatabaseConstants.COMMENT_SHAREDDATE, DatabaseConstants.COMMENT_BYFRIEND, DatabaseConstants.COMMENT_SOURCE_USERID, DatabaseConstants.COMMENT_USERID,
+		DatabaseConstants.COMMENT_ID
+	};
+
+	public Object[] getRowValues() {
+		return new Object[] {
+			date, storyId, TextUtils.join(",", likingUsers), commentText,
+			sharedDate, byFriend ? "true" : "false", sourceUserId, userId,
+			id
+		};
+	}
+
 	public ContentValues getValues() {
-		ContentValues values = new ContentValues();
-		values.put(DatabaseConstants.COMMENT_DATE, date);
-		values.put(DatabaseConstants.COMMENT_STORYID, storyId);
-		values.put(DatabaseConstants.COMMENT_LIKING_USERS, TextUtils.join(",", likingUsers));
-		values.put(DatabaseConstants.COMMENT_TEXT, commentText);
-		values.put(DatabaseConstants.COMMENT_SHAREDDATE, sharedDate);
-		values.put(DatabaseConstants.COMMENT_BYFRIEND, byFriend ? "true" : "false");
-		values.put(DatabaseConstants.COMMENT_SOURCE_USERID, sourceUserId);
-		values.put(DatabaseConstants.COMMENT_USERID, userId);
-		values.put(DatabaseConstants.COMMENT_ID, id);
-		return values;
+		return BulkWriter.toContentValues(ROW_COLUMNS, getRowValues());
 	}
 
 	public static Comment fromCursor(final Cursor cursor) {
@@ -8,9 +8,10 @@ import android.util.Log;
 import java.io.Serializable;
 
 import com.google.gson.annotations.SerializedName;
+import com.newsblur.database.BulkWriter;
 import com.newsblur.database.DatabaseConstants;
 
-public class Feed implements Comparable<Feed>, Serializable {	
+public class Feed implements Comparable<Feed>, Serializable, BulkWriter.Row {	
 
     private static final long serialVersionUID = 0L;
 
@@ -62,25 +63,25 @@ public class Feed implements Comparable<Feed>, Serializable {
 	@SerializedName("updated_seconds_ago")
 	public String lastUpdated;
 
+	/** The columns of getRowValues(), in order. */
+	public static final String[] ROW_COLUMNS = {
+		DatabaseConstants.FEED_ID, DatabaseConstants.FEED_ACTIVE, DatabaseConstants.FEED_ADDRESS, DatabaseConstants.FEED_FAVICON_COLOR,
+		DatabaseConstants.FEED_FAVICON_BORDER, DatabaseConstants.FEED_POSITIVE_COUNT, DatabaseConstants.FEED_NEUTRAL_COUNT, DatabaseConstants.FEED_NEGATIVE_COUNT,
+		DatabaseConstants.FEED_FAVICON_FADE, DatabaseConstants.FEED_FAVICON_TEXT, DatabaseConstants.FEED_FAVICON, DatabaseConstants.FEED_FAVICON_URL,
+		DatabaseConstants.FEED_LINK, DatabaseConstants.FEED_SUBSCRIBERS, DatabaseConstants.FEED_TITLE, DatabaseConstants.FEED_UPDATED_SECONDS
+	};
+
+	public Object[] getRowValues() {
+		return new Object[] {
+			feedId, active, address, "#" + faviconColor,
+			"#" + faviconBorder, positiveCount, neutralCount, negativeCount,
+			"#" + faviconFade, faviconText, favicon, faviconUrl,
+			feedLink, subscribers, title, lastUpdated
+		};
+	}
+
 	public ContentValues getValues() {
-		ContentValues values = new ContentValues();
-		values.put(DatabaseConstants.FEED_ID, feedId);
-		values.put(DatabaseConstants.FEED_ACTIVE, active);
-		values.put(DatabaseConstants.FEED_ADDRESS, address);
-		values.put(DatabaseConstants.FEED_FAVICON_COLOR, "#" + faviconColor);
-		values.put(DatabaseConstants.FEED_FAVICON_BORDER, "#" + faviconBorder);
-		values.put(DatabaseConstants.FEED_POSITIVE_COUNT, positiveCount);
-		values.put(DatabaseConstants.FEED_NEUTRAL_COUNT, neutralCount);
-		values.put(DatabaseConstants.FEED_NEGATIVE_COUNT, negativeCount);
-        values.put(DatabaseConstants.FEED_FAVICON_FADE, "#" + faviconFade);
-        values.put(DatabaseConstants.FEED_FAVICON_TEXT, faviconText);
-		values.put(DatabaseConstants.FEED_FAVICON, favicon);
-		values.put(DatabaseConstants.FEED_FAVICON_URL, faviconUrl);
-		values.put(DatabaseConstants.FEED_LINK, feedLink);
-		values.put(DatabaseConstants.FEED_SUBSCRIBERS, subscribers);
-		values.put(DatabaseConstants.FEED_TITLE, title);
-		values.put(DatabaseConstants.FEED_UPDATED_SECONDS, lastUpdated);
-		return values;
+		return BulkWriter.toContentValues(ROW_COLUMNS, getRowValues());
 	}
 
 	public static Feed fromCursor(Cursor cursor) {
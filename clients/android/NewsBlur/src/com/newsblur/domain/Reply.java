@@ -6,9 +6,10 @@ import android.content.ContentValues;
 import android.database.Cursor;
 
 import com.google.gson.annotations.SerializedName;
+import com.newsblur.database.BulkWriter;
 import com.newsblur.database.DatabaseConstants;
 
-public class Reply {
+public class Reply implements BulkWriter.Row {
 	@SerializedName("reply_id")
 	public String id;
 
@@ -26,15 +27,21 @@ public class Reply {
 
 	public String commentId;
 
+	/** The columns of getRowValues(), in order. */
+	public static final String[] ROW_COLUMNS = {
+		DatabaseConstants.REPLY_DATE, DatabaseConstants.REPLY_SHORTDATE, DatabaseConstants.REPLY_TEXT, DatabaseConstants.REPLY_COMMENTID,
+		DatabaseConstants.REPLY_ID, DatabaseConstants.REPLY_USERID
+	};
+
+	public Object[] getRowValues() {
+		return new Object[] {
+			date.getTime(), shortDate, text, commentId,
+			id, userId
+		};
+	}
+
 	public ContentValues getValues() {
-		ContentValues values = new ContentValues();
-		values.put(DatabaseConstants.REPLY_DATE, date.getTime());
-		values.put(DatabaseConstants.REPLY_SHORTDATE, shortDate);
-		values.put(DatabaseConstants.REPLY_TEXT, text);
-		values.put(DatabaseConstants.REPLY_COMMENTID, commentId);
-		values.put(DatabaseConstants.REPLY_ID, id);
-		values.put(DatabaseConstants.REPLY_USERID, userId);
-		return values;	
+		return BulkWriter.toContentValues(ROW_COLUMNS, getRowValues());
 	}
 
 	public static Reply fromCursor(Cursor cursor) {
@@ -7,9 +7,10 @@ import android.text.TextUtils;
 import java.io.Serializable;
 
 import com.google.gson.annotations.SerializedName;
+import com.newsblur.database.BulkWriter;
 import com.newsblur.database.DatabaseConstants;
 
-public class SocialFeed implements Serializable {
+public class SocialFeed implements Serializable, BulkWriter.Row {
 
     private static final long serialVersionUID = 0L;
 	
@@ -33,16 +34,21 @@ public class SocialFeed implements Serializable {
 	@SerializedName("photo_url")
 	public String photoUrl;
 	
+	/** The columns of getRowValues(), in order. */
+	public static final String[] ROW_COLUMNS = {
+		DatabaseConstants.SOCIAL_FEED_ID, DatabaseConstants.SOCIAL_FEED_TITLE, DatabaseConstants.SOCIAL_FEED_USERNAME, DatabaseConstants.SOCIAL_FEED_NEUTRAL_COUNT,
+		DatabaseConstants.SOCIAL_FEED_NEGATIVE_COUNT, DatabaseConstants.SOCIAL_FEED_POSITIVE_COUNT, DatabaseConstants.SOCIAL_FEED_ICON
+	};
+
+	public Object[] getRowValues() {
+		return new Object[] {
+			userId, feedTitle, username, neutralCount,
+			negativeCount, positiveCount, photoUrl
+		};
+	}
+
 	public ContentValues getValues() {
-		ContentValues values = new ContentValues();
-		values.put(DatabaseConstants.SOCIAL_FEED_ID, userId);
-		values.put(DatabaseConstants.SOCIAL_FEED_TITLE, feedTitle);
-		values.put(DatabaseConstants.SOCIAL_FEED_USERNAME, username);
-		values.put(DatabaseConstants.SOCIAL_FEED_NEUTRAL_COUNT, neutralCount);
-		values.put(DatabaseConstants.SOCIAL_FEED_NEGATIVE_COUNT, negativeCount);
-		values.put(DatabaseConstants.SOCIAL_FEED_POSITIVE_COUNT, positiveCount);
-		values.put(DatabaseConstants.SOCIAL_FEED_ICON, photoUrl);
-		return values;
+		return BulkWriter.toContentValues(ROW_COLUMNS, getRowValues());
 	}
 	
 	public static SocialFeed fromCursor(final Cursor cursor) {
@@ -10,9 +10,11 @@ import android.database.Cursor;
 import android.text.TextUtils;
 
 import com.google.gson.annotations.SerializedName;
+import com.newsblur.database.BulkWriter;
 import com.newsblur.database.DatabaseConstants;
+import com.newsblur.database.StoryCodec;
 
-public class Story implements Serializable {
+public class Story implements Serializable, BulkWriter.Row {
 
 	private static final long serialVersionUID = 7629596752129163308L;
 
@@ -93,35 +95,45 @@ public class Story implements Serializable {
     @SerializedName("image_urls")
     public String[] imageUrls;
 
+	/** The columns of getRowValues(), in order. */
+	public static final String[] ROW_COLUMNS = {
+		DatabaseConstants.STORY_ID, DatabaseConstants.STORY_TITLE, DatabaseConstants.STORY_TIMESTAMP, DatabaseConstants.STORY_SHORTDATE,
+		DatabaseConstants.STORY_LONGDATE, DatabaseConstants.STORY_SHORT_CONTENT, DatabaseConstants.STORY_PERMALINK,
+		DatabaseConstants.STORY_COMMENT_COUNT, DatabaseConstants.STORY_SHARE_COUNT, DatabaseConstants.STORY_AUTHORS, DatabaseConstants.STORY_SOCIAL_USER_ID,
+		DatabaseConstants.STORY_SOURCE_USER_ID, DatabaseConstants.STORY_SHARED_USER_IDS, DatabaseConstants.STORY_FRIEND_USER_IDS, DatabaseConstants.STORY_PUBLIC_USER_IDS,
+		DatabaseConstants.STORY_INTELLIGENCE_AUTHORS, DatabaseConstants.STORY_INTELLIGENCE_FEED, DatabaseConstants.STORY_INTELLIGENCE_TAGS, DatabaseConstants.STORY_INTELLIGENCE_TITLE,
+		DatabaseConstants.STORY_SCORE, DatabaseConstants.STORY_TAGS, DatabaseConstants.STORY_READ, DatabaseConstants.STORY_STARRED, DatabaseConstants.STORY_STARRED_DATE,
+		DatabaseConstants.STORY_FEED_ID, DatabaseConstants.STORY_HASH, DatabaseConstants.STORY_SEARCH_ID
+	};
+
+	public Object[] getRowValues() {
+		return new Object[] {
+			id, title.replace("\n", " ").replace("\r", " "), timestamp, shortDate,
+			longDate, shortContent, permalink,
+			commentCount, shareCount, authors, socialUserId,
+			sourceUserId, TextUtils.join(",", sharedUserIds), TextUtils.join(",", friendUserIds), TextUtils.join(",", publicUserIds),
+			intelligence.intelligenceAuthors, intelligence.intelligenceFeed, intelligence.intelligenceTags, intelligence.intelligenceTitle,
+			intelligence.getScore(), TextUtils.join(",", tags), read, starred, starredTimestamp,
+			feedId, storyHash, getSearchId(storyHash)
+		};
+	}
+
+	/**
+	 * The key of a story in the search index: a 64-bit FNV-1a hash of its story hash, which
+	 * unlike a rowid stays the same when the story is replaced.
+	 */
+	public static Long getSearchId(String storyHash) {
+		if (storyHash == null) return null;
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < storyHash.length(); i++) {
+			h ^= storyHash.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
 	public ContentValues getValues() {
-		final ContentValues values = new ContentValues();
-		values.put(DatabaseConstants.STORY_ID, id);
-		values.put(DatabaseConstants.STORY_TITLE, title.replace("\n", " ").replace("\r", " "));
-		values.put(DatabaseConstants.STORY_TIMESTAMP, timestamp);
-		values.put(DatabaseConstants.STORY_SHORTDATE, shortDate);
-		values.put(DatabaseConstants.STORY_LONGDATE, longDate);
-        values.put(DatabaseConstants.STORY_CONTENT, content);
-        values.put(DatabaseConstants.STORY_SHORT_CONTENT, shortContent);
-		values.put(DatabaseConstants.STORY_PERMALINK, permalink);
-		values.put(DatabaseConstants.STORY_COMMENT_COUNT, commentCount);
-		values.put(DatabaseConstants.STORY_SHARE_COUNT, shareCount);
-		values.put(DatabaseConstants.STORY_AUTHORS, authors);
-		values.put(DatabaseConstants.STORY_SOCIAL_USER_ID, socialUserId);
-		values.put(DatabaseConstants.STORY_SOURCE_USER_ID, sourceUserId);
-		values.put(DatabaseConstants.STORY_SHARED_USER_IDS, TextUtils.join(",", sharedUserIds));
-		values.put(DatabaseConstants.STORY_FRIEND_USER_IDS, TextUtils.join(",", friendUserIds));
-		values.put(DatabaseConstants.STORY_PUBLIC_USER_IDS, TextUtils.join(",", publicUserIds));
-		values.put(DatabaseConstants.STORY_INTELLIGENCE_AUTHORS, intelligence.intelligenceAuthors);
-		values.put(DatabaseConstants.STORY_INTELLIGENCE_FEED, intelligence.intelligenceFeed);
-		values.put(DatabaseConstants.STORY_INTELLIGENCE_TAGS, intelligence.intelligenceTags);
-		values.put(DatabaseConstants.STORY_INTELLIGENCE_TITLE, intelligence.intelligenceTitle);
-		values.put(DatabaseConstants.STORY_TAGS, TextUtils.join(",", tags));
-		values.put(DatabaseConstants.STORY_READ, read);
-		values.put(DatabaseConstants.STORY_STARRED, starred);
-		values.put(DatabaseConstants.STORY_STARRED_DATE, starredTimestamp);
-		values.put(DatabaseConstants.STORY_FEED_ID, feedId);
-        values.put(DatabaseConstants.STORY_HASH, storyHash);
-		return values;
+		return BulkWriter.toContentValues(ROW_COLUMNS, getRowValues());
 	}
 
 	public static Story fromCursor(final Cursor cursor) {
@@ -130,7 +142,11 @@ public class Story implements Serializable {
 		}
 		Story story = new Story();
 		story.authors = cursor.getString(cursor.getColumnIndex(DatabaseConstants.STORY_AUTHORS));
-		story.content = cursor.getString(cursor.getColumnIndex(DatabaseConstants.STORY_CONTENT));
+		// list cursors leave out the body, which is loaded separately when the story is shown
+		int contentIndex = cursor.getColumnIndex(DatabaseConstants.STORY_CONTENT);
+		if (contentIndex >= 0) {
+			story.content = StoryCodec.decode(cursor, contentIndex);
+		}
 		story.shortContent = cursor.getString(cursor.getColumnIndex(DatabaseConstants.STORY_SHORT_CONTENT));
 		story.title = cursor.getString(cursor.getColumnIndex(DatabaseConstants.STORY_TITLE));
 		story.timestamp = cursor.getLong(cursor.getColumnIndex(DatabaseConstants.STORY_TIMESTAMP));
@@ -172,6 +188,18 @@ public class Story implements Serializable {
 
 		@SerializedName("title")
 		public int intelligenceTitle = 0;
+
+		/**
+		 * The overall score: the strongest classifier, else the feed's.  Must agree with
+		 * DatabaseConstants.STORY_INTELLIGENCE_SCORE.
+		 */
+		public int getScore() {
+			int max = Math.max(intelligenceAuthors, Math.max(intelligenceTags, intelligenceTitle));
+			if (max > 0) return max;
+			int min = Math.min(intelligenceAuthors, Math.min(intelligenceTags, intelligenceTitle));
+			if (min < 0) return min;
+			return intelligenceFeed;
+		}
 	}
 
     /**
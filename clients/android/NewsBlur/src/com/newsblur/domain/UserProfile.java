@@ -4,11 +4,12 @@ import android.content.ContentValues;
 import android.database.Cursor;
 
 import com.google.gson.annotations.SerializedName;
+import com.newsblur.database.BulkWriter;
 import com.newsblur.database.DatabaseConstants;
 
 // A UserDetails object is distinct from a UserProfile in that it contains more data and is
 // only requested on its own. A UserProfile is include with feed/story requests.
-public class UserProfile {
+public class UserProfile implements BulkWriter.Row {
 	
 	@SerializedName("photo_url")
 	public String photoUrl;
@@ -35,13 +36,19 @@ public class UserProfile {
 		return profile;
 	}
 	
+	/** The columns of getRowValues(), in order. */
+	public static final String[] ROW_COLUMNS = {
+		DatabaseConstants.USER_PHOTO_URL, DatabaseConstants.USER_USERID, DatabaseConstants.USER_USERNAME, DatabaseConstants.USER_LOCATION
+	};
+
+	public Object[] getRowValues() {
+		return new Object[] {
+			photoUrl, userId, username, location
+		};
+	}
+
 	public ContentValues getValues() {
-		final ContentValues values = new ContentValues();
-		values.put(DatabaseConstants.USER_PHOTO_URL, photoUrl);
-		values.put(DatabaseConstants.USER_USERID, userId);
-        values.put(DatabaseConstants.USER_USERNAME, username);
-        values.put(DatabaseConstants.USER_LOCATION, location);
-		return values;
+		return BulkWriter.toContentValues(ROW_COLUMNS, getRowValues());
 	}
 	
 }
@@ -23,7 +23,6 @@ public class ClassifierDialogFragment extends DialogFragment {
 	private static final String FEED_ID = "feed_id";
 	private static final String TYPE = "type";
 	private static final String CALLBACK = "callback";
-	private static final String CLASSIFIER = "classifier";
 
 	private String key, feedId;
 	private Classifier classifier;
@@ -32,14 +31,13 @@ public class ClassifierDialogFragment extends DialogFragment {
 	private TagUpdateCallback tagCallback;
 
 
-	public static ClassifierDialogFragment newInstance(TagUpdateCallback callbackInterface, final String feedId, final Classifier classifier, final String key, final int classifierType) {
+	public static ClassifierDialogFragment newInstance(TagUpdateCallback callbackInterface, final String feedId, final String key, final int classifierType) {
 		ClassifierDialogFragment frag = new ClassifierDialogFragment();
 		Bundle args = new Bundle();
 		args.putString(KEY, key);
 		args.putString(FEED_ID, feedId);
 		args.putSerializable(CALLBACK, callbackInterface);
 		args.putInt(TYPE, classifierType);
-		args.putSerializable(CLASSIFIER, classifier);
 		frag.setArguments(args);
 		return frag;
 	}	
@@ -55,7 +53,7 @@ public class ClassifierDialogFragment extends DialogFragment {
 		feedId = getArguments().getString(FEED_ID);
 		key = getArguments().getString(KEY);
 		classifierType = getArguments().getInt(TYPE);
-		classifier = (Classifier) getArguments().getSerializable(CLASSIFIER);
+		classifier = FeedUtils.getClassifier(feedId);
 		tagCallback = (TagUpdateCallback) getArguments().getSerializable(CALLBACK);
 
 		super.onCreate(savedInstanceState);
@@ -78,7 +76,7 @@ public class ClassifierDialogFragment extends DialogFragment {
 			@Override
 			public void onClick(View v) {
                 int classifierAction = (typeHashMap.containsKey(key) && typeHashMap.get(key) == Classifier.DISLIKE) ? Classifier.CLEAR_DISLIKE : Classifier.DISLIKE;
-                FeedUtils.updateClassifier(feedId, key, classifier, classifierType, classifierAction, getActivity());
+                FeedUtils.updateClassifier(feedId, key, classifierType, classifierAction, getActivity());
                 tagCallback.updateTagView(key, classifierType,classifierAction);
 				ClassifierDialogFragment.this.dismiss();
 			}
@@ -87,7 +85,7 @@ public class ClassifierDialogFragment extends DialogFragment {
 		message.setOnClickListener(new OnClickListener() {
 			@Override
 			public void onClick(View v) {
-                FeedUtils.updateClassifier(feedId, key, classifier, classifierType, Classifier.CLEAR_LIKE, getActivity());
+                FeedUtils.updateClassifier(feedId, key, classifierType, Classifier.CLEAR_LIKE, getActivity());
                 tagCallback.updateTagView(key, classifierType, Classifier.CLEAR_LIKE);	
 				ClassifierDialogFragment.this.dismiss();
 			}
@@ -97,7 +95,7 @@ public class ClassifierDialogFragment extends DialogFragment {
 			@Override
 			public void onClick(View v) {
                 int classifierAction = (typeHashMap.containsKey(key) && typeHashMap.get(key) == Classifier.LIKE) ? Classifier.CLEAR_LIKE : Classifier.LIKE;
-                FeedUtils.updateClassifier(feedId, key, classifier, classifierType, classifierAction, getActivity());
+                FeedUtils.updateClassifier(feedId, key, classifierType, classifierAction, getActivity());
                 tagCallback.updateTagView(key, classifierType,classifierAction);
 				ClassifierDialogFragment.this.dismiss();
 			}
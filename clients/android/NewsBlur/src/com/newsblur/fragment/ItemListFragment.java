@@ -27,6 +27,7 @@ import android.widget.TextView;
 import com.newsblur.R;
 import com.newsblur.activity.ItemsList;
 import com.newsblur.database.StoryItemsAdapter;
+import com.newsblur.database.StoryWindowLoader;
 import com.newsblur.domain.Story;
 import com.newsblur.util.DefaultFeedView;
 import com.newsblur.util.FeedSet;
@@ -126,9 +127,15 @@ public abstract class ItemListFragment extends NbFragment implements OnScrollLis
         // if we have seen a cursor, this method means the list was updated or scrolled. now is a good
         // time to see if we need more stories
         if (cursorSeenYet) {
-            // load an extra page or two worth of stories past the viewport
-            int desiredStoryCount = firstVisible + (visibleCount*2) + 1;
-            activity.triggerRefresh(desiredStoryCount, totalCount);
+            // page in more stories from the DB as we near the end of those loaded, and only ask
+            // for more from the API once we are near the end of those stored
+            StoryWindowLoader window = getStoryWindow();
+            if (window != null) window.setPosition(firstVisible + visibleCount);
+            if ((window == null) || window.isComplete()) {
+                // load an extra page or two worth of stories past the viewport
+                int desiredStoryCount = firstVisible + (visibleCount*2) + 1;
+                activity.triggerRefresh(desiredStoryCount, totalCount);
+            }
         }
 	}
 
@@ -137,18 +144,39 @@ public abstract class ItemListFragment extends NbFragment implements OnScrollLis
 
 	public void changeState(StateFilter state) {
 		currentState = state;
-		hasUpdated();
+		restartLoader();
 	}
 
     protected FeedSet getFeedSet() {
         return activity.getFeedSet();
     }
 
+    /**
+     * Indicate that stories in the DB have changed.  Only the part of the list near what is
+     * showing is re-read.
+     */
 	public void hasUpdated() {
+        StoryWindowLoader window = getStoryWindow();
+        if (window != null) {
+            window.refresh();
+        } else {
+            restartLoader();
+        }
+	}
+
+    /**
+     * Re-read the list from scratch, as when what it should contain has changed.
+     */
+    public void restartLoader() {
         if (isAdded()) {
 		    getLoaderManager().restartLoader(ITEMLIST_LOADER , null, this);
         }
-	}
+    }
+
+    private StoryWindowLoader getStoryWindow() {
+        if (!isAdded()) return null;
+        return (StoryWindowLoader) getLoaderManager().<Cursor>getLoader(ITEMLIST_LOADER);
+    }
 
 	@Override
 	public Loader<Cursor> onCreateLoader(int arg0, Bundle arg1) {
@@ -83,6 +83,7 @@ public class ReadingItemFragment extends NbFragment implements ClassifierDialogF
 	private ImageView feedIcon;
     private Reading activity;
     private DefaultFeedView selectedFeedView;
+    private String storyContent;
     private String originalText;
     private HashMap<String,String> imageAltTexts;
     private HashMap<String,String> imageUrlRemaps;
@@ -91,7 +92,7 @@ public class ReadingItemFragment extends NbFragment implements ClassifierDialogF
 
     private final Object WEBVIEW_CONTENT_MUTEX = new Object();
 
-	public static ReadingItemFragment newInstance(Story story, String feedTitle, String feedFaviconColor, String feedFaviconFade, String feedFaviconBorder, String faviconText, String faviconUrl, Classifier classifier, boolean displayFeedDetails, DefaultFeedView defaultFeedView, String sourceUserId) {
+	public static ReadingItemFragment newInstance(Story story, String feedTitle, String feedFaviconColor, String feedFaviconFade, String feedFaviconBorder, String faviconText, String faviconUrl, boolean displayFeedDetails, DefaultFeedView defaultFeedView, String sourceUserId) {
 		ReadingItemFragment readingFragment = new ReadingItemFragment();
 
 		Bundle args = new Bundle();
@@ -103,7 +104,6 @@ public class ReadingItemFragment extends NbFragment implements ClassifierDialogF
         args.putString("faviconText", faviconText);
 		args.putString("faviconUrl", faviconUrl);
 		args.putBoolean("displayFeedDetails", displayFeedDetails);
-		args.putSerializable("classifier", classifier);
         args.putSerializable("defaultFeedView", defaultFeedView);
         args.putString("sourceUserId", sourceUserId);
 		readingFragment.setArguments(args);
@@ -140,7 +140,7 @@ public class ReadingItemFragment extends NbFragment implements ClassifierDialogF
         feedBorder = getArguments().getString("feedBorder");
         faviconText = getArguments().getString("faviconText");
 
-		classifier = (Classifier) getArguments().getSerializable("classifier");
+		if (story != null) classifier = FeedUtils.getClassifier(story.feedId);
 
         selectedFeedView = (DefaultFeedView)getArguments().getSerializable("defaultFeedView");
 
@@ -364,7 +364,7 @@ public class ReadingItemFragment extends NbFragment implements ClassifierDialogF
 		itemAuthors.setOnClickListener(new OnClickListener() {
 			@Override
 			public void onClick(View v) {
-				ClassifierDialogFragment classifierFragment = ClassifierDialogFragment.newInstance(ReadingItemFragment.this, story.feedId, classifier, story.authors, Classifier.AUTHOR);
+				ClassifierDialogFragment classifierFragment = ClassifierDialogFragment.newInstance(ReadingItemFragment.this, story.feedId, story.authors, Classifier.AUTHOR);
 				classifierFragment.show(getFragmentManager(), "dialog");		
 			}	
 		});
@@ -372,7 +372,7 @@ public class ReadingItemFragment extends NbFragment implements ClassifierDialogF
 		itemFeed.setOnClickListener(new OnClickListener() {
 			@Override
 			public void onClick(View v) {
-				ClassifierDialogFragment classifierFragment = ClassifierDialogFragment.newInstance(ReadingItemFragment.this, story.feedId, classifier, feedTitle, Classifier.FEED);
+				ClassifierDialogFragment classifierFragment = ClassifierDialogFragment.newInstance(ReadingItemFragment.this, story.feedId, feedTitle, Classifier.FEED);
 				classifierFragment.show(getFragmentManager(), "dialog");
 			}
 		});
@@ -416,8 +416,12 @@ public class ReadingItemFragment extends NbFragment implements ClassifierDialogF
 
     private void reloadStoryContent() {
         if (selectedFeedView == DefaultFeedView.STORY) {
-            setupWebview(story.content);
-            enableProgress(false);
+            if (storyContent == null) {
+                loadStoryContent();
+            } else {
+                setupWebview(storyContent);
+                enableProgress(false);
+            }
         } else {
             if (originalText == null) {
                 enableProgress(true);
@@ -451,6 +455,27 @@ public class ReadingItemFragment extends NbFragment implements ClassifierDialogF
         reloadStoryContent();
     }
 
+    /**
+     * Story cursors don't carry the body, so fetch it by hash off the UI thread.  The pager
+     * keeps neighbouring pages alive, so their bodies are loaded ahead of being shown.
+     */
+    private void loadStoryContent() {
+        if (story != null) {
+            new AsyncTask<Void, Void, String>() {
+                @Override
+                protected String doInBackground(Void... arg) {
+                    return FeedUtils.getStoryContent(story.storyHash);
+                }
+                @Override
+                protected void onPostExecute(String result) {
+                    // a story with no body is still shown, just empty
+                    ReadingItemFragment.this.storyContent = (result != null) ? result : "";
+                    reloadStoryContent();
+                }
+            }.execute();
+        }
+    }
+
     private void loadOriginalText() {
         if (story != null) {
             new AsyncTask<Void, Void, String>() {
@@ -587,7 +612,8 @@ public class ReadingItemFragment extends NbFragment implements ClassifierDialogF
 			}
 			break;
 		case Classifier.TAG:
-			classifier.tags.put(key, classifierAction);
+			// the change is already stored, so the cache has it
+			classifier = FeedUtils.getClassifier(story.feedId);
 			tagContainer.removeAllViews();
 			setupTags();
 			break;	
@@ -51,6 +51,7 @@ import com.newsblur.serialization.ClassifierMapTypeAdapter;
 import com.newsblur.serialization.DateStringTypeAdapter;
 import com.newsblur.serialization.FeedListTypeAdapter;
 import com.newsblur.serialization.StoryTypeAdapter;
+import com.newsblur.service.SyncTelemetry;
 import com.newsblur.util.AppConstants;
 import com.newsblur.util.FeedSet;
 import com.newsblur.util.NetworkUtils;
@@ -502,7 +503,9 @@ public class APIManager {
         int tryCount = 0;
         do {
             backoffSleep(tryCount++);
+            long startTime = System.currentTimeMillis();
             response = get_single(urlString);
+            SyncTelemetry.recordNetwork(System.currentTimeMillis() - startTime, response.getResponseBytes(), response.isError());
         } while ((response.isError()) && (tryCount < AppConstants.MAX_API_TRIES));
         return response;
     }
@@ -550,7 +553,9 @@ public class APIManager {
         int tryCount = 0;
         do {
             backoffSleep(tryCount++);
+            long startTime = System.currentTimeMillis();
             response = post_single(urlString, postBodyString);
+            SyncTelemetry.recordNetwork(System.currentTimeMillis() - startTime, response.getResponseBytes(), response.isError());
         } while ((response.isError()) && (tryCount < AppConstants.MAX_API_TRIES));
         return response;
     }
@@ -1,5 +1,7 @@
 package com.newsblur.network;
 
+import java.io.FilterInputStream;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.net.HttpURLConnection;
@@ -29,6 +31,7 @@ public class APIResponse {
     private String errorMessage;
 	private String cookie;
     private String responseBody;
+    private long responseBytes;
 
     /**
      * Construct an online response.  Will test the response for errors and extract all the
@@ -64,9 +67,11 @@ public class APIResponse {
 
         try {
             StringBuilder builder = new StringBuilder();
-            Scanner scanner = new Scanner(connection.getInputStream(), "UTF-8");
+            CountingInputStream counter = new CountingInputStream(connection.getInputStream());
+            Scanner scanner = new Scanner(counter, "UTF-8");
             while (scanner.hasNextLine()) { builder.append(scanner.nextLine()); }
             this.responseBody = builder.toString();
+            this.responseBytes = counter.count;
         } catch (Exception e) {
             Log.e(this.getClass().getName(), e.getClass().getName() + " (" + e.getMessage() + ") reading " + originalUrl, e);
             this.isError = true;
@@ -140,4 +145,30 @@ public class APIResponse {
         return this.cookie;
     }
 
+    /**
+     * The size of the response body as received on the wire, for instrumentation.
+     */
+    public long getResponseBytes() {
+        return this.responseBytes;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count = 0L;
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) count++;
+            return b;
+        }
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
 }
@@ -0,0 +1,103 @@
+package com.newsblur.service;
+
+/**
+ * Picks the size of batched API requests from how recent batches fared.
+ *
+ * Per-item latency and payload size are tracked as moving averages and the batch size is
+ * set so that a batch should take about the target time and stay under the byte limit.
+ * Growth is limited to doubling per batch and is held while errors are frequent, and any
+ * failed batch halves the size, so the sizer backs off quickly on poor links and probes
+ * upwards again on good ones.  Every change is recorded as a telemetry event.
+ *
+ * Safe to call from any thread.
+ */
+public class AdaptiveBatchSizer {
+
+    /** Weight given to the newest sample in the moving averages. */
+    private static final double SMOOTHING = 0.3;
+    /** Above this moving error rate, batches are not allowed to grow. */
+    private static final double MAX_ERROR_RATE_FOR_GROWTH = 0.2;
+
+    private final String name;
+    private final int minSize;
+    private final int maxSize;
+    private final long targetMillis;
+    private final long maxBytes;
+
+    private int size;
+    private double millisPerItem = -1.0;
+    private double bytesPerItem = -1.0;
+    private double errorRate = 0.0;
+
+    /**
+     * @param name how to describe this sizer in telemetry.
+     * @param initialSize the size to use before anything has been measured.
+     * @param minSize the smallest batch ever requested.
+     * @param maxSize the largest batch ever requested.
+     * @param targetMillis how long we would like one batch to take.
+     * @param maxBytes the largest payload we would like one batch to return.
+     */
+    public AdaptiveBatchSizer(String name, int initialSize, int minSize, int maxSize, long targetMillis, long maxBytes) {
+        this.name = name;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetMillis = targetMillis;
+        this.maxBytes = maxBytes;
+        this.size = clamp(initialSize);
+    }
+
+    public synchronized int getBatchSize() {
+        return size;
+    }
+
+    /**
+     * Records a batch that succeeded.
+     *
+     * @param items how many items the batch returned.
+     * @param millis how long the batch took, including any retries.
+     * @param bytes the size of the response(s).
+     * @param failedAttempts how many attempts had to be retried along the way.
+     */
+    public synchronized void onSuccess(int items, long millis, long bytes, long failedAttempts) {
+        if (items < 1) return;
+        millisPerItem = smooth(millisPerItem, ((double) millis) / items);
+        bytesPerItem = smooth(bytesPerItem, ((double) bytes) / items);
+        errorRate = smooth(errorRate, ((double) failedAttempts) / (failedAttempts + 1));
+
+        double ideal = maxSize;
+        if (millisPerItem > 0.0) ideal = Math.min(ideal, targetMillis / millisPerItem);
+        if (bytesPerItem > 0.0) ideal = Math.min(ideal, maxBytes / bytesPerItem);
+        int newSize = (int) ideal;
+        if (errorRate > MAX_ERROR_RATE_FOR_GROWTH) {
+            newSize = Math.min(newSize, size);
+        } else {
+            newSize = Math.min(newSize, size * 2);
+        }
+        resize(newSize, "took " + millis + "ms for " + bytes + " bytes");
+    }
+
+    /**
+     * Records a batch that failed outright.
+     */
+    public synchronized void onFailure(int items) {
+        errorRate = smooth(errorRate, 1.0);
+        resize(size / 2, "batch of " + items + " failed");
+    }
+
+    private void resize(int newSize, String reason) {
+        newSize = clamp(newSize);
+        if (newSize == size) return;
+        SyncTelemetry.recordEvent(name + " batch size " + size + " -> " + newSize + ": " + reason + ", error rate " + String.format("%.2f", errorRate));
+        size = newSize;
+    }
+
+    private int clamp(int value) {
+        return Math.max(minSize, Math.min(maxSize, value));
+    }
+
+    private static double smooth(double average, double sample) {
+        if (average < 0.0) return sample;
+        return (SMOOTHING * sample) + ((1.0 - SMOOTHING) * average);
+    }
+
+}
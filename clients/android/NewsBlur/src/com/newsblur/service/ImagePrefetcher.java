@@ -0,0 +1,240 @@
+package com.newsblur.service;
+
+import android.net.Uri;
+import android.os.Process;
+import android.util.Log;
+
+import com.newsblur.util.AppConstants;
+import com.newsblur.util.ImageCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fetches queued images into the ImageCache using a bounded pool of workers.  Work is
+ * ordered so that images from the newest stories are fetched first, and no single host
+ * may have more than a fixed number of fetches outstanding, so one slow image server
+ * cannot stall the others.
+ */
+public class ImagePrefetcher {
+
+    /**
+     * Lets the caller stop a run and follow its progress.  Both methods are called on the
+     * thread that invoked {@link #prefetch}, never while the workers are held up.
+     */
+    public interface Callback {
+        /** Checked between fetches; returning true stops the run cleanly. */
+        boolean shouldStop();
+        /** Called periodically as images complete. */
+        void onProgress();
+    }
+
+    private static final long STOP_CHECK_MILLIS = 500L;
+
+    private final ImageCache imageCache;
+    private final ExecutorService workers;
+
+    // scheduling state, guarded by this
+    private final List<String> pending = new ArrayList<String>();
+    private final Map<String,Integer> activeByHost = new HashMap<String,Integer>();
+    private int activeWorkers;
+    private int completedSinceProgress;
+    private boolean stopped;
+
+    // throughput counters, guarded by this
+    private long imageCount;
+    private long byteCount;
+    private long activeMillis;
+    private final Map<String,Integer> failuresByHost = new HashMap<String,Integer>();
+
+    public ImagePrefetcher(ImageCache imageCache) {
+        this.imageCache = imageCache;
+        this.workers = Executors.newFixedThreadPool(AppConstants.IMAGE_PREFETCH_THREADS);
+    }
+
+    /**
+     * Fetches every image in the queue, removing each URL from the queue once it has been
+     * attempted.  Blocks until the queue is drained or the callback asks us to stop.
+     *
+     * @param queue image URLs valued with the timestamp of the newest story using them.
+     */
+    public void prefetch(final SyncQueue queue, Callback callback) {
+        List<Entry<String,Long>> entries = new ArrayList<Entry<String,Long>>(queue.snapshot().entrySet());
+        if (entries.size() < 1) return;
+        // newest first
+        Collections.sort(entries, new Comparator<Entry<String,Long>>() {
+            public int compare(Entry<String,Long> lhs, Entry<String,Long> rhs) {
+                return rhs.getValue().compareTo(lhs.getValue());
+            }
+        });
+
+        long startTime = System.currentTimeMillis();
+        // fetches done by the workers count towards whichever sync phase called us
+        final SyncTelemetry.Run run = SyncTelemetry.current();
+        synchronized (this) {
+            pending.clear();
+            for (Entry<String,Long> entry : entries) {
+                pending.add(entry.getKey());
+            }
+            stopped = false;
+            completedSinceProgress = 0;
+            activeWorkers = Math.min(AppConstants.IMAGE_PREFETCH_THREADS, pending.size());
+        }
+
+        for (int i=0; i<AppConstants.IMAGE_PREFETCH_THREADS && i<entries.size(); i++) {
+            workers.execute(new Runnable() {
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    SyncTelemetry.attach(run);
+                    try {
+                        String url;
+                        while ((url = nextUrl()) != null) {
+                            queue.claim(url);
+                            String host = getHost(url);
+                            long size = imageCache.cacheImage(url);
+                            queue.remove(url);
+                            finishUrl(host, size);
+                        }
+                    } finally {
+                        SyncTelemetry.detach();
+                        workerDone();
+                    }
+                }
+            });
+        }
+
+        try {
+            while (true) {
+                boolean progressed;
+                synchronized (this) {
+                    if (activeWorkers < 1) break;
+                    wait(STOP_CHECK_MILLIS);
+                    progressed = (completedSinceProgress >= AppConstants.IMAGE_PREFETCH_BATCH_SIZE);
+                    if (progressed) completedSinceProgress = 0;
+                }
+                // the callbacks may write to the DB, so are made without the lock the workers need
+                if (callback.shouldStop()) {
+                    synchronized (this) {
+                        // workers will exit after their current fetch
+                        stopped = true;
+                        notifyAll();
+                    }
+                }
+                if (progressed) callback.onProgress();
+            }
+        } catch (InterruptedException ie) {
+            synchronized (this) {
+                stopped = true;
+            }
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                activeMillis += (System.currentTimeMillis() - startTime);
+            }
+        }
+
+        if (AppConstants.VERBOSE_LOG) Log.d(this.getClass().getName(), "image prefetch: " + getStats());
+    }
+
+    /**
+     * Picks the newest pending URL whose host has a free slot, waiting for one to free up
+     * if needed.  Returns null when the worker should exit.
+     */
+    private synchronized String nextUrl() {
+        while (true) {
+            if (stopped || pending.size() < 1) return null;
+            for (Iterator<String> i = pending.iterator(); i.hasNext(); ) {
+                String url = i.next();
+                String host = getHost(url);
+                Integer active = activeByHost.get(host);
+                if (active == null) active = 0;
+                if (active < AppConstants.IMAGE_PREFETCH_PER_HOST) {
+                    i.remove();
+                    activeByHost.put(host, active + 1);
+                    return url;
+                }
+            }
+            // every remaining URL is on a busy host; wait for a fetch to finish
+            try {
+                wait();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    private synchronized void finishUrl(String host, long size) {
+        Integer active = activeByHost.get(host);
+        if ((active == null) || (active <= 1)) {
+            activeByHost.remove(host);
+        } else {
+            activeByHost.put(host, active - 1);
+        }
+        if (size < 0L) {
+            Integer failures = failuresByHost.get(host);
+            failuresByHost.put(host, (failures == null) ? 1 : failures + 1);
+        } else if (size > 0L) {
+            imageCount++;
+            byteCount += size;
+        }
+        completedSinceProgress++;
+        notifyAll();
+    }
+
+    private synchronized void workerDone() {
+        activeWorkers--;
+        notifyAll();
+    }
+
+    private static String getHost(String url) {
+        String host = Uri.parse(url).getHost();
+        return (host == null) ? "" : host.toLowerCase();
+    }
+
+    /**
+     * A human-readable summary of prefetch throughput since this instance was created.
+     */
+    public synchronized String getStats() {
+        double seconds = Math.max(activeMillis, 1L) / 1000.0;
+        StringBuilder s = new StringBuilder();
+        s.append(imageCount).append(" images (").append(String.format("%.1f", imageCount / seconds)).append("/s), ");
+        s.append(byteCount).append(" bytes (").append(String.format("%.0f", byteCount / seconds)).append("/s)");
+        if (failuresByHost.size() > 0) {
+            s.append(", failures:");
+            for (Entry<String,Integer> entry : failuresByHost.entrySet()) {
+                s.append(" ").append(entry.getKey()).append("=").append(entry.getValue());
+            }
+        }
+        return s.toString();
+    }
+
+    public synchronized long getImageCount() {
+        return imageCount;
+    }
+
+    public synchronized long getByteCount() {
+        return byteCount;
+    }
+
+    public synchronized Map<String,Integer> getFailuresByHost() {
+        return new HashMap<String,Integer>(failuresByHost);
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+        }
+        workers.shutdownNow();
+    }
+
+}
@@ -39,12 +39,18 @@ import com.newsblur.util.StoryOrder;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -80,8 +86,20 @@ public class NBSyncService extends Service {
     private volatile static boolean isMemoryLow = false;
     private volatile static boolean HaltNow = false;
 
+    // sync job priorities. lower values run first.
+    private static final int PRIORITY_ACTIONS = 0;
+    private static final int PRIORITY_USER = 1;
+    private static final int PRIORITY_METADATA = 2;
+    private static final int PRIORITY_UNREADS = 3;
+    private static final int PRIORITY_FINISH_ACTIONS = 4;
+    private static final int PRIORITY_TEXTS = 5;
+    private static final int PRIORITY_READ_AHEAD = 6;
+    private static final int PRIORITY_IMAGES = 7;
+
     private static long lastFeedCount = 0L;
     private static long lastFFWriteMillis = 0L;
+    private static long lastFFRowsTouched = 0L;
+    private volatile static String ImagePrefetchStats = null;
 
     /** Feed sets that we need to sync and how many stories the UI wants for them. */
     private static Map<FeedSet,Integer> PendingFeeds;
@@ -96,27 +114,54 @@ public class NBSyncService extends Service {
     private static Map<FeedSet,Integer> FeedStoriesSeen;
     static { FeedStoriesSeen = new HashMap<FeedSet,Integer>(); }
 
-    /** Unread story hashes the API listed that we do not appear to have locally yet. */
-    private static Set<String> StoryHashQueue;
-    static { StoryHashQueue = new HashSet<String>(); }
+    /** The feed set the UI most recently asked for stories from, which we read ahead on. Guarded by PendingFeeds. */
+    private static FeedSet ReadAheadFeed = null;
+    /** How many more pages to read ahead on ReadAheadFeed. */
+    private static int ReadAheadPagesWanted = 0;
+    /** For each read-ahead page the UI has not yet reached, the story count at which it starts. */
+    private static List<Integer> ReadAheadPageStarts = new ArrayList<Integer>();
+    private static long ReadAheadPagesUsed = 0L;
+    private static long ReadAheadPagesUnused = 0L;
+
+    // when we last compared the unread counts with a full recount
+    private static long LastUnreadCountCheck = 0L;
 
-    /** URLs of images contained in recently fetched stories that are candidates for prefetch. */
-    private static Set<String> ImageQueue;
-    static { ImageQueue = new HashSet<String>(); }
+    /** The queue that page requests were once persisted to.  Any left in it are stale. */
+    private static final String STALE_PENDING_FEEDS_QUEUE = "pending_feeds";
+
+    /** Unread story hashes the API listed that we do not appear to have locally yet. */
+    private static SyncQueue StoryHashQueue = new SyncQueue("story_hashes");
+    /** Sizes batches of StoryHashQueue fetches, learning from every batch across syncs. */
+    private static AdaptiveBatchSizer UnreadBatchSizer = new AdaptiveBatchSizer("unreads",
+                                                                               AppConstants.UNREAD_FETCH_BATCH_SIZE,
+                                                                               AppConstants.UNREAD_FETCH_MIN_BATCH_SIZE,
+                                                                               AppConstants.UNREAD_FETCH_MAX_BATCH_SIZE,
+                                                                               AppConstants.UNREAD_FETCH_TARGET_MILLIS,
+                                                                               AppConstants.UNREAD_FETCH_MAX_BATCH_BYTES);
+
+    /** URLs of images contained in recently fetched stories that are candidates for prefetch,
+        valued with the timestamp of the newest story using them. */
+    private static SyncQueue ImageQueue = new SyncQueue("images");
 
     /** Stories for which we want to fetch original text data. */
-    private static Set<String> OriginalTextQueue;
-    static { OriginalTextQueue = new HashSet<String>(); }
+    private static SyncQueue OriginalTextQueue = new SyncQueue("original_texts");
+    /** Stories for which the UI is waiting on original text; these are fetched before any others. */
+    private static SyncQueue PriorityTextQueue = new SyncQueue("priority_texts");
+    /** How many fetches of each queued original text have failed so far. Only used by the sync thread. */
+    private static Map<String,Integer> TextFetchFailures = new HashMap<String,Integer>();
 
-    /** Actions that may need to be double-checked locally due to overlapping API calls. */
-    private static List<ReadingAction> FollowupActions;
-    static { FollowupActions = new ArrayList<ReadingAction>(); }
+    /** Work queues are persisted so that work is not lost if we are killed; this notes if
+        we have re-loaded them since the process started. */
+    private volatile static boolean QueuesRestored = false;
 
     private PowerManager.WakeLock wl = null;
     private ExecutorService executor;
+    /** Worker pool used to fetch and decode API responses while the sync thread writes to the DB. */
+    private ExecutorService fetchExecutor;
 	private APIManager apiManager;
     private BlurDatabaseHelper dbHelper;
     private ImageCache imageCache;
+    private ImagePrefetcher imagePrefetcher;
     private int lastStartIdCompleted = -1;
 
 	@Override
@@ -128,10 +173,12 @@ public class NBSyncService extends Service {
         wl = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, this.getClass().getSimpleName());
         wl.setReferenceCounted(false);
         executor = Executors.newFixedThreadPool(1);
+        fetchExecutor = Executors.newFixedThreadPool(AppConstants.UNREAD_FETCH_THREADS);
 		apiManager = new APIManager(this);
         PrefsUtils.checkForUpgrade(this);
         dbHelper = new BlurDatabaseHelper(this);
         imageCache = new ImageCache(this);
+        imagePrefetcher = new ImagePrefetcher(imageCache);
 	}
 
     /**
@@ -162,7 +209,9 @@ public class NBSyncService extends Service {
     }
 
     /**
-     * Do the actual work of syncing.
+     * Do the actual work of syncing.  The work is broken into prioritised jobs that each do
+     * one batch at a time, so that requests from the UI are served between batches of
+     * background work rather than after all of it.
      */
     private synchronized void doSync(int startId) {
         try {
@@ -181,25 +230,20 @@ public class NBSyncService extends Service {
                 return;
             }
 
-            // first: catch up
-            syncActions();
-            
-            // these requests are expressly enqueued by the UI/user, do them next
-            syncPendingFeeds();
+            if (!QueuesRestored) restoreQueues();
 
-            syncMetadata();
-
-            syncUnreads();
-
-            finishActions();
-
-            syncOriginalTexts();
-            
-            prefetchImages();
+            SyncScheduler scheduler = new SyncScheduler();
+            scheduleJobs(scheduler);
+            scheduler.run(new SyncScheduler.StopCondition() {
+                public boolean shouldStop() {
+                    return HaltNow;
+                }
+            });
 
         } catch (Exception e) {
             Log.e(this.getClass().getName(), "Sync error.", e);
         } finally {
+            flushQueues();
             if (NbActivity.getActiveActivityCount() < 1) {
                 stopSelf(startId);
             }
@@ -209,6 +253,148 @@ public class NBSyncService extends Service {
         }
     }
 
+    /**
+     * Sets up the jobs for one sync.  One-shot jobs check if they are needed when first run;
+     * the queue-driven jobs stay scheduled for the whole sync in case more work for them
+     * arrives while we are busy with something else.
+     */
+    private void scheduleJobs(final SyncScheduler scheduler) {
+        // first: catch up
+        SyncScheduler.Job actionsJob = new SyncScheduler.Job("actions") {
+            public int getPriority() {
+                return PRIORITY_ACTIONS;
+            }
+            public boolean isReady() {
+                return true;
+            }
+            public boolean step() {
+                syncActions();
+                return false;
+            }
+        };
+
+        // these requests are expressly enqueued by the UI/user, so they pre-empt any background work
+        // more requests may arrive mid-sync, so this only retires if the API fails us
+        SyncScheduler.Job pendingFeedsJob = new SyncScheduler.Job("pending_feeds") {
+            public int getPriority() {
+                return PRIORITY_USER;
+            }
+            public boolean isReady() {
+                return ((PendingFeeds.size() > 0) && (!stopSync()));
+            }
+            public boolean step() {
+                if (!syncPendingFeedPage()) return false;
+                if (PendingFeeds.size() < 1) finish();
+                return true;
+            }
+            public void finish() {
+                if (StorySyncRunning) {
+                    StorySyncRunning = false;
+                    NbActivity.updateAllActivities();
+                }
+            }
+        };
+
+        final MetadataJob metadataJob = new MetadataJob(pendingFeedsJob);
+        metadataJob.after(actionsJob);
+
+        SyncScheduler.Job unreadsJob = new UnreadsJob().after(metadataJob);
+
+        SyncScheduler.Job finishActionsJob = new SyncScheduler.Job("finish_actions") {
+            public int getPriority() {
+                return PRIORITY_FINISH_ACTIONS;
+            }
+            public boolean isReady() {
+                return true;
+            }
+            public boolean step() {
+                finishActions();
+                return false;
+            }
+        }.after(actionsJob, metadataJob, unreadsJob);
+
+        // once caught up, make sure the unread counts we keep incrementally haven't drifted
+        SyncScheduler.Job unreadCountsJob = new SyncScheduler.Job("unread_counts") {
+            public int getPriority() {
+                return PRIORITY_FINISH_ACTIONS;
+            }
+            public boolean isReady() {
+                return true;
+            }
+            public boolean step() {
+                // only premium users have every unread story locally, and only once all are fetched
+                if (Boolean.TRUE.equals(metadataJob.isPremium()) && (StoryHashQueue.size() < 1) && (!stopSync())) {
+                    checkUnreadCounts();
+                }
+                return false;
+            }
+        }.after(finishActionsJob);
+
+        SyncScheduler.Job textsJob = new SyncScheduler.Job("original_texts") {
+            private boolean failed = false;
+            public int getPriority() {
+                // someone is waiting on priority texts
+                return (PriorityTextQueue.size() > 0) ? PRIORITY_USER : PRIORITY_TEXTS;
+            }
+            public boolean isReady() {
+                return ((!failed) && ((PriorityTextQueue.size() + OriginalTextQueue.size()) > 0) && (!stopSync()));
+            }
+            public boolean step() {
+                if (!syncOriginalTextBatch()) failed = true;
+                return true;
+            }
+        };
+
+        // once the UI has what it asked for, stay a few pages ahead of it
+        SyncScheduler.Job readAheadJob = new SyncScheduler.Job("read_ahead") {
+            private boolean failed = false;
+            public int getPriority() {
+                return PRIORITY_READ_AHEAD;
+            }
+            public boolean isReady() {
+                if (failed) return false;
+                synchronized (PendingFeeds) {
+                    if ((ReadAheadFeed == null) || (ReadAheadPagesWanted < 1)) return false;
+                    if (PendingFeeds.containsKey(ReadAheadFeed)) return false;
+                    if (ExhaustedFeeds.contains(ReadAheadFeed)) return false;
+                    // only continue pagination that a request from the UI started
+                    if (!FeedPagesSeen.containsKey(ReadAheadFeed)) return false;
+                }
+                return (!stopSync());
+            }
+            public boolean step() {
+                if (!syncReadAheadPage()) failed = true;
+                return true;
+            }
+        };
+
+        SyncScheduler.Job imagesJob = new SyncScheduler.Job("images") {
+            public int getPriority() {
+                return PRIORITY_IMAGES;
+            }
+            public boolean isReady() {
+                if (ImageQueue.size() < 1) return false;
+                if (HoldStories) return false;
+                if (!PrefsUtils.isImagePrefetchEnabled(NBSyncService.this)) return false;
+                return (!stopSync());
+            }
+            public boolean step() {
+                prefetchImages(scheduler, this);
+                return true;
+            }
+        };
+
+        scheduler.add(actionsJob);
+        scheduler.add(pendingFeedsJob);
+        scheduler.add(metadataJob);
+        scheduler.add(unreadsJob);
+        scheduler.add(finishActionsJob);
+        scheduler.add(unreadCountsJob);
+        scheduler.add(textsJob);
+        scheduler.add(readAheadJob);
+        scheduler.add(imagesJob);
+    }
+
     /**
      * Perform any reading actions the user has done before we do anything else.
      */
@@ -216,10 +402,12 @@ public class NBSyncService extends Service {
         if (stopSync()) return;
 
         Cursor c = null;
+        SyncTelemetry.Run run = null;
         try {
             c = dbHelper.getActions(false);
             if (c.getCount() < 1) return;
 
+            run = SyncTelemetry.begin(SyncTelemetry.Phase.ACTIONS);
             ActionsRunning = true;
             NbActivity.updateAllActivities();
 
@@ -233,21 +421,26 @@ public class NBSyncService extends Service {
                     dbHelper.clearAction(id);
                     continue actionsloop;
                 }
-                    
+
                 NewsBlurResponse response = ra.doRemote(apiManager);
 
                 // if we attempted a call and it failed, do not mark the action as done
                 if (response != null) {
                     if (response.isError()) {
+                        run.addError();
                         continue actionsloop;
                     }
                 }
 
-                dbHelper.clearAction(id);
-                FollowupActions.add(ra);
+                // the action stays in the DB until its local followup step is done
+                long dbStart = System.currentTimeMillis();
+                dbHelper.markActionDoneRemote(id);
+                run.addDbTime(dbStart);
+                run.addRows(1);
             }
         } finally {
             closeQuietly(c);
+            if (run != null) SyncTelemetry.end(run);
             if (ActionsRunning) {
                 ActionsRunning = false;
                 NbActivity.updateAllActivities();
@@ -261,50 +454,93 @@ public class NBSyncService extends Service {
      */
     private void finishActions() {
         if (HaltNow) return;
-        if (FollowupActions.size() < 1) return;
 
-        for (ReadingAction ra : FollowupActions) {
-            ra.doLocal(dbHelper);
+        Cursor c = null;
+        try {
+            c = dbHelper.getActions(true);
+            while (c.moveToNext()) {
+                if (c.getInt(c.getColumnIndexOrThrow(DatabaseConstants.ACTION_DONE_REMOTE)) != 1) continue;
+                String id = c.getString(c.getColumnIndexOrThrow(DatabaseConstants.ACTION_ID));
+                try {
+                    ReadingAction.fromCursor(c).doLocal(dbHelper);
+                } catch (IllegalArgumentException e) {
+                    Log.e(this.getClass().getName(), "error unfreezing ReadingAction", e);
+                }
+                dbHelper.clearAction(id);
+            }
+        } finally {
+            closeQuietly(c);
         }
-        FollowupActions.clear();
     }
 
     /**
-     * The very first step of a sync - get the feed/folder list, unread counts, and
-     * unread hashes. Doing this resets pagination on the server!
+     * The metadata sync: storage cleanup, the feed/folder list with unread counts, and then
+     * unread hashes, one step each.  Doing this resets pagination on the server, so it waits
+     * until no feed sets are pending, unless fetching them has failed for this sync.
      */
-    private void syncMetadata() {
-        if (stopSync()) return;
-        if (HoldStories) return;
+    private class MetadataJob extends SyncScheduler.Job {
+        private final SyncScheduler.Job pendingFeedsJob;
+        private int stage = 0;
+        // there is a rare issue with feeds that have no folder.  capture them for workarounds.
+        private final Set<String> debugFeedIds = new HashSet<String>();
+        private Boolean isPremium;
 
-        if (DoFeedsFolders || PrefsUtils.isTimeToAutoSync(this)) {
-            PrefsUtils.updateLastSyncTime(this);
-            DoFeedsFolders = false;
-        } else {
-            return;
+        MetadataJob(SyncScheduler.Job pendingFeedsJob) {
+            super("metadata");
+            this.pendingFeedsJob = pendingFeedsJob;
         }
 
-        // cleanup is expensive, so do it as part of the metadata sync
-        CleanupRunning = true;
-        NbActivity.updateAllActivities();
-        dbHelper.cleanupStories(PrefsUtils.isKeepOldStories(this));
-        imageCache.cleanup();
-        dbHelper.cleanupStoryText();
-        CleanupRunning = false;
-        NbActivity.updateAllActivities();
+        /** Whether the user is premium, or null if the feed/folder list wasn't synced. */
+        Boolean isPremium() {
+            return isPremium;
+        }
 
-        // cleanup may have taken a while, so re-check our running status
-        if (stopSync()) return;
-        if (HoldStories) return;
+        public int getPriority() {
+            return PRIORITY_METADATA;
+        }
 
-        FFSyncRunning = true;
-        NbActivity.updateAllActivities();
+        public boolean isReady() {
+            return ((PendingFeeds.size() < 1) || pendingFeedsJob.isFinished());
+        }
 
-        // there is a rare issue with feeds that have no folder.  capture them for workarounds.
-        List<String> debugFeedIds = new ArrayList<String>();
+        public boolean step() {
+            if (stopSync()) return false;
+            if (HoldStories) return false;
+
+            switch (stage) {
+                case 0:
+                    if (DoFeedsFolders || PrefsUtils.isTimeToAutoSync(NBSyncService.this)) {
+                        PrefsUtils.updateLastSyncTime(NBSyncService.this);
+                        DoFeedsFolders = false;
+                    } else {
+                        return false;
+                    }
+                    // cleanup is expensive, so do it as part of the metadata sync
+                    cleanupStorage();
+                    stage++;
+                    return true;
+                case 1:
+                    isPremium = syncFeedsFolders(debugFeedIds);
+                    if (isPremium == null) return false;
+                    stage++;
+                    return true;
+                default:
+                    syncUnreadHashes(debugFeedIds, isPremium);
+                    return false;
+            }
+        }
+    }
 
-        // remember if we are premium
-        boolean isPremium;
+    /**
+     * Get the feed/folder list and unread counts.
+     *
+     * @param debugFeedIds filled with the IDs of all feeds that are in some folder.
+     * @return whether the user is premium, or null if the sync failed.
+     */
+    private Boolean syncFeedsFolders(Set<String> debugFeedIds) {
+        SyncTelemetry.Run run = SyncTelemetry.begin(SyncTelemetry.Phase.METADATA);
+        FFSyncRunning = true;
+        NbActivity.updateAllActivities();
 
         try {
             // a metadata sync invalidates pagination and feed status
@@ -312,27 +548,26 @@ public class NBSyncService extends Service {
             FeedPagesSeen.clear();
             FeedStoriesSeen.clear();
             StoryHashQueue.clear();
+            synchronized (PendingFeeds) {
+                discardReadAhead();
+            }
 
             FeedFolderResponse feedResponse = apiManager.getFolderFeedMapping(true);
 
             if (feedResponse == null) {
-                return;
+                run.addError();
+                return null;
             }
 
             // if the response says we aren't logged in, clear the DB and prompt for login. We test this
             // here, since this the first sync call we make on launch if we believe we are cookied.
             if (! feedResponse.isAuthenticated) {
                 PrefsUtils.logout(this);
-                return;
+                return null;
             }
 
             long startTime = System.currentTimeMillis();
 
-            isPremium = feedResponse.isPremium;
-
-            // clean out the feed / folder tables
-            dbHelper.cleanupFeedsFolders();
-
             // data for the folder and folder-feed-mapping tables
             List<ContentValues> folderValues = new ArrayList<ContentValues>();
             List<ContentValues> ffmValues = new ArrayList<ContentValues>();
@@ -346,7 +581,7 @@ public class NBSyncService extends Service {
                     }
 
                     for (Long feedId : entry.getValue()) {
-                        ContentValues values = new ContentValues(); 
+                        ContentValues values = new ContentValues();
                         values.put(DatabaseConstants.FEED_FOLDER_FEED_ID, feedId);
                         values.put(DatabaseConstants.FEED_FOLDER_FOLDER_NAME, folderName);
                         ffmValues.add(values);
@@ -367,29 +602,81 @@ public class NBSyncService extends Service {
                     Log.w(this.getClass().getName(), "Found and ignoring un-foldered feed: " + feedId );
                 }
             }
-            
+
             // data for the the social feeds table
             List<ContentValues> socialFeedValues = new ArrayList<ContentValues>();
             for (SocialFeed feed : feedResponse.socialFeeds) {
                 socialFeedValues.add(feed.getValues());
             }
-            
-            dbHelper.insertFeedsFolders(feedValues, folderValues, ffmValues, socialFeedValues);
+
+            // only rows that actually changed are written
+            lastFFRowsTouched = dbHelper.updateFeedsFolders(feedValues, folderValues, ffmValues, socialFeedValues);
 
             // populate the starred stories count table
             dbHelper.updateStarredStoriesCount(feedResponse.starredCount);
 
             lastFFWriteMillis = System.currentTimeMillis() - startTime;
             lastFeedCount = feedValues.size();
+            run.addDbTime(startTime);
+            run.addRows(lastFFRowsTouched);
+
+            return feedResponse.isPremium;
 
         } finally {
+            SyncTelemetry.end(run);
             FFSyncRunning = false;
             NbActivity.updateAllActivities();
         }
+    }
+
+    /**
+     * Free up local storage by removing old stories, story text, and cached images.
+     */
+    private void cleanupStorage() {
+        SyncTelemetry.Run run = SyncTelemetry.begin(SyncTelemetry.Phase.CLEANUP);
+        CleanupRunning = true;
+        NbActivity.updateAllActivities();
+        try {
+            long dbStart = System.currentTimeMillis();
+            run.addRows(dbHelper.cleanupStories(PrefsUtils.isKeepOldStories(this), AppConstants.MAX_STORAGE_MB * 1024L * 1024L));
+            run.addDbTime(dbStart);
+            imageCache.cleanup();
+            dbStart = System.currentTimeMillis();
+            run.addRows(dbHelper.cleanupStoryText(AppConstants.MAX_STORY_TEXT_MB * 1024L * 1024L));
+            run.addDbTime(dbStart);
+            // stories kept from before there was a search index are added to it a chunk at a time
+            dbStart = System.currentTimeMillis();
+            int indexed;
+            do {
+                indexed = dbHelper.indexUnsearchedStories(AppConstants.SEARCH_INDEX_CHUNK_SIZE);
+            } while ((indexed >= AppConstants.SEARCH_INDEX_CHUNK_SIZE) && (!stopSync()));
+            run.addDbTime(dbStart);
+        } finally {
+            SyncTelemetry.end(run);
+            CleanupRunning = false;
+            NbActivity.updateAllActivities();
+        }
+    }
 
-        if (HaltNow) return;
-        if (HoldStories) return;
+    /**
+     * Check the unread counts against a full recount, repairing any drift, if it has been a
+     * while since we last did.
+     */
+    private void checkUnreadCounts() {
+        if ((System.currentTimeMillis() - LastUnreadCountCheck) < AppConstants.UNREAD_COUNT_CHECK_MILLIS) return;
+        LastUnreadCountCheck = System.currentTimeMillis();
+        int repaired = dbHelper.repairUnreadCounts();
+        if (repaired > 0) {
+            SyncTelemetry.recordEvent("repaired drifted unread counts for " + repaired + " feeds");
+        }
+    }
 
+    /**
+     * Compare the API's list of unread stories with what we have locally, queueing any
+     * missing stories for fetch and marking as read any that are no longer unread.
+     */
+    private void syncUnreadHashes(Set<String> debugFeedIds, boolean isPremium) {
+        SyncTelemetry.Run run = SyncTelemetry.begin(SyncTelemetry.Phase.UNREAD_HASHES);
         UnreadHashSyncRunning = true;
 
         try {
@@ -397,77 +684,185 @@ public class NBSyncService extends Service {
             // only use the unread status API if the user is premium
             if (isPremium) {
                 UnreadStoryHashesResponse unreadHashes = apiManager.getUnreadStoryHashes();
-                
-                // note all the stories we thought were unread before. if any fail to appear in
-                // the API request for unreads, we will mark them as read
-                List<String> oldUnreadHashes = dbHelper.getUnreadStoryHashes();
-
-                for (Entry<String, String[]> entry : unreadHashes.unreadHashes.entrySet()) {
-                    String feedId = entry.getKey();
-                    // ignore unreads from orphaned feeds
-                    if( debugFeedIds.contains(feedId)) {
-                        // only fetch the reported unreads if we don't already have them
-                        List<String> existingHashes = dbHelper.getStoryHashesForFeed(feedId);
-                        for (String newHash : entry.getValue()) {
-                            if (!existingHashes.contains(newHash)) {
-                                StoryHashQueue.add(newHash);
-                            }
-                            oldUnreadHashes.remove(newHash);
-                        }
-                    }
+                if ((unreadHashes == null) || (unreadHashes.unreadHashes == null)) {
+                    run.addError();
+                    return;
                 }
 
+                long dbStart = System.currentTimeMillis();
+                UnreadHashReconciler reconciler = UnreadHashReconciler.fromDatabase(dbHelper);
+                reconciler.reconcile(unreadHashes.unreadHashes, debugFeedIds);
+                for (String hash : reconciler.getHashesToFetch()) {
+                    StoryHashQueue.add(hash);
+                }
+                List<String> oldUnreadHashes = reconciler.getHashesToMarkRead();
+
                 dbHelper.markStoryHashesRead(oldUnreadHashes);
+                StoryHashQueue.flush(dbHelper);
+                run.addDbTime(dbStart);
+                run.addRows(oldUnreadHashes.size());
             } else {
                 // if the user isn't premium, go so far as to clean up everything, there is no offline support
+                long dbStart = System.currentTimeMillis();
                 dbHelper.cleanupAllStories();
+                run.addDbTime(dbStart);
             }
         } finally {
+            SyncTelemetry.end(run);
             UnreadHashSyncRunning = false;
             NbActivity.updateAllActivities();
         }
     }
 
     /**
-     * Fetch any unread stories (by hash) that we learnt about during the FFSync.
+     * Fetch any unread stories (by hash) that we learnt about during the metadata sync.
+     *
+     * Batches are fetched and decoded on the fetch pool while each step writes one completed
+     * batch to the DB, so network, parsing, and DB time overlap and more urgent work can run
+     * between batches.  The number of batches that have been requested but not yet written
+     * is bounded so decoded stories cannot pile up in memory faster than we can store them.
+     *
+     * Each batch is sized by the UnreadBatchSizer as it is submitted.  A failed batch is
+     * retried in smaller batches rather than ending the sync, unless failures persist.
      */
-    private void syncUnreads() {
-        try {
-            unreadsyncloop: while (StoryHashQueue.size() > 0) {
-                if (stopSync()) return;
-                if (HoldStories) return;
+    private class UnreadsJob extends SyncScheduler.Job {
+        private List<String> hashes;
+        private int nextHash = 0;
+        private final List<String> retryHashes = new ArrayList<String>();
+        private int consecutiveFailures = 0;
+        private final List<Future<UnreadBatch>> inFlight = new ArrayList<Future<UnreadBatch>>();
+        private CompletionService<UnreadBatch> fetcher;
+        private SyncTelemetry.Run run;
+
+        UnreadsJob() {
+            super("unreads");
+        }
 
-                UnreadSyncRunning = true;
-                NbActivity.updateAllActivities();
+        public int getPriority() {
+            return PRIORITY_UNREADS;
+        }
+
+        public boolean isReady() {
+            return true;
+        }
 
-                List<String> hashBatch = new ArrayList(AppConstants.UNREAD_FETCH_BATCH_SIZE);
-                batchloop: for (String hash : StoryHashQueue) {
-                    hashBatch.add(hash);
-                    if (hashBatch.size() >= AppConstants.UNREAD_FETCH_BATCH_SIZE) break batchloop;
+        public boolean step() {
+            if (stopSync()) return false;
+            if (HoldStories) return false;
+
+            if (hashes == null) {
+                if (StoryHashQueue.size() < 1) return false;
+                start();
+            }
+
+            // keep the pipeline full, up to the in-flight limit
+            while (hasUnsubmitted() && (inFlight.size() < AppConstants.UNREAD_FETCH_MAX_IN_FLIGHT)) {
+                List<String> hashBatch = nextBatch();
+                StoryHashQueue.claim(hashBatch);
+                inFlight.add(fetcher.submit(new UnreadBatchFetch(hashBatch, run)));
+            }
+            if (inFlight.size() < 1) return false;
+
+            try {
+                Future<UnreadBatch> done = fetcher.take();
+                inFlight.remove(done);
+                UnreadBatch batch = done.get();
+
+                if (stopSync()) return false;
+                if (HoldStories) return false;
+
+                if (! isStoryResponseGood(batch.response)) {
+                    run.addError();
+                    UnreadBatchSizer.onFailure(batch.hashes.size());
+                    consecutiveFailures++;
+                    if (consecutiveFailures >= AppConstants.UNREAD_FETCH_MAX_FAILURES) {
+                        Log.e(this.getClass().getName(), "repeated errors fetching unreads batches, abandoning sync.");
+                        return false;
+                    }
+                    // try these again, in what will now be smaller batches
+                    retryHashes.addAll(batch.hashes);
+                    return true;
                 }
-                StoriesResponse response = apiManager.getStoriesByHash(hashBatch);
-                if (! isStoryResponseGood(response)) {
-                    Log.e(this.getClass().getName(), "error fetching unreads batch, abandoning sync.");
-                    break unreadsyncloop;
+                consecutiveFailures = 0;
+                // size by what came back, which may be less than we asked for
+                UnreadBatchSizer.onSuccess(batch.response.stories.length, batch.millis, batch.bytes, batch.failedAttempts);
+
+                long dbStart = System.currentTimeMillis();
+                dbHelper.insertStories(batch.response);
+                run.addDbTime(dbStart);
+                run.addRows(batch.response.stories.length);
+                // anything the API left out from a good response is not coming, so is dropped
+                // along with the rest.  if it is still unread, the next metadata sync queues it again.
+                int missing = batch.hashes.size() - batch.response.stories.length;
+                if (missing > 0) {
+                    SyncTelemetry.recordEvent("dropped " + missing + " unread hashes the API did not return");
                 }
-                dbHelper.insertStories(response);
-                for (String hash : hashBatch) {
-                    StoryHashQueue.remove(hash);
-                } 
+                StoryHashQueue.removeAll(batch.hashes);
 
-                for (Story story : response.stories) {
+                for (Story story : batch.response.stories) {
                     if (story.imageUrls != null) {
                         for (String url : story.imageUrls) {
-                            ImageQueue.add(url);
+                            queueImage(url, story.timestamp);
                         }
                     }
-                    DefaultFeedView mode = PrefsUtils.getDefaultFeedViewForFeed(this, story.feedId);
+                    DefaultFeedView mode = PrefsUtils.getDefaultFeedViewForFeed(NBSyncService.this, story.feedId);
                     if (mode == DefaultFeedView.TEXT) {
                         OriginalTextQueue.add(story.storyHash);
                     }
                 }
+
+                StoryHashQueue.flush(dbHelper);
+                ImageQueue.flush(dbHelper);
+                OriginalTextQueue.flush(dbHelper);
+
+                // let the UI update the countdown of remaining stories
+                NbActivity.updateAllActivities();
+
+                return (hasUnsubmitted() || (inFlight.size() > 0));
+            } catch (InterruptedException ie) {
+                Log.w(this.getClass().getName(), "interrupted fetching unreads, abandoning sync.");
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException ee) {
+                Log.e(this.getClass().getName(), "error fetching unreads batch, abandoning sync.", ee.getCause());
+                run.addError();
+                return false;
             }
-        } finally {
+        }
+
+        private void start() {
+            // snapshot the queue up front so that no two workers ask for the same hash
+            hashes = StoryHashQueue.peek(Integer.MAX_VALUE);
+
+            fetcher = new ExecutorCompletionService<UnreadBatch>(fetchExecutor);
+            run = SyncTelemetry.begin(SyncTelemetry.Phase.UNREADS);
+            UnreadSyncRunning = true;
+            NbActivity.updateAllActivities();
+        }
+
+        private boolean hasUnsubmitted() {
+            return ((retryHashes.size() > 0) || (nextHash < hashes.size()));
+        }
+
+        private List<String> nextBatch() {
+            int size = UnreadBatchSizer.getBatchSize();
+            List<String> hashBatch = new ArrayList<String>(size);
+            while ((hashBatch.size() < size) && (retryHashes.size() > 0)) {
+                hashBatch.add(retryHashes.remove(retryHashes.size() - 1));
+            }
+            while ((hashBatch.size() < size) && (nextHash < hashes.size())) {
+                hashBatch.add(hashes.get(nextHash++));
+            }
+            return hashBatch;
+        }
+
+        public void finish() {
+            // anything still outstanding stays queued for the next sync
+            for (Future<UnreadBatch> f : inFlight) {
+                f.cancel(false);
+            }
+            inFlight.clear();
+            if (run != null) SyncTelemetry.end(run);
             if (UnreadSyncRunning) {
                 UnreadSyncRunning = false;
                 NbActivity.updateAllActivities();
@@ -475,36 +870,156 @@ public class NBSyncService extends Service {
         }
     }
 
-    private void syncOriginalTexts() {
+    /**
+     * A batch of hashes, the decoded API response for them, and how the fetch went.
+     */
+    private static class UnreadBatch {
+        final List<String> hashes;
+        final StoriesResponse response;
+        final long millis;
+        final long bytes;
+        final long failedAttempts;
+        UnreadBatch(List<String> hashes, StoriesResponse response, long millis, long bytes, long failedAttempts) {
+            this.hashes = hashes;
+            this.response = response;
+            this.millis = millis;
+            this.bytes = bytes;
+            this.failedAttempts = failedAttempts;
+        }
+    }
+
+    /**
+     * Fetches and decodes a single batch of unread stories.  Runs on the fetch pool and
+     * must not touch the DB.
+     */
+    private class UnreadBatchFetch implements Callable<UnreadBatch> {
+        private final List<String> hashes;
+        private final SyncTelemetry.Run run;
+        UnreadBatchFetch(List<String> hashes, SyncTelemetry.Run run) {
+            this.hashes = hashes;
+            this.run = run;
+        }
+        public UnreadBatch call() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            if (HaltNow) return new UnreadBatch(hashes, null, 0L, 0L, 0L);
+            SyncTelemetry.attach(run);
+            try {
+                long startTime = System.currentTimeMillis();
+                long startBytes = SyncTelemetry.getThreadNetworkBytes();
+                long startErrors = SyncTelemetry.getThreadNetworkErrors();
+                StoriesResponse response = apiManager.getStoriesByHash(hashes);
+                return new UnreadBatch(hashes,
+                                       response,
+                                       System.currentTimeMillis() - startTime,
+                                       SyncTelemetry.getThreadNetworkBytes() - startBytes,
+                                       SyncTelemetry.getThreadNetworkErrors() - startErrors);
+            } finally {
+                SyncTelemetry.detach();
+            }
+        }
+    }
+
+    /**
+     * Fetch original story text for one batch of queued stories.  The batch is fetched with
+     * bounded parallelism on the fetch pool and stored in a single transaction.  Stories the
+     * UI is waiting on are always taken first.  A story whose fetch fails stays queued behind
+     * the others until it has failed ORIGINAL_TEXT_MAX_ATTEMPTS times, after which an empty
+     * text is stored so that nothing waits on it any longer.
+     *
+     * @return false if we were interrupted, or nothing in the batch could be fetched, and we
+     *         should not try again this sync.
+     */
+    private boolean syncOriginalTextBatch() {
+        final SyncTelemetry.Run run = SyncTelemetry.begin(SyncTelemetry.Phase.ORIGINAL_TEXTS);
         try {
-            while (OriginalTextQueue.size() > 0) {
-                OriginalTextSyncRunning = true;
-                NbActivity.updateAllActivities();
+            OriginalTextSyncRunning = true;
+            NbActivity.updateAllActivities();
 
-                Set<String> fetchedHashes = new HashSet<String>();
-                Set<String> batch = new HashSet<String>(AppConstants.IMAGE_PREFETCH_BATCH_SIZE);
-                batchloop: for (String hash : OriginalTextQueue) {
-                    batch.add(hash);
-                    if (batch.size() >= AppConstants.IMAGE_PREFETCH_BATCH_SIZE) break batchloop;
-                }
-                try {
-                    fetchloop: for (String hash : batch) {
-                        if (stopSync()) return;
-                        
-                        String result = "";
-                        StoryTextResponse response = apiManager.getStoryText(FeedUtils.inferFeedId(hash), hash);
-                        if ((response != null) && (response.originalText != null)) {
-                            result = response.originalText;
+            List<String> batch = new ArrayList<String>(AppConstants.ORIGINAL_TEXT_BATCH_SIZE);
+            fillTextBatch(batch, PriorityTextQueue);
+            fillTextBatch(batch, OriginalTextQueue);
+            PriorityTextQueue.claim(batch);
+            OriginalTextQueue.claim(batch);
+
+            List<Callable<String>> fetches = new ArrayList<Callable<String>>(batch.size());
+            for (final String hash : batch) {
+                fetches.add(new Callable<String>() {
+                    public String call() {
+                        if (HaltNow) return null;
+                        SyncTelemetry.attach(run);
+                        try {
+                            StoryTextResponse response = apiManager.getStoryText(FeedUtils.inferFeedId(hash), hash);
+                            // an API error is a failed attempt, but a story with no text is done
+                            if (response == null) return null;
+                            return (response.originalText != null) ? response.originalText : "";
+                        } finally {
+                            SyncTelemetry.detach();
                         }
-                        dbHelper.putStoryText(hash, result);
-
-                        fetchedHashes.add(hash);
                     }
-                } finally {
-                    OriginalTextQueue.removeAll(fetchedHashes);
+                });
+            }
+
+            List<Future<String>> results;
+            try {
+                results = fetchExecutor.invokeAll(fetches);
+            } catch (InterruptedException ie) {
+                releaseTextBatch(batch);
+                throw ie;
+            }
+            if (HaltNow) {
+                // fetches skipped or cut short by the halt are not failures
+                releaseTextBatch(batch);
+                return true;
+            }
+
+            Map<String,String> texts = new HashMap<String,String>(batch.size());
+            List<String> retries = new ArrayList<String>();
+            int fetchedCount = 0;
+            for (int i=0; i<batch.size(); i++) {
+                String hash = batch.get(i);
+                String text = null;
+                try {
+                    text = results.get(i).get();
+                } catch (ExecutionException ee) {
+                    Log.e(this.getClass().getName(), "error fetching original text", ee.getCause());
+                    run.addError();
+                }
+                if (text != null) {
+                    fetchedCount++;
+                    texts.put(hash, text);
+                    TextFetchFailures.remove(hash);
+                    continue;
+                }
+                Integer failures = TextFetchFailures.get(hash);
+                failures = (failures == null) ? 1 : failures + 1;
+                if (failures >= AppConstants.ORIGINAL_TEXT_MAX_ATTEMPTS) {
+                    Log.w(this.getClass().getName(), "giving up on original text for " + hash);
+                    texts.put(hash, "");
+                    TextFetchFailures.remove(hash);
+                } else {
+                    TextFetchFailures.put(hash, failures);
+                    retries.add(hash);
                 }
             }
+
+            long dbStart = System.currentTimeMillis();
+            dbHelper.putStoryTexts(texts);
+            run.addDbTime(dbStart);
+            run.addRows(texts.size());
+
+            PriorityTextQueue.removeAll(texts.keySet());
+            OriginalTextQueue.removeAll(texts.keySet());
+            releaseTextBatch(retries);
+            PriorityTextQueue.flush(dbHelper);
+            OriginalTextQueue.flush(dbHelper);
+            // if nothing at all came back, the API is likely unreachable and the rest can wait
+            return ((fetchedCount > 0) || (batch.size() < 1));
+        } catch (InterruptedException ie) {
+            Log.w(this.getClass().getName(), "interrupted fetching original texts.");
+            Thread.currentThread().interrupt();
+            return false;
         } finally {
+            SyncTelemetry.end(run);
             if (OriginalTextSyncRunning) {
                 OriginalTextSyncRunning = false;
                 NbActivity.updateAllActivities();
@@ -512,92 +1027,184 @@ public class NBSyncService extends Service {
         }
     }
 
+    private static void releaseTextBatch(List<String> batch) {
+        PriorityTextQueue.releaseAll(batch);
+        OriginalTextQueue.releaseAll(batch);
+    }
+
+    private static void fillTextBatch(List<String> batch, SyncQueue queue) {
+        for (String hash : queue.peek(AppConstants.ORIGINAL_TEXT_BATCH_SIZE)) {
+            if (batch.size() >= AppConstants.ORIGINAL_TEXT_BATCH_SIZE) return;
+            if (!batch.contains(hash)) batch.add(hash);
+        }
+    }
+
     /**
-     * Fetch stories needed because the user is actively viewing a feed or folder.
+     * Fetch the next page of stories for a feed set the user is actively viewing.
+     *
+     * @return false if the API call failed.
      */
-    private void syncPendingFeeds() {
-        try {
-            Set<FeedSet> handledFeeds = new HashSet<FeedSet>();
-            feedloop: for (FeedSet fs : PendingFeeds.keySet()) {
+    private boolean syncPendingFeedPage() {
+        FeedSet fs = null;
+        int desiredStoryCount = 0;
+        synchronized (PendingFeeds) {
+            for (Entry<FeedSet,Integer> entry : PendingFeeds.entrySet()) {
+                fs = entry.getKey();
+                desiredStoryCount = entry.getValue();
+                break;
+            }
+        }
+        if (fs == null) return true;
 
-                if (ExhaustedFeeds.contains(fs)) {
-                    Log.i(this.getClass().getName(), "No more stories for feed set: " + fs);
-                    handledFeeds.add(fs);
-                    continue feedloop;
-                }
+        if (ExhaustedFeeds.contains(fs)) {
+            Log.i(this.getClass().getName(), "No more stories for feed set: " + fs);
+            finishPendingFeed(fs);
+            return true;
+        }
 
-                StorySyncRunning = true;
-                NbActivity.updateAllActivities();
-                
-                if (!FeedPagesSeen.containsKey(fs)) {
-                    FeedPagesSeen.put(fs, 0);
-                    FeedStoriesSeen.put(fs, 0);
-                }
-                int pageNumber = FeedPagesSeen.get(fs);
-                int totalStoriesSeen = FeedStoriesSeen.get(fs);
-
-                StoryOrder order = PrefsUtils.getStoryOrder(this, fs);
-                ReadFilter filter = PrefsUtils.getReadFilter(this, fs);
-                
-                pageloop: while (totalStoriesSeen < PendingFeeds.get(fs)) {
-                    if (stopSync()) return;
-
-                    pageNumber++;
-                    StoriesResponse apiResponse = apiManager.getStories(fs, pageNumber, order, filter);
-                
-                    if (! isStoryResponseGood(apiResponse)) break feedloop;
-
-                    FeedPagesSeen.put(fs, pageNumber);
-                    totalStoriesSeen += apiResponse.stories.length;
-                    FeedStoriesSeen.put(fs, totalStoriesSeen);
-
-                    dbHelper.insertStories(apiResponse);
-                
-                    if (apiResponse.stories.length == 0) {
-                        ExhaustedFeeds.add(fs);
-                        break pageloop;
-                    }
-                }
+        if (!FeedPagesSeen.containsKey(fs)) {
+            FeedPagesSeen.put(fs, 0);
+            FeedStoriesSeen.put(fs, 0);
+        }
 
-                handledFeeds.add(fs);
-            }
+        if (FeedStoriesSeen.get(fs) >= desiredStoryCount) {
+            finishPendingFeed(fs);
+            return true;
+        }
 
-            PendingFeeds.keySet().removeAll(handledFeeds);
+        if (!StorySyncRunning) {
+            StorySyncRunning = true;
+            NbActivity.updateAllActivities();
+        }
+
+        SyncTelemetry.Run run = SyncTelemetry.begin(SyncTelemetry.Phase.PENDING_FEEDS);
+        try {
+            int storyCount = fetchFeedPage(fs, run);
+            if (storyCount < 0) return false;
+            if ((storyCount == 0) || (FeedStoriesSeen.get(fs) >= desiredStoryCount)) {
+                finishPendingFeed(fs);
+            }
+            return true;
         } finally {
-            if (StorySyncRunning) {
-                StorySyncRunning = false;
-                NbActivity.updateAllActivities();
+            SyncTelemetry.end(run);
+        }
+    }
+
+    /**
+     * Fetch a page of stories beyond what the UI has asked for, for the feed set the user is
+     * viewing, so the next request can be served without waiting on the network.
+     *
+     * @return false if the API call failed.
+     */
+    private boolean syncReadAheadPage() {
+        FeedSet fs;
+        int storiesBefore;
+        synchronized (PendingFeeds) {
+            fs = ReadAheadFeed;
+            if ((fs == null) || (!FeedStoriesSeen.containsKey(fs))) return true;
+            storiesBefore = FeedStoriesSeen.get(fs);
+        }
+
+        SyncTelemetry.Run run = SyncTelemetry.begin(SyncTelemetry.Phase.READ_AHEAD);
+        try {
+            int storyCount = fetchFeedPage(fs, run);
+            if (storyCount < 0) return false;
+            synchronized (PendingFeeds) {
+                // the user may have moved on while we were fetching
+                if (fs.equals(ReadAheadFeed)) {
+                    ReadAheadPagesWanted--;
+                    if (storyCount > 0) ReadAheadPageStarts.add(storiesBefore);
+                }
             }
+            return true;
+        } finally {
+            SyncTelemetry.end(run);
         }
     }
 
-    private void prefetchImages() {
-        if (!PrefsUtils.isImagePrefetchEnabled(this)) return;
+    /**
+     * Fetch and store the next page of stories for a feed set, updating pagination state.
+     *
+     * @return the number of stories on the page, or -1 if the API call failed.
+     */
+    private int fetchFeedPage(FeedSet fs, SyncTelemetry.Run run) {
+        if (!FeedPagesSeen.containsKey(fs)) {
+            FeedPagesSeen.put(fs, 0);
+            FeedStoriesSeen.put(fs, 0);
+        }
+        int pageNumber = FeedPagesSeen.get(fs);
+        int totalStoriesSeen = FeedStoriesSeen.get(fs);
+
+        StoryOrder order = PrefsUtils.getStoryOrder(this, fs);
+        ReadFilter filter = PrefsUtils.getReadFilter(this, fs);
+
+        pageNumber++;
+        StoriesResponse apiResponse = apiManager.getStories(fs, pageNumber, order, filter);
+
+        if (! isStoryResponseGood(apiResponse)) {
+            run.addError();
+            return -1;
+        }
+
+        FeedPagesSeen.put(fs, pageNumber);
+        totalStoriesSeen += apiResponse.stories.length;
+        FeedStoriesSeen.put(fs, totalStoriesSeen);
+
+        long dbStart = System.currentTimeMillis();
+        dbHelper.insertStories(apiResponse);
+        run.addDbTime(dbStart);
+        run.addRows(apiResponse.stories.length);
+
+        if (apiResponse.stories.length == 0) {
+            ExhaustedFeeds.add(fs);
+        }
+        return apiResponse.stories.length;
+    }
+
+    /**
+     * Stop fetching for a feed set, unless the UI asked for even more while we were working.
+     */
+    private void finishPendingFeed(FeedSet fs) {
+        synchronized (PendingFeeds) {
+            Integer desired = PendingFeeds.get(fs);
+            Integer seen = FeedStoriesSeen.get(fs);
+            if ((!ExhaustedFeeds.contains(fs)) && (desired != null) && (seen != null) && (seen < desired)) return;
+            PendingFeeds.remove(fs);
+        }
+    }
+
+    /**
+     * Note an image for prefetch, remembering the newest story that uses it so that images for
+     * the most recent stories are fetched first.
+     */
+    private static void queueImage(String url, long storyTimestamp) {
+        ImageQueue.putIfHigher(url, storyTimestamp);
+    }
+
+    /**
+     * Prefetch queued images until the queue is drained or more urgent work turns up.
+     */
+    private void prefetchImages(final SyncScheduler scheduler, final SyncScheduler.Job job) {
+        SyncTelemetry.Run run = SyncTelemetry.begin(SyncTelemetry.Phase.IMAGES);
+        long imagesBefore = imagePrefetcher.getImageCount();
         try {
-            while (ImageQueue.size() > 0) {
-                ImagePrefetchRunning = true;
-                NbActivity.updateAllActivities();
+            ImagePrefetchRunning = true;
+            NbActivity.updateAllActivities();
 
-                Set<String> fetchedImages = new HashSet<String>();
-                Set<String> batch = new HashSet<String>(AppConstants.IMAGE_PREFETCH_BATCH_SIZE);
-                batchloop: for (String url : ImageQueue) {
-                    batch.add(url);
-                    if (batch.size() >= AppConstants.IMAGE_PREFETCH_BATCH_SIZE) break batchloop;
+            imagePrefetcher.prefetch(ImageQueue, new ImagePrefetcher.Callback() {
+                public boolean shouldStop() {
+                    return (stopSync() || HoldStories || scheduler.hasMoreUrgent(job));
                 }
-                try {
-                    for (String url : batch) {
-                        if (stopSync()) return;
-                        if (HoldStories) return;
-                        
-                        imageCache.cacheImage(url);
-
-                        fetchedImages.add(url);
-                    }
-                } finally {
-                    ImageQueue.removeAll(fetchedImages);
+                public void onProgress() {
+                    ImageQueue.flush(dbHelper);
+                    NbActivity.updateAllActivities();
                 }
-            }
+            });
+            ImagePrefetchStats = imagePrefetcher.getStats();
+            ImageQueue.flush(dbHelper);
         } finally {
+            run.addRows(imagePrefetcher.getImageCount() - imagesBefore);
+            SyncTelemetry.end(run);
             if (ImagePrefetchRunning) {
                 ImagePrefetchRunning = false;
                 NbActivity.updateAllActivities();
@@ -605,6 +1212,37 @@ public class NBSyncService extends Service {
         }
     }
 
+    /**
+     * Re-load any work queued by a previous process.  Work that process had claimed but
+     * not finished is queued again.
+     */
+    private void restoreQueues() {
+        dbHelper.releaseSyncQueueClaims();
+        StoryHashQueue.restore(dbHelper);
+        ImageQueue.restore(dbHelper);
+        OriginalTextQueue.restore(dbHelper);
+        PriorityTextQueue.restore(dbHelper);
+        // page requests come from UI that died along with the process that made them, so they
+        // are expired rather than replayed; the UI asks again for whatever it still shows.
+        dbHelper.clearSyncQueue(STALE_PENDING_FEEDS_QUEUE);
+        QueuesRestored = true;
+        if (AppConstants.VERBOSE_LOG) Log.d(this.getClass().getName(), "restored queues, unreads:" + StoryHashQueue.size() + " images:" + ImageQueue.size());
+    }
+
+    /**
+     * Write any queue changes not yet persisted through to the DB.
+     */
+    private void flushQueues() {
+        try {
+            StoryHashQueue.flush(dbHelper);
+            ImageQueue.flush(dbHelper);
+            OriginalTextQueue.flush(dbHelper);
+            PriorityTextQueue.flush(dbHelper);
+        } catch (Exception e) {
+            Log.e(this.getClass().getName(), "error persisting sync queues", e);
+        }
+    }
+
     private boolean isStoryResponseGood(StoriesResponse response) {
         if (response == null) {
             Log.e(this.getClass().getName(), "Null response received while loading stories.");
@@ -657,7 +1295,7 @@ public class NBSyncService extends Service {
         if (UnreadSyncRunning) return "Syncing " + StoryHashQueue.size() + " stories . . .";
         if (ImagePrefetchRunning) return "Caching " + ImageQueue.size() + " images . . .";
         if (StorySyncRunning) return "Syncing stories . . .";
-        if (OriginalTextSyncRunning) return "Syncing text for " + OriginalTextQueue.size() + " stories. . .";
+        if (OriginalTextSyncRunning) return "Syncing text for " + (PriorityTextQueue.size() + OriginalTextQueue.size()) + " stories. . .";
         return null;
     }
 
@@ -687,6 +1325,15 @@ public class NBSyncService extends Service {
      *        or a negative number if the caller trusts us to track for them
      */
     public static boolean requestMoreForFeed(FeedSet fs, int desiredStoryCount, int callerSeen) {
+        if (fs.getSearchQuery() != null) {
+            // searches only cover stories we already have
+            return false;
+        }
+
+        synchronized (PendingFeeds) {
+            trackReadAhead(fs, desiredStoryCount);
+        }
+
         if (ExhaustedFeeds.contains(fs)) {
             if (AppConstants.VERBOSE_LOG) Log.i(NBSyncService.class.getName(), "rejecting request for feedset that is exhaused");
             return false;
@@ -711,9 +1358,10 @@ public class NBSyncService extends Service {
             if (desiredStoryCount <= alreadyRequested) {
                 return false;
             }
+
+            // a running sync will pick this up before its next batch of background work
+            PendingFeeds.put(fs, desiredStoryCount);
         }
-            
-        PendingFeeds.put(fs, desiredStoryCount);
         return true;
     }
 
@@ -721,10 +1369,47 @@ public class NBSyncService extends Service {
         ExhaustedFeeds.clear();
         FeedPagesSeen.clear();
         FeedStoriesSeen.clear();
+        synchronized (PendingFeeds) {
+            discardReadAhead();
+        }
     }
 
+    /**
+     * Point read-ahead at the feed set the UI is asking about and keep it a fixed number of
+     * pages ahead of what the UI wants.  Caller must hold the PendingFeeds lock.
+     */
+    private static void trackReadAhead(FeedSet fs, int desiredStoryCount) {
+        if (!fs.equals(ReadAheadFeed)) {
+            discardReadAhead();
+            ReadAheadFeed = fs;
+        }
+        // any read-ahead page starting below what the UI now wants has been used
+        for (Iterator<Integer> i = ReadAheadPageStarts.iterator(); i.hasNext(); ) {
+            if (i.next() < desiredStoryCount) {
+                i.remove();
+                ReadAheadPagesUsed++;
+            }
+        }
+        ReadAheadPagesWanted = AppConstants.READ_AHEAD_PAGES - ReadAheadPageStarts.size();
+    }
+
+    /**
+     * Stop reading ahead, counting any pages the UI never reached as unused.  Caller must
+     * hold the PendingFeeds lock.
+     */
+    private static void discardReadAhead() {
+        ReadAheadPagesUnused += ReadAheadPageStarts.size();
+        ReadAheadPageStarts.clear();
+        ReadAheadPagesWanted = 0;
+        ReadAheadFeed = null;
+    }
+
+    /**
+     * Requests the original text for a story the user is waiting on.  Such stories are
+     * fetched ahead of any background text prefetch.
+     */
     public static void getOriginalText(String hash) {
-        OriginalTextQueue.add(hash);
+        PriorityTextQueue.add(hash);
     }
 
     public static void softInterrupt() {
@@ -740,6 +1425,8 @@ public class NBSyncService extends Service {
     public void onDestroy() {
         if (AppConstants.VERBOSE_LOG) Log.d(this.getClass().getName(), "onDestroy - stopping execution");
         HaltNow = true;
+        fetchExecutor.shutdownNow();
+        imagePrefetcher.shutdown();
         executor.shutdown();
         boolean cleanShutdown = false;
         try {
@@ -766,9 +1453,38 @@ public class NBSyncService extends Service {
         return isMemoryLow;
     }
 
+    /**
+     * A detailed, multi-line report of recent per-phase sync performance.  The user can share
+     * it as a file from the main menu.
+     */
+    public static String getDiagnostics() {
+        return SyncTelemetry.getReport() + "read-ahead: " + getReadAheadStats() + "\n";
+    }
+
+    /**
+     * A short form of getDiagnostics(), for feedback links.
+     */
+    public static String getDiagnosticsSummary() {
+        return SyncTelemetry.getSummary() + "read-ahead: " + getReadAheadStats() + "\n";
+    }
+
+    /**
+     * How many read-ahead pages were later reached by the UI (hits) versus thrown away unseen
+     * (misses), not counting pages still ahead of the UI.
+     */
+    private static String getReadAheadStats() {
+        synchronized (PendingFeeds) {
+            return ReadAheadPagesUsed + " pages used, " + ReadAheadPagesUnused + " unused, " + ReadAheadPageStarts.size() + " pending";
+        }
+    }
+
     public static String getSpeedInfo() {
         StringBuilder s = new StringBuilder();
-        s.append(lastFeedCount).append(" in ").append(lastFFWriteMillis);
+        s.append(lastFeedCount).append(" (").append(lastFFRowsTouched).append(" rows changed) in ").append(lastFFWriteMillis);
+        if (ImagePrefetchStats != null) {
+            s.append(" images: ").append(ImagePrefetchStats);
+        }
+        s.append(" read-ahead: ").append(getReadAheadStats());
         return s.toString();
     }
 
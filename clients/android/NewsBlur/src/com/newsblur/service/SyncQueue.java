@@ -0,0 +1,190 @@
+package com.newsblur.service;
+
+import com.newsblur.database.BlurDatabaseHelper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A named queue of sync work that survives the process being killed.
+ *
+ * Items live in memory so that the sync loop can check and update them cheaply, and each
+ * change is also buffered so that it can be written behind to the DB in one transaction at
+ * a convenient point via {@link #flush}.  Items handed to a worker are claimed, and are only
+ * removed once acknowledged; claims left behind by a dead process are released on restore
+ * so that the work is done again.
+ *
+ * Every item carries a long value whose meaning is up to the user of the queue (a story
+ * timestamp, a desired count, etc.).  All methods are safe to call from any thread.
+ */
+public class SyncQueue {
+
+    private final String name;
+    private final LinkedHashMap<String,Long> items = new LinkedHashMap<String,Long>();
+
+    // changes not yet written to the DB
+    private boolean dirtyClear = false;
+    private final Map<String,Long> dirtyPuts = new HashMap<String,Long>();
+    private final Set<String> dirtyDeletes = new HashSet<String>();
+    private final Set<String> dirtyClaims = new HashSet<String>();
+
+    public SyncQueue(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized boolean add(String item) {
+        if (items.containsKey(item)) return false;
+        put(item, 0L);
+        return true;
+    }
+
+    public synchronized void put(String item, long value) {
+        items.put(item, value);
+        dirtyDeletes.remove(item);
+        dirtyPuts.put(item, value);
+    }
+
+    /**
+     * Adds the item, or updates it if the given value is higher than the existing one.
+     */
+    public synchronized void putIfHigher(String item, long value) {
+        Long existing = items.get(item);
+        if ((existing == null) || (existing < value)) {
+            put(item, value);
+        }
+    }
+
+    public synchronized Long get(String item) {
+        return items.get(item);
+    }
+
+    public synchronized boolean contains(String item) {
+        return items.containsKey(item);
+    }
+
+    public synchronized int size() {
+        return items.size();
+    }
+
+    /**
+     * Gets up to max items, oldest first.
+     */
+    public synchronized List<String> peek(int max) {
+        List<String> result = new ArrayList<String>(Math.min(max, items.size()));
+        for (String item : items.keySet()) {
+            if (result.size() >= max) break;
+            result.add(item);
+        }
+        return result;
+    }
+
+    /**
+     * Gets a copy of every item and its value, oldest first.
+     */
+    public synchronized Map<String,Long> snapshot() {
+        return new LinkedHashMap<String,Long>(items);
+    }
+
+    /**
+     * Notes that an item has been handed to a worker.  It stays queued until acknowledged.
+     */
+    public synchronized void claim(String item) {
+        if (items.containsKey(item)) dirtyClaims.add(item);
+    }
+
+    public synchronized void claim(Collection<String> claimed) {
+        for (String item : claimed) {
+            claim(item);
+        }
+    }
+
+    /**
+     * Hands back an item that a worker claimed but could not finish.  It stays queued, but
+     * moves behind everything else so that other work gets a turn before it is retried.
+     */
+    public synchronized void release(String item) {
+        Long value = items.remove(item);
+        if (value == null) return;
+        dirtyClaims.remove(item);
+        // rewriting the item clears any claim that was already flushed
+        put(item, value);
+    }
+
+    public synchronized void releaseAll(Collection<String> released) {
+        for (String item : released) {
+            release(item);
+        }
+    }
+
+    /**
+     * Acknowledges that an item is done, removing it from the queue.
+     */
+    public synchronized void remove(String item) {
+        items.remove(item);
+        dirtyPuts.remove(item);
+        dirtyClaims.remove(item);
+        if (!dirtyClear) dirtyDeletes.add(item);
+    }
+
+    public synchronized void removeAll(Collection<String> done) {
+        for (String item : done) {
+            remove(item);
+        }
+    }
+
+    public synchronized void clear() {
+        items.clear();
+        dirtyClear = true;
+        dirtyPuts.clear();
+        dirtyDeletes.clear();
+        dirtyClaims.clear();
+    }
+
+    /**
+     * Writes any buffered changes to the DB.  Should only be called from the sync thread.
+     */
+    public void flush(BlurDatabaseHelper dbHelper) {
+        boolean clearFirst;
+        Map<String,Long> puts;
+        Set<String> deletes;
+        Set<String> claims;
+        synchronized (this) {
+            if (!dirtyClear && dirtyPuts.isEmpty() && dirtyDeletes.isEmpty() && dirtyClaims.isEmpty()) return;
+            clearFirst = dirtyClear;
+            puts = new HashMap<String,Long>(dirtyPuts);
+            deletes = new HashSet<String>(dirtyDeletes);
+            claims = new HashSet<String>(dirtyClaims);
+            dirtyClear = false;
+            dirtyPuts.clear();
+            dirtyDeletes.clear();
+            dirtyClaims.clear();
+        }
+        dbHelper.writeSyncQueue(name, clearFirst, puts, deletes, claims);
+    }
+
+    /**
+     * Merges any persisted items into memory.  Claims should be released beforehand so that
+     * work started by a previous process is picked up again.
+     */
+    public synchronized void restore(BlurDatabaseHelper dbHelper) {
+        // anything persisted before a pending clear is already obsolete
+        if (dirtyClear) return;
+        Map<String,Long> persisted = dbHelper.getSyncQueue(name);
+        for (Map.Entry<String,Long> entry : persisted.entrySet()) {
+            if (!items.containsKey(entry.getKey()) && !dirtyDeletes.contains(entry.getKey())) {
+                items.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+}
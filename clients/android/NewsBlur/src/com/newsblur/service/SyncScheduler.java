@@ -0,0 +1,167 @@
+package com.newsblur.service;
+
+import android.util.Log;
+
+import com.newsblur.util.AppConstants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs sync work as a set of prioritised jobs.  Each call to {@link Job#step} does one
+ * bounded unit of work (a page of stories, a batch of hashes, a batch of images), and the
+ * most urgent ready job is picked again after every step, so urgent work that shows up
+ * mid-sync, such as the user asking for more stories, never waits for more than one step
+ * of background work.
+ *
+ * A ready job that is passed over too many times in a row is run next regardless of
+ * priority, so a steady stream of urgent work cannot starve background work forever.
+ *
+ * All methods must be called from the sync thread.
+ */
+public class SyncScheduler {
+
+    /**
+     * Lets the caller stop the scheduler between steps.
+     */
+    public interface StopCondition {
+        boolean shouldStop();
+    }
+
+    /**
+     * A unit of sync work that may take many steps to finish.
+     */
+    public static abstract class Job {
+        private final String name;
+        private final List<Job> dependencies = new ArrayList<Job>();
+        private boolean finished = false;
+        private int skips = 0;
+
+        protected Job(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Keeps this job from running until the given jobs have finished.
+         */
+        public Job after(Job... jobs) {
+            for (Job job : jobs) {
+                dependencies.add(job);
+            }
+            return this;
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        /** Lower values run first.  May change as the work available to the job changes. */
+        public abstract int getPriority();
+
+        /** Whether the job has work it can do right now. */
+        public abstract boolean isReady();
+
+        /**
+         * Does one bounded unit of work.
+         *
+         * @return false if the job has nothing left to do and should be retired.
+         */
+        public abstract boolean step();
+
+        /**
+         * Called once the scheduler is done with this job, whether it finished or the run
+         * was stopped early.
+         */
+        public void finish() {}
+
+        private boolean canRun() {
+            for (Job job : dependencies) {
+                if (!job.finished) return false;
+            }
+            return isReady();
+        }
+    }
+
+    private final List<Job> jobs = new ArrayList<Job>();
+
+    public void add(Job job) {
+        jobs.add(job);
+    }
+
+    /**
+     * Runs steps until no job is ready or the caller asks us to stop.  Every job still
+     * scheduled at that point is then retired, whether or not it retired itself.
+     */
+    public void run(StopCondition stopCondition) {
+        try {
+            while (!stopCondition.shouldStop()) {
+                Job job = pickNext();
+                if (job == null) return;
+                if (AppConstants.VERBOSE_LOG) Log.d(this.getClass().getName(), "running step of job: " + job.getName());
+                if (!job.step()) {
+                    retire(job);
+                }
+            }
+        } finally {
+            for (Job job : new ArrayList<Job>(jobs)) {
+                retire(job);
+            }
+        }
+    }
+
+    /**
+     * Checks if any job other than the given one is ready and more urgent.  Long-running steps
+     * should call this at their natural boundaries and return early if it is true.
+     */
+    public boolean hasMoreUrgent(Job job) {
+        for (Job other : jobs) {
+            if (other == job) continue;
+            if ((other.getPriority() < job.getPriority()) && other.canRun()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Picks the most urgent ready job, unless another ready job has been passed over too
+     * many times, in which case the longest-starved one wins.
+     */
+    private Job pickNext() {
+        List<Job> ready = new ArrayList<Job>(jobs.size());
+        Job best = null;
+        Job starved = null;
+        for (Job job : jobs) {
+            if (!job.canRun()) continue;
+            ready.add(job);
+            if ((best == null) || (job.getPriority() < best.getPriority())) best = job;
+            if ((job.skips >= AppConstants.SYNC_MAX_JOB_SKIPS) && ((starved == null) || (job.skips > starved.skips))) starved = job;
+        }
+        Job next = best;
+        if ((starved != null) && (starved != best)) {
+            SyncTelemetry.recordEvent("scheduler ran " + starved.getName() + " ahead of " + best.getName() + " after " + starved.skips + " skips");
+            next = starved;
+        }
+        for (Job job : ready) {
+            if (job == next) {
+                job.skips = 0;
+            } else {
+                job.skips++;
+            }
+        }
+        return next;
+    }
+
+    private void retire(Job job) {
+        jobs.remove(job);
+        job.finished = true;
+        try {
+            job.finish();
+        } catch (Exception e) {
+            Log.e(this.getClass().getName(), "error finishing sync job " + job.getName(), e);
+        }
+    }
+
+}
@@ -0,0 +1,381 @@
+package com.newsblur.service;
+
+import android.content.Context;
+import android.os.Build;
+
+import com.newsblur.util.PrefsUtils;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-phase performance instrumentation for the sync service.
+ *
+ * The service opens a {@link Run} for each phase it performs.  Network calls made by the
+ * API layer are attributed to the run attached to the calling thread, so worker threads
+ * doing work on behalf of a phase should {@link #attach} to it.  Completed runs are folded
+ * into rolling histograms per phase and metric that can be inspected via {@link #getReport}
+ * or written out with {@link #dumpToFile}.
+ */
+public class SyncTelemetry {
+
+    public enum Phase {
+        ACTIONS,
+        PENDING_FEEDS,
+        READ_AHEAD,
+        METADATA,
+        CLEANUP,
+        UNREAD_HASHES,
+        UNREADS,
+        ORIGINAL_TEXTS,
+        IMAGES
+    }
+
+    public enum Metric {
+        WALL_MILLIS,
+        NET_MILLIS,
+        DB_MILLIS,
+        LOCK_WAIT_MILLIS,
+        BYTES,
+        ROWS,
+        ERRORS
+    }
+
+    /** How many recent runs of each phase to keep. */
+    private static final int WINDOW_SIZE = 64;
+    /** How many recent notable events to keep. */
+    private static final int MAX_EVENTS = 32;
+    private static final String DUMP_FILE_NAME = "sync_telemetry.txt";
+
+    private static final ThreadLocal<Run> CurrentRun = new ThreadLocal<Run>();
+    /** Running totals of network bytes and errors on each thread, so single requests can be metered. */
+    private static final ThreadLocal<long[]> ThreadNetworkTotals = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
+    private static final Map<Phase,PhaseStats> Stats = new EnumMap<Phase,PhaseStats>(Phase.class);
+    static {
+        for (Phase phase : Phase.values()) {
+            Stats.put(phase, new PhaseStats());
+        }
+    }
+    private static final LinkedList<String> Events = new LinkedList<String>();
+    /** Recent waits for the DB write lock by any thread, sync or not. */
+    private static final RollingHistogram LockWaits = new RollingHistogram(WINDOW_SIZE);
+    private static final AtomicLong LockWaitCount = new AtomicLong();
+
+    private SyncTelemetry() {} // util class - no instances
+
+    /**
+     * Starts timing a phase on the current thread.  Phases may nest, in which case network
+     * activity is attributed to the innermost one.  Must be paired with {@link #end}.
+     */
+    public static Run begin(Phase phase) {
+        Run run = new Run(phase, CurrentRun.get());
+        CurrentRun.set(run);
+        return run;
+    }
+
+    /**
+     * Finishes a phase started with {@link #begin} and records its results.
+     */
+    public static void end(Run run) {
+        run.wallMillis = System.currentTimeMillis() - run.startMillis;
+        if (CurrentRun.get() == run) {
+            if (run.parent == null) {
+                CurrentRun.remove();
+            } else {
+                CurrentRun.set(run.parent);
+            }
+        }
+        Stats.get(run.phase).record(run);
+    }
+
+    /**
+     * Gets the run attached to the current thread, if any.
+     */
+    public static Run current() {
+        return CurrentRun.get();
+    }
+
+    /**
+     * Attributes work on the current (worker) thread to the given run until {@link #detach}
+     * is called.
+     */
+    public static void attach(Run run) {
+        if (run == null) return;
+        CurrentRun.set(run);
+    }
+
+    public static void detach() {
+        CurrentRun.remove();
+    }
+
+    /**
+     * Called by the network layer after every request.  Only counted towards a phase if the
+     * calling thread is doing work for one.
+     */
+    public static void recordNetwork(long millis, long bytes, boolean error) {
+        long[] totals = ThreadNetworkTotals.get();
+        if (bytes > 0L) totals[0] += bytes;
+        if (error) totals[1]++;
+        Run run = CurrentRun.get();
+        if (run == null) return;
+        run.netMillis.addAndGet(millis);
+        if (bytes > 0L) run.bytes.addAndGet(bytes);
+        if (error) run.errors.incrementAndGet();
+    }
+
+    /**
+     * The total bytes received by network calls made on the current thread.  Take the
+     * difference across a call to meter it.
+     */
+    public static long getThreadNetworkBytes() {
+        return ThreadNetworkTotals.get()[0];
+    }
+
+    /**
+     * The total failed network attempts, including retried ones, made on the current thread.
+     */
+    public static long getThreadNetworkErrors() {
+        return ThreadNetworkTotals.get()[1];
+    }
+
+    /**
+     * Called by the DB layer whenever a writer had to wait for the write lock.  Readers never
+     * take it, so any UI thread showing up here was writing.
+     */
+    public static void recordLockWait(long millis) {
+        LockWaitCount.incrementAndGet();
+        LockWaits.add(millis);
+        Run run = CurrentRun.get();
+        if (run != null) run.lockWaitMillis.addAndGet(millis);
+    }
+
+    /**
+     * Notes a notable decision or event, such as a tuning change, for the diagnostics report.
+     */
+    public static void recordEvent(String event) {
+        synchronized (Events) {
+            Events.addLast(System.currentTimeMillis() + " " + event);
+            while (Events.size() > MAX_EVENTS) Events.removeFirst();
+        }
+    }
+
+    /**
+     * Gets a recent percentile value for the given phase and metric, or -1 if the phase has
+     * not yet run.
+     */
+    public static long getPercentile(Phase phase, Metric metric, int percentile) {
+        return Stats.get(phase).histograms.get(metric).getPercentile(percentile);
+    }
+
+    /**
+     * A few lines on recent sync performance, short enough to go in a feedback link: the
+     * median and worst time and the errors of each phase that has run, and the DB lock waits.
+     */
+    public static String getSummary() {
+        StringBuilder s = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            PhaseStats stats = Stats.get(phase);
+            long runs = stats.getRunCount();
+            if (runs < 1) continue;
+            RollingHistogram wall = stats.histograms.get(Metric.WALL_MILLIS);
+            s.append(phase.name()).append(": ").append(runs).append(" runs");
+            s.append(" p50=").append(wall.getPercentile(50)).append("ms");
+            s.append(" max=").append(wall.getPercentile(100)).append("ms");
+            s.append(" errors=").append(stats.histograms.get(Metric.ERRORS).getTotal());
+            s.append("\n");
+        }
+        s.append("DB lock waits: ").append(LockWaitCount.get());
+        if (LockWaitCount.get() > 0) {
+            s.append(" max=").append(LockWaits.getPercentile(100)).append("ms");
+        }
+        s.append("\n");
+        return s.toString();
+    }
+
+    /**
+     * A human-readable summary of recent sync performance, one line per phase and metric.
+     */
+    public static String getReport() {
+        StringBuilder s = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            PhaseStats stats = Stats.get(phase);
+            long runs = stats.getRunCount();
+            s.append(phase.name()).append(": ").append(runs).append(" runs\n");
+            if (runs < 1) continue;
+            for (Metric metric : Metric.values()) {
+                RollingHistogram h = stats.histograms.get(metric);
+                s.append("  ").append(metric.name());
+                s.append(" p50=").append(h.getPercentile(50));
+                s.append(" p90=").append(h.getPercentile(90));
+                s.append(" max=").append(h.getPercentile(100));
+                s.append(" total=").append(h.getTotal());
+                s.append("\n");
+            }
+        }
+        s.append("DB lock waits: ").append(LockWaitCount.get());
+        if (LockWaitCount.get() > 0) {
+            s.append(" p50=").append(LockWaits.getPercentile(50));
+            s.append(" p90=").append(LockWaits.getPercentile(90));
+            s.append(" max=").append(LockWaits.getPercentile(100));
+            s.append(" total=").append(LockWaits.getTotal());
+        }
+        s.append("\n");
+        synchronized (Events) {
+            if (Events.size() > 0) {
+                s.append("recent events:\n");
+                for (String event : Events) {
+                    s.append("  ").append(event).append("\n");
+                }
+            }
+        }
+        return s.toString();
+    }
+
+    /**
+     * Writes the sync service's diagnostics, along with app and device info, to a file in the app's external
+     * files directory (or internal, if unavailable) so it can be collected and compared.
+     *
+     * @return the file written.
+     */
+    public static File dumpToFile(Context context) throws IOException {
+        File dir = context.getExternalFilesDir(null);
+        if (dir == null) dir = context.getFilesDir();
+        File f = new File(dir, DUMP_FILE_NAME);
+        FileWriter w = new FileWriter(f);
+        try {
+            w.write("app version: " + PrefsUtils.getVersion(context) + "\n");
+            w.write("android version: " + Build.VERSION.RELEASE + "\n");
+            w.write("device: " + Build.MANUFACTURER + " " + Build.MODEL + "\n");
+            w.write("time: " + System.currentTimeMillis() + "\n");
+            w.write(NBSyncService.getDiagnostics());
+        } finally {
+            w.close();
+        }
+        return f;
+    }
+
+    /**
+     * The measurements for one execution of one phase.  Counters may be updated from any
+     * thread attached to the run.
+     */
+    public static class Run {
+        private final Phase phase;
+        private final Run parent;
+        private final long startMillis;
+        private long wallMillis;
+        private final AtomicLong netMillis = new AtomicLong();
+        private final AtomicLong dbMillis = new AtomicLong();
+        private final AtomicLong lockWaitMillis = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+
+        private Run(Phase phase, Run parent) {
+            this.phase = phase;
+            this.parent = parent;
+            this.startMillis = System.currentTimeMillis();
+        }
+
+        public Phase getPhase() {
+            return phase;
+        }
+
+        /**
+         * Records time spent on a DB operation that started at the given time and ended now.
+         */
+        public void addDbTime(long startMillis) {
+            dbMillis.addAndGet(System.currentTimeMillis() - startMillis);
+        }
+
+        public void addRows(long count) {
+            rows.addAndGet(count);
+        }
+
+        public void addError() {
+            errors.incrementAndGet();
+        }
+
+        private long get(Metric metric) {
+            switch (metric) {
+                case WALL_MILLIS: return wallMillis;
+                case NET_MILLIS: return netMillis.get();
+                case DB_MILLIS: return dbMillis.get();
+                case LOCK_WAIT_MILLIS: return lockWaitMillis.get();
+                case BYTES: return bytes.get();
+                case ROWS: return rows.get();
+                case ERRORS: return errors.get();
+                default: return 0L;
+            }
+        }
+    }
+
+    private static class PhaseStats {
+        private final Map<Metric,RollingHistogram> histograms = new EnumMap<Metric,RollingHistogram>(Metric.class);
+        private final AtomicLong runCount = new AtomicLong();
+
+        PhaseStats() {
+            for (Metric metric : Metric.values()) {
+                histograms.put(metric, new RollingHistogram(WINDOW_SIZE));
+            }
+        }
+
+        void record(Run run) {
+            runCount.incrementAndGet();
+            for (Metric metric : Metric.values()) {
+                histograms.get(metric).add(run.get(metric));
+            }
+        }
+
+        long getRunCount() {
+            return runCount.get();
+        }
+    }
+
+    /**
+     * A fixed-size window of the most recent samples of a value.
+     */
+    private static class RollingHistogram {
+        private final long[] samples;
+        private int next = 0;
+        private int count = 0;
+        private long total = 0L;
+
+        RollingHistogram(int size) {
+            samples = new long[size];
+        }
+
+        synchronized void add(long value) {
+            samples[next] = value;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) count++;
+            total += value;
+        }
+
+        synchronized long getPercentile(int percentile) {
+            if (count < 1) return -1L;
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil((percentile / 100.0) * count) - 1;
+            if (index < 0) index = 0;
+            if (index >= count) index = count - 1;
+            return sorted[index];
+        }
+
+        /** The sum of all samples ever recorded, not just those in the window. */
+        synchronized long getTotal() {
+            return total;
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.newsblur.service;
+
+import com.newsblur.database.BlurDatabaseHelper;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Compares the API's list of unread stories with the stories we have locally, working out
+ * which stories need to be fetched and which local stories are no longer unread.
+ *
+ * Local state is loaded up front so that reconciliation is a single pass over the API's
+ * list with constant-time lookups, regardless of how many stories or feeds are involved.
+ */
+public class UnreadHashReconciler {
+
+    private final Map<String,Boolean> localReadStates;
+    private final List<String> hashesToFetch = new ArrayList<String>();
+    private final List<String> hashesToMarkRead = new ArrayList<String>();
+
+    /**
+     * @param localReadStates the hash of every story we have locally, mapped to its read state.
+     */
+    public UnreadHashReconciler(Map<String,Boolean> localReadStates) {
+        this.localReadStates = localReadStates;
+    }
+
+    /**
+     * Creates a reconciler for the current contents of the DB, loaded with one query.
+     */
+    public static UnreadHashReconciler fromDatabase(BlurDatabaseHelper dbHelper) {
+        return new UnreadHashReconciler(dbHelper.getStoryReadStates());
+    }
+
+    /**
+     * @param serverUnreads unread story hashes from the API, keyed by feed ID.
+     * @param activeFeedIds the feeds the user actually has in a folder. Unreads for any other
+     *        feeds are ignored.
+     */
+    public void reconcile(Map<String,String[]> serverUnreads, Set<String> activeFeedIds) {
+        hashesToFetch.clear();
+        hashesToMarkRead.clear();
+
+        Set<String> stillUnread = new HashSet<String>();
+        for (Entry<String,String[]> entry : serverUnreads.entrySet()) {
+            // ignore unreads from orphaned feeds
+            if (!activeFeedIds.contains(entry.getKey())) continue;
+            for (String hash : entry.getValue()) {
+                // only fetch the reported unreads if we don't already have them
+                if (stillUnread.add(hash) && !localReadStates.containsKey(hash)) {
+                    hashesToFetch.add(hash);
+                }
+            }
+        }
+
+        // any story we thought was unread that the API didn't list has been read elsewhere
+        for (Entry<String,Boolean> entry : localReadStates.entrySet()) {
+            if (!entry.getValue() && !stillUnread.contains(entry.getKey())) {
+                hashesToMarkRead.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Unread stories we do not have locally, in the order the API listed them.
+     */
+    public List<String> getHashesToFetch() {
+        return hashesToFetch;
+    }
+
+    /**
+     * Local stories that are marked unread but that the API no longer lists as unread.
+     */
+    public List<String> getHashesToMarkRead() {
+        return hashesToMarkRead;
+    }
+
+}
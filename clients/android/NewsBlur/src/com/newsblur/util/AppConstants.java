@@ -47,15 +47,79 @@ public class AppConstants {
     // when reading stories, how many stories worth of buffer to keep loaded ahead of the user
     public static final int READING_STORY_PRELOAD = 5;
 
+    // how many pages of stories to fetch beyond what the UI has asked for, for the feed or folder being viewed
+    public static final int READ_AHEAD_PAGES = 2;
+
     // max old stories to keep in the DB per feed before fetching new unreads
     public static final int MAX_READ_STORIES_STORED = 500;
 
-    // how many unread stories to fetch via hash at a time
+    // how much space the DB may take up before the oldest read stories of any feed are removed
+    public static final long MAX_STORAGE_MB = 100L;
+
+    // how much space original story texts may take up before those least recently read are removed
+    public static final long MAX_STORY_TEXT_MB = 20L;
+
+    // how many feeds' (or, when over the storage limit, stories') worth of old stories to remove
+    // before letting other DB users have a turn during cleanup
+    public static final int CLEANUP_FEED_CHUNK_SIZE = 50;
+    public static final int CLEANUP_STORY_CHUNK_SIZE = 500;
+
+    // how many story hashes to name in a single DB statement, well under SQLite's limit of 999 arguments
+    public static final int DB_HASH_CHUNK_SIZE = 500;
+
+    // how many rows to write per transaction when storing API results in bulk
+    public static final int DB_WRITE_BATCH_SIZE = 250;
+
+    // how many unread stories to fetch via hash at a time, to start with. the batch size then
+    // adapts to network conditions, within the given bounds. the API ignores any hashes past
+    // the first 100 in a request.
     public static final int UNREAD_FETCH_BATCH_SIZE = 50;
+    public static final int UNREAD_FETCH_MIN_BATCH_SIZE = 5;
+    public static final int UNREAD_FETCH_MAX_BATCH_SIZE = 100;
+
+    // how long we would like one unread batch to take, and how big its response may be
+    public static final long UNREAD_FETCH_TARGET_MILLIS = 4000L;
+    public static final long UNREAD_FETCH_MAX_BATCH_BYTES = 2L * 1024L * 1024L;
+
+    // how many unread batches may fail in a row before we give up until the next sync
+    public static final int UNREAD_FETCH_MAX_FAILURES = 3;
+
+    // how many threads to use for fetching and decoding unread batches
+    public static final int UNREAD_FETCH_THREADS = 3;
+
+    // how many unread batches may be fetched or decoded but not yet written to the DB
+    public static final int UNREAD_FETCH_MAX_IN_FLIGHT = 4;
+
+    // how often to check the incrementally kept unread counts against a full recount
+    public static final long UNREAD_COUNT_CHECK_MILLIS = 60L * 60L * 1000L;
+
+    // how many stories from before the search index existed to add to it per transaction
+    public static final int SEARCH_INDEX_CHUNK_SIZE = 500;
+
+    // how many stories a story list loads at a time from the DB, as the view scrolls through it
+    public static final int STORY_WINDOW_PAGE_SIZE = 100;
+
+    // the deflate level for stored story bodies and text.  see StoryCodecTest for how the levels
+    // compare; past 6, stories get barely smaller but much slower to write.
+    public static final int STORY_COMPRESSION_LEVEL = 6;
 
     // how many images to prefetch before updating the countdown UI
     public static final int IMAGE_PREFETCH_BATCH_SIZE = 10;
 
+    // how many images to fetch at once, overall and from any one host
+    public static final int IMAGE_PREFETCH_THREADS = 4;
+    public static final int IMAGE_PREFETCH_PER_HOST = 2;
+
+    // how many original texts to fetch before storing them and updating the countdown UI
+    public static final int ORIGINAL_TEXT_BATCH_SIZE = 20;
+
+    // how many times to try fetching an original text before giving up on it
+    public static final int ORIGINAL_TEXT_MAX_ATTEMPTS = 3;
+
+    // how many times in a row a ready sync job may be passed over for more urgent work before
+    // it is run anyway
+    public static final int SYNC_MAX_JOB_SKIPS = 4;
+
     // should the feedback link be enabled (read: is this a beta?)
     public static final boolean ENABLE_FEEDBACK = true;
 
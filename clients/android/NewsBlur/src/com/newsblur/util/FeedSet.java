@@ -34,6 +34,9 @@ public class FeedSet implements Serializable {
 
     private String folderName;
 
+    /** If set, only stories matching this full-text search, best matches first. */
+    private String searchQuery;
+
     /**
      * Construct a new set of feeds. Only one of the arguments may be non-null or true. Specify an empty
      * set to request all of a given type.
@@ -183,6 +186,18 @@ public class FeedSet implements Serializable {
         return this.folderName;
     }
 
+    /**
+     * Limits this set to stories we have locally that match the given search.  Searches are
+     * never sent to the server.
+     */
+    public void setSearchQuery(String searchQuery) {
+        this.searchQuery = searchQuery;
+    }
+
+    public String getSearchQuery() {
+        return this.searchQuery;
+    }
+
     private static final String COM_SER_NUL = "NUL";
 
     public String toCompactSerial() {
@@ -242,6 +257,7 @@ public class FeedSet implements Serializable {
     public boolean equals(Object o) {
         if ( o instanceof FeedSet) {
             FeedSet s = (FeedSet) o;
+            if (!TextUtils.equals(searchQuery, s.searchQuery)) return false;
             if ( (feeds != null) && (s.feeds != null) && TextUtils.equals(folderName, s.folderName) && s.feeds.equals(feeds) ) return true;
             if ( (socialFeeds != null) && (s.socialFeeds != null) && s.socialFeeds.equals(socialFeeds) ) return true;
             if ( isAllNormal && s.isAllNormal ) return true;
@@ -253,6 +269,11 @@ public class FeedSet implements Serializable {
 
     @Override
     public int hashCode() {
+        if (searchQuery != null) return 31 * hashCodeWithoutSearch() + searchQuery.hashCode();
+        return hashCodeWithoutSearch();
+    }
+
+    private int hashCodeWithoutSearch() {
         if (isAllNormal) return 11;
         if (isAllSocial) return 12;
         if (isAllSaved) return 13;
@@ -9,11 +9,9 @@ import java.util.Map;
 import java.util.Set;
 
 import android.content.ContentProviderOperation;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
-import android.net.Uri;
 import android.os.AsyncTask;
 import android.text.Html;
 import android.text.TextUtils;
@@ -24,7 +22,6 @@ import com.newsblur.R;
 import com.newsblur.activity.NbActivity;
 import com.newsblur.database.BlurDatabaseHelper;
 import com.newsblur.database.DatabaseConstants;
-import com.newsblur.database.FeedProvider;
 import com.newsblur.domain.Classifier;
 import com.newsblur.domain.Feed;
 import com.newsblur.domain.SocialFeed;
@@ -155,7 +152,14 @@ public class FeedUtils {
         }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
-    public static void updateClassifier(final String feedId, final String key, final Classifier classifier, final int classifierType, final int classifierAction, final Context context) {
+    /**
+     * Gets the classifiers of a feed, usually from memory.  The result must not be changed.
+     */
+    public static Classifier getClassifier(String feedId) {
+        return dbHelper.getClassifierForFeed(feedId);
+    }
+
+    public static void updateClassifier(final String feedId, final String key, final int classifierType, final int classifierAction, final Context context) {
 
         // first, update the server
         new AsyncTask<Void, Void, NewsBlurResponse>() {
@@ -172,15 +176,12 @@ public class FeedUtils {
             }
         }.execute();
 
-        // next, update the local DB
+        // next, update the local DB, which writes just the row that changed.  this is done before
+        // returning so that the UI can re-read the classifiers and find the change.
+        Classifier classifier = dbHelper.getClassifierForFeed(feedId).copy();
         classifier.getMapForType(classifierType).put(key, classifierAction);
-        Uri classifierUri = FeedProvider.CLASSIFIER_URI.buildUpon().appendPath(feedId).build();
         try {
-            // TODO: for feeds with many classifiers, this could be much faster by targeting just the row that changed
-			context.getContentResolver().delete(classifierUri, null, null);
-			for (ContentValues classifierValues : classifier.getContentValues()) {
-                context.getContentResolver().insert(classifierUri, classifierValues);
-            }
+            dbHelper.putClassifier(feedId, classifier);
         } catch (Exception e) {
             Log.w(FeedUtils.class.getName(), "Could not update classifier in local storage.", e);
         }
@@ -204,6 +205,10 @@ public class FeedUtils {
         return FeedSet.folder(folderName, feedIds);
     }
 
+    public static String getStoryContent(String hash) {
+        return dbHelper.getStoryContent(hash);
+    }
+
     public static String getStoryText(String hash) {
         return dbHelper.getStoryText(hash);
     }
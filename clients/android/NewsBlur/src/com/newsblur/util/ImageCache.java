@@ -33,26 +33,36 @@ public class ImageCache {
         postfixPattern = Pattern.compile("(\\.[a-zA-Z0-9]+)[^\\.]*$");
     }
 
-    public void cacheImage(String url) {
+    /**
+     * Fetches and stores the specified image if it is not already cached.  Returns the number
+     * of bytes fetched, zero if nothing needed doing, or -1 if the fetch failed.
+     */
+    public long cacheImage(String url) {
+        File f = null;
         try {
             // don't be evil and download images if the user is low on storage
             if (cacheDir.getFreeSpace() < MIN_FREE_SPACE_BYTES) {
                 Log.w(this.getClass().getName(), "device low on storage, not caching images");
-                return;
+                return 0L;
             }
             
             String fileName = getFileName(url);
             if (fileName == null) {
                 Log.w(this.getClass().getName(), "failed to cache image: no file extension");
-                return;
+                return 0L;
             }
 
-            File f = new File(cacheDir, fileName);
-            if (f.exists()) return;
+            f = new File(cacheDir, fileName);
+            if (f.exists()) return 0L;
             URL u = new URL(url);
-            NetworkUtils.loadURL(u, new FileOutputStream(f));
+            long size = NetworkUtils.loadURL(u, new FileOutputStream(f));
+            // don't leave truncated files behind that would later look like cache hits
+            if (size < 0L) f.delete();
+            return size;
         } catch (IOException e) {
             // a huge number of things could go wrong fetching and storing an image. don't spam logs with them
+            if (f != null) f.delete();
+            return -1L;
         }
     }
 
@@ -4,6 +4,8 @@ import android.content.Context;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 
+import com.newsblur.service.SyncTelemetry;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -18,7 +20,13 @@ public class NetworkUtils {
 		return (netInfo != null && netInfo.isConnected());
 	}
 
-    public static void loadURL(URL url, OutputStream outputStream) throws IOException {
+    /**
+     * Copies the contents of a URL to the given stream, which will be closed.  Returns the
+     * number of bytes copied, or -1 if the fetch failed.
+     */
+    public static long loadURL(URL url, OutputStream outputStream) throws IOException {
+        long total = 0L;
+        long startTime = System.currentTimeMillis();
         HttpURLConnection conn = null;
         try {
             conn = (HttpURLConnection)url.openConnection();
@@ -30,14 +38,17 @@ public class NetworkUtils {
             int read;
             while ((read = inputStream.read(b)) != -1) {
                 outputStream.write(b, 0, read);
+                total += read;
             }
         } catch (Throwable t) {
             // a huge number of things could go wrong fetching and storing an image. don't spam logs with them
+            total = -1L;
         } finally {
             closeQuietly(conn);
             outputStream.close();
+            SyncTelemetry.recordNetwork(System.currentTimeMillis() - startTime, total, (total < 0L));
         }
-
+        return total;
     }
 
     public static void closeQuietly(HttpURLConnection conn) {
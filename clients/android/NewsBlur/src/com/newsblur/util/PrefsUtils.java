@@ -4,8 +4,10 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.net.URLEncoder;
 import java.util.Date;
 
 import android.app.Activity;
@@ -87,6 +89,11 @@ public class PrefsUtils {
         s.append("%0Adevice: ").append(Build.MANUFACTURER + "+" + Build.MODEL + "+(" + Build.BOARD + ")");
         s.append("%0Amemory: ").append(NBSyncService.isMemoryLow() ? "low" : "normal");
         s.append("%0Aspeed: ").append(NBSyncService.getSpeedInfo());
+        try {
+            s.append("%0Adiagnostics:%0A").append(URLEncoder.encode(NBSyncService.getDiagnosticsSummary(), "UTF-8"));
+        } catch (UnsupportedEncodingException uee) {
+            Log.w(PrefsUtils.class.getName(), "could not encode sync diagnostics", uee);
+        }
         return s.toString();
     }
 
@@ -6,12 +6,19 @@ import android.text.format.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.regex.Pattern;
 
 /**
  * Created by mark on 04/02/2014.
  */
 public class StoryUtils {
 
+    // markup that holds no readable text at all
+    private static final Pattern HtmlIgnored = Pattern.compile("(?is)<(script|style)[^>]*>.*?</\\1>|<!--.*?-->");
+    private static final Pattern HtmlTags = Pattern.compile("<[^>]*>");
+    // any entities left after the common ones are decoded
+    private static final Pattern HtmlEntities = Pattern.compile("&#?\\w+;");
+
     private static final ThreadLocal<SimpleDateFormat> todayLongFormat = new ThreadLocal<SimpleDateFormat>() {
         @Override
         protected SimpleDateFormat initialValue() {
@@ -143,4 +150,17 @@ public class StoryUtils {
             return shortDateFormat.get().format(storyDate) +", " + timeFormat.format(storyDate);
         }
     }
+
+    /**
+     * Reduces story HTML to plain words for the search index.  This is much cruder than
+     * Html.fromHtml(), which would be too slow to run over every story we store.
+     */
+    public static String getSearchText(String html) {
+        if (html == null) return null;
+        String text = HtmlIgnored.matcher(html).replaceAll(" ");
+        text = HtmlTags.matcher(text).replaceAll(" ");
+        text = text.replace("&nbsp;", " ").replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&#39;", "'").replace("&amp;", "&");
+        return HtmlEntities.matcher(text).replaceAll(" ");
+    }
+
 }
@@ -103,7 +103,7 @@ public class ViewUtils {
 		v.setOnClickListener(new OnClickListener() {
 			@Override
 			public void onClick(View view) {
-				ClassifierDialogFragment classifierFragment = ClassifierDialogFragment.newInstance(callback, feedId, classifier, tag, Classifier.TAG);
+				ClassifierDialogFragment classifierFragment = ClassifierDialogFragment.newInstance(callback, feedId, tag, Classifier.TAG);
 				classifierFragment.show(fragmentManager, "dialog");
 			}
 		});
@@ -0,0 +1,108 @@
+package com.newsblur.test.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import com.newsblur.database.BlurDatabase;
+import com.newsblur.database.BlurDatabaseHelper;
+import com.newsblur.database.DatabaseConstants;
+import com.newsblur.domain.Comment;
+import com.newsblur.domain.Story;
+import com.newsblur.network.domain.StoriesResponse;
+
+/**
+ * Gives each test a fresh, empty copy of the app DB and ways to fill it.
+ */
+public abstract class DatabaseTestCase extends AndroidTestCase {
+
+	/**
+	 * Whether to run the timing runs over tens of thousands of stories.  They take minutes on
+	 * a slow device and only log what they measure, so they are kept out of the usual suite.
+	 */
+	protected static final boolean RUN_BENCHMARKS = false;
+
+	protected static final int FEED_COUNT = 50;
+	private static final int STORIES_PER_RESPONSE = 1000;
+
+	protected RenamingDelegatingContext context;
+	protected BlurDatabase blurDatabase;
+	protected SQLiteDatabase db;
+	protected BlurDatabaseHelper dbHelper;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		context = new RenamingDelegatingContext(getContext(), "test_");
+		context.deleteDatabase(BlurDatabase.DB_NAME);
+		blurDatabase = new BlurDatabase(context);
+		db = blurDatabase.getWritableDatabase();
+		dbHelper = new BlurDatabaseHelper(context, blurDatabase);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		dbHelper.close();
+		blurDatabase.close();
+		super.tearDown();
+	}
+
+	/**
+	 * Adds feeds 0 to FEED_COUNT - 1, for the queries that only show stories along with
+	 * their feeds.
+	 */
+	protected void insertFeeds() {
+		for (int i = 0; i < FEED_COUNT; i++) {
+			ContentValues values = new ContentValues();
+			values.put(DatabaseConstants.FEED_ID, i);
+			values.put(DatabaseConstants.FEED_TITLE, "feed " + i);
+			db.insert(DatabaseConstants.FEED_TABLE, null, values);
+		}
+	}
+
+	/**
+	 * Stores stories 0 to count - 1, as made by {@link #makeStory}, through the normal path
+	 * for API responses.
+	 */
+	protected void insertStories(int count) {
+		for (int i = 0; i < count; i += STORIES_PER_RESPONSE) {
+			int size = Math.min(STORIES_PER_RESPONSE, count - i);
+			StoriesResponse response = new StoriesResponse();
+			response.stories = new Story[size];
+			for (int j = 0; j < size; j++) {
+				response.stories[j] = makeStory(i + j);
+			}
+			dbHelper.insertStories(response);
+		}
+	}
+
+	/**
+	 * Story i is in feed i % FEED_COUNT, with hash "feed:i" and timestamp i.  Tests that need
+	 * more in their stories override this and fill in the rest.
+	 */
+	protected Story makeStory(int i) {
+		Story story = new Story();
+		story.feedId = Integer.toString(i % FEED_COUNT);
+		story.id = story.feedId + ":" + Integer.toString(i);
+		story.storyHash = story.id;
+		story.timestamp = i;
+		story.title = "story " + i;
+		story.tags = new String[]{};
+		story.content = "<p>story " + i + "</p>";
+		story.sharedUserIds = new String[]{};
+		story.publicComments = new Comment[]{};
+		story.friendsComments = new Comment[]{};
+		return story;
+	}
+
+	protected long count(String q) {
+		Cursor c = db.rawQuery(q, null);
+		c.moveToFirst();
+		long result = c.getLong(0);
+		c.close();
+		return result;
+	}
+
+}
@@ -0,0 +1,212 @@
+package com.newsblur.test.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.newsblur.database.DatabaseConstants;
+import com.newsblur.domain.Story;
+import com.newsblur.network.domain.StoriesResponse;
+
+/**
+ * Checks that bulk mark-read leaves the same stories read as the per-story path it replaced,
+ * with unread counts kept in step, and logs how long each takes.
+ */
+public class MarkStoriesReadTest extends DatabaseTestCase {
+
+	private static final String TAG = "MarkStoriesReadTest";
+
+	public void testMarkStoryHashesRead() {
+		List<String> hashes = insertUnreadStories(100);
+		// the older half, which leaves one unread story in every feed
+		List<String> toMark = new ArrayList<String>(hashes.subList(0, 50));
+		// a hash we don't have should be ignored
+		toMark.add("999:0");
+
+		dbHelper.markStoryHashesRead(toMark);
+
+		assertEquals(50, countReadStories());
+
+		Cursor c = db.rawQuery("SELECT SUM(" + DatabaseConstants.FEED_NEUTRAL_COUNT + ") FROM " + DatabaseConstants.FEED_TABLE, null);
+		c.moveToFirst();
+		assertEquals(50, c.getInt(0));
+		c.close();
+	}
+
+	public void testRepairUnreadCounts() {
+		insertUnreadStories(100);
+		assertEquals(0, dbHelper.repairUnreadCounts());
+
+		ContentValues values = new ContentValues();
+		values.put(DatabaseConstants.FEED_NEUTRAL_COUNT, 7);
+		db.update(DatabaseConstants.FEED_TABLE, values, DatabaseConstants.FEED_ID + " = 3", null);
+		assertEquals(1, dbHelper.repairUnreadCounts());
+
+		Cursor c = db.rawQuery("SELECT " + DatabaseConstants.FEED_NEUTRAL_COUNT + " FROM " + DatabaseConstants.FEED_TABLE + " WHERE " + DatabaseConstants.FEED_ID + " = 3", null);
+		c.moveToFirst();
+		assertEquals(2, c.getInt(0));
+		c.close();
+	}
+
+	public void testSocialCountsWithoutFeed() {
+		insertUnreadStories(100);
+		// stories can be shared from feeds we don't have
+		db.delete(DatabaseConstants.FEED_TABLE, DatabaseConstants.FEED_ID + " = 3", null);
+		ContentValues values = new ContentValues();
+		values.put(DatabaseConstants.SOCIAL_FEED_ID, 7);
+		values.put(DatabaseConstants.SOCIAL_FEED_NEUTRAL_COUNT, 2);
+		values.put(DatabaseConstants.SOCIAL_FEED_POSITIVE_COUNT, 0);
+		values.put(DatabaseConstants.SOCIAL_FEED_NEGATIVE_COUNT, 0);
+		db.insert(DatabaseConstants.SOCIALFEED_TABLE, null, values);
+		for (String hash : new String[]{"3:3", "3:35"}) {
+			values = new ContentValues();
+			values.put(DatabaseConstants.SOCIALFEED_STORY_USER_ID, 7);
+			values.put(DatabaseConstants.SOCIALFEED_STORY_STORYID, hash);
+			db.insert(DatabaseConstants.SOCIALFEED_STORY_MAP_TABLE, null, values);
+		}
+
+		dbHelper.setStoryReadState("3:3", true);
+
+		// the trigger and the recount must agree on what counts
+		Cursor c = db.rawQuery("SELECT " + DatabaseConstants.SOCIAL_FEED_NEUTRAL_COUNT + " FROM " + DatabaseConstants.SOCIALFEED_TABLE, null);
+		c.moveToFirst();
+		assertEquals(1, c.getInt(0));
+		c.close();
+		assertEquals(0, dbHelper.repairUnreadCounts());
+	}
+
+	public void testReconcileKeepsServerCounts() {
+		List<String> hashes = insertUnreadStories(100);
+		ContentValues values = new ContentValues();
+		values.put(DatabaseConstants.SOCIAL_FEED_ID, 7);
+		values.put(DatabaseConstants.SOCIAL_FEED_NEUTRAL_COUNT, 1);
+		values.put(DatabaseConstants.SOCIAL_FEED_POSITIVE_COUNT, 0);
+		values.put(DatabaseConstants.SOCIAL_FEED_NEGATIVE_COUNT, 0);
+		db.insert(DatabaseConstants.SOCIALFEED_TABLE, null, values);
+		for (String hash : new String[]{"3:3", "3:35"}) {
+			values = new ContentValues();
+			values.put(DatabaseConstants.SOCIALFEED_STORY_USER_ID, 7);
+			values.put(DatabaseConstants.SOCIALFEED_STORY_STORYID, hash);
+			db.insert(DatabaseConstants.SOCIALFEED_STORY_MAP_TABLE, null, values);
+		}
+		// the older half was read on another client, and the counts from the server say so
+		values = new ContentValues();
+		values.put(DatabaseConstants.FEED_NEUTRAL_COUNT, 1);
+		db.update(DatabaseConstants.FEED_TABLE, values, null, null);
+
+		dbHelper.markStoryHashesRead(hashes.subList(0, 50));
+
+		assertEquals(50, count("SELECT SUM(" + DatabaseConstants.FEED_NEUTRAL_COUNT + ") FROM " + DatabaseConstants.FEED_TABLE));
+		assertEquals(1, count("SELECT " + DatabaseConstants.SOCIAL_FEED_NEUTRAL_COUNT + " FROM " + DatabaseConstants.SOCIALFEED_TABLE));
+		assertEquals(0, dbHelper.repairUnreadCounts());
+	}
+
+	public void testRefetchedStoryCounts() {
+		insertUnreadStories(100);
+
+		// read elsewhere, and fetched again
+		Story story = makeStory(3);
+		story.read = true;
+		StoriesResponse response = new StoriesResponse();
+		response.stories = new Story[]{story};
+		dbHelper.insertStories(response);
+
+		assertEquals(1, count("SELECT " + DatabaseConstants.FEED_NEUTRAL_COUNT + " FROM " + DatabaseConstants.FEED_TABLE + " WHERE " + DatabaseConstants.FEED_ID + " = 3"));
+		assertEquals(0, dbHelper.repairUnreadCounts());
+	}
+
+	public void testBenchmark1k() {
+		benchmark(1000);
+	}
+
+	public void testBenchmark10k() {
+		if (!RUN_BENCHMARKS) return;
+		benchmark(10000);
+	}
+
+	/**
+	 * Marks the given number of unread stories read, first one story per call and then
+	 * in bulk, starting from the same DB each time.  The timings are only logged, as they
+	 * vary too much from device to device to assert on; each way must leave every story read
+	 * and the unread counts right.
+	 */
+	private void benchmark(int hashCount) {
+		List<String> hashes = insertUnreadStories(hashCount);
+		long start = System.nanoTime();
+		for (String hash : hashes) {
+			dbHelper.setStoryReadState(hash, true);
+		}
+		long perStory = System.nanoTime() - start;
+		assertEquals(hashCount, countReadStories());
+		assertEquals(0, dbHelper.repairUnreadCounts());
+
+		resetStories();
+		assertEquals(0, countReadStories());
+		start = System.nanoTime();
+		dbHelper.markStoryHashesRead(hashes);
+		long bulk = System.nanoTime() - start;
+		assertEquals(hashCount, countReadStories());
+		assertEquals(0, dbHelper.repairUnreadCounts());
+
+		Log.i(TAG, "marked " + hashCount + " stories read: " + (perStory / 1000000L) + "ms one at a time, " + (bulk / 1000000L) + "ms in bulk");
+	}
+
+	/**
+	 * Stores count unread, neutral stories straight into the stories table, with feed rows whose
+	 * unread counts match them, and returns their hashes oldest first.
+	 */
+	private List<String> insertUnreadStories(int count) {
+		List<String> hashes = new ArrayList<String>(count);
+		db.beginTransaction();
+		try {
+			for (int feed = 0; feed < FEED_COUNT; feed++) {
+				ContentValues values = new ContentValues();
+				values.put(DatabaseConstants.FEED_ID, feed);
+				// every story is neutral and unread, and the counts should start out matching
+				values.put(DatabaseConstants.FEED_NEUTRAL_COUNT, (count / FEED_COUNT) + ((feed < (count % FEED_COUNT)) ? 1 : 0));
+				values.put(DatabaseConstants.FEED_POSITIVE_COUNT, 0);
+				values.put(DatabaseConstants.FEED_NEGATIVE_COUNT, 0);
+				db.insert(DatabaseConstants.FEED_TABLE, null, values);
+			}
+			for (int i = 0; i < count; i++) {
+				int feed = i % FEED_COUNT;
+				String hash = feed + ":" + Integer.toHexString(i);
+				ContentValues values = new ContentValues();
+				values.put(DatabaseConstants.STORY_ID, hash);
+				values.put(DatabaseConstants.STORY_HASH, hash);
+				values.put(DatabaseConstants.STORY_FEED_ID, feed);
+				values.put(DatabaseConstants.STORY_TIMESTAMP, i);
+				values.put(DatabaseConstants.STORY_READ, 0);
+				values.put(DatabaseConstants.STORY_READ_THIS_SESSION, 0);
+				values.put(DatabaseConstants.STORY_STARRED, 0);
+				values.put(DatabaseConstants.STORY_INTELLIGENCE_AUTHORS, 0);
+				values.put(DatabaseConstants.STORY_INTELLIGENCE_FEED, 0);
+				values.put(DatabaseConstants.STORY_INTELLIGENCE_TAGS, 0);
+				values.put(DatabaseConstants.STORY_INTELLIGENCE_TITLE, 0);
+				values.put(DatabaseConstants.STORY_SCORE, 0);
+				values.put(DatabaseConstants.STORY_FRIEND_USER_IDS, "");
+				db.insert(DatabaseConstants.STORY_TABLE, null, values);
+				hashes.add(hash);
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		return hashes;
+	}
+
+	private long countReadStories() {
+		return count("SELECT COUNT(*) FROM " + DatabaseConstants.STORY_TABLE + " WHERE " + DatabaseConstants.STORY_READ + " = 1");
+	}
+
+	private void resetStories() {
+		ContentValues values = new ContentValues();
+		values.put(DatabaseConstants.STORY_READ, 0);
+		values.put(DatabaseConstants.STORY_READ_THIS_SESSION, 0);
+		db.update(DatabaseConstants.STORY_TABLE, values, null, null);
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.newsblur.test.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import com.newsblur.database.DatabaseConstants;
+import com.newsblur.domain.Story;
+import com.newsblur.util.ReadFilter;
+import com.newsblur.util.StateFilter;
+import com.newsblur.util.StoryOrder;
+
+/**
+ * Checks that the social river holds each shared story once and in step with the stories table,
+ * and times reading it against grouping the share mappings as the river used to.
+ */
+public class SocialRiverTest extends DatabaseTestCase {
+
+	private static final String TAG = "SocialRiverTest";
+
+	private static final int SHARERS_PER_STORY = 2;
+	private static final int PAGE_SIZE = 100;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		// stories only show up in the river along with their feeds
+		insertFeeds();
+	}
+
+	public void testDeduplicated() {
+		insertStories(100);
+		// and again, as stories are when they turn up in another list
+		insertStories(100);
+
+		assertEquals(50 * SHARERS_PER_STORY, count("SELECT COUNT(*) FROM " + DatabaseConstants.SOCIALFEED_STORY_MAP_TABLE));
+		assertEquals(50, count("SELECT COUNT(*) FROM " + DatabaseConstants.SOCIAL_RIVER_TABLE));
+		assertEquals(readAll(getGroupedRiverQuery()), readAll(getRiverQuery(false)));
+	}
+
+	public void testCleanup() {
+		insertStories(10);
+		db.delete(DatabaseConstants.STORY_TABLE, DatabaseConstants.STORY_ID + " = ?", new String[]{"0:0"});
+		assertEquals(4, count("SELECT COUNT(*) FROM " + DatabaseConstants.SOCIAL_RIVER_TABLE));
+
+		dbHelper.cleanupAllStories();
+		assertEquals(0, count("SELECT COUNT(*) FROM " + DatabaseConstants.SOCIAL_RIVER_TABLE));
+	}
+
+	/**
+	 * Times the first page of the river, and reading it all page by page, both ways over 20k
+	 * share mappings.
+	 */
+	public void testBenchmark20k() {
+		if (!RUN_BENCHMARKS) return;
+		insertStories(20000);
+		assertEquals(20000, count("SELECT COUNT(*) FROM " + DatabaseConstants.SOCIALFEED_STORY_MAP_TABLE));
+
+		long start = System.nanoTime();
+		List<String> grouped = readAll(getGroupedRiverQuery() + " LIMIT " + PAGE_SIZE);
+		long groupedPage = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		List<String> river = readAll(getRiverQuery(false) + " LIMIT " + PAGE_SIZE);
+		long riverPage = System.nanoTime() - start;
+		assertEquals(grouped, river);
+
+		start = System.nanoTime();
+		List<String> allGrouped = readAll(getGroupedRiverQuery());
+		long groupedAll = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		List<String> allRiver = readRiverByPages();
+		long riverAll = System.nanoTime() - start;
+		assertEquals(allGrouped, allRiver);
+
+		Log.i(TAG, "first page of " + allRiver.size() + " shared stories: " + (groupedPage / 1000000L) + "ms grouped, " + (riverPage / 1000000L) + "ms from the river");
+		Log.i(TAG, "whole river: " + (groupedAll / 1000000L) + "ms grouped, " + (riverAll / 1000000L) + "ms from the river a page at a time");
+	}
+
+	/** The all-shared-stories query as it was before the river, grouping the share mappings. */
+	private static String getGroupedRiverQuery() {
+		StringBuilder q = new StringBuilder(DatabaseConstants.MULTIFEED_STORIES_QUERY_BASE);
+		q.append(" FROM " + DatabaseConstants.SOCIALFEED_STORY_MAP_TABLE);
+		q.append(DatabaseConstants.JOIN_STORIES_ON_SOCIALFEED_MAP);
+		q.append(DatabaseConstants.JOIN_FEEDS_ON_STORIES);
+		q.append(" WHERE 1");
+		DatabaseConstants.appendStorySelectionGroupOrder(q, ReadFilter.ALL, StoryOrder.NEWEST, StateFilter.ALL, DatabaseConstants.STORY_TABLE + "." + DatabaseConstants.STORY_ID);
+		return q.toString();
+	}
+
+	private static String getRiverQuery(boolean paged) {
+		StringBuilder q = new StringBuilder(DatabaseConstants.MULTIFEED_STORIES_QUERY_BASE);
+		q.append(" FROM " + DatabaseConstants.SOCIAL_RIVER_TABLE);
+		q.append(DatabaseConstants.JOIN_STORIES_ON_SOCIAL_RIVER);
+		q.append(DatabaseConstants.JOIN_FEEDS_ON_STORIES);
+		q.append(" WHERE 1");
+		if (paged) q.append(" AND " + DatabaseConstants.getSocialRiverAfterKeySelection(StoryOrder.NEWEST));
+		DatabaseConstants.appendStorySelectionGroupOrder(q, ReadFilter.ALL, null, StateFilter.ALL, null);
+		q.append(" ORDER BY " + DatabaseConstants.getSocialRiverSortOrder(StoryOrder.NEWEST));
+		return q.toString();
+	}
+
+	private List<String> readRiverByPages() {
+		List<String> storyIds = new ArrayList<String>();
+		Cursor c = db.rawQuery(getRiverQuery(false) + " LIMIT " + PAGE_SIZE, null);
+		String q = getRiverQuery(true) + " LIMIT " + PAGE_SIZE;
+		while (true) {
+			int count = c.getCount();
+			String[] after = null;
+			while (c.moveToNext()) {
+				String timestamp = c.getString(c.getColumnIndexOrThrow(DatabaseConstants.STORY_TIMESTAMP));
+				String storyId = c.getString(c.getColumnIndexOrThrow(DatabaseConstants.STORY_ID));
+				storyIds.add(storyId);
+				after = new String[]{timestamp, timestamp, storyId};
+			}
+			c.close();
+			if (count < PAGE_SIZE) break;
+			c = db.rawQuery(q, after);
+		}
+		return storyIds;
+	}
+
+	private List<String> readAll(String q) {
+		List<String> storyIds = new ArrayList<String>();
+		Cursor c = db.rawQuery(q, null);
+		while (c.moveToNext()) {
+			storyIds.add(c.getString(c.getColumnIndexOrThrow(DatabaseConstants.STORY_ID)));
+		}
+		c.close();
+		return storyIds;
+	}
+
+	/**
+	 * Every other story is shared by SHARERS_PER_STORY users, so count stories make count share
+	 * mappings.  Every other shared story has the same timestamp as the one before it, so that
+	 * ties have to be broken by story ID.
+	 */
+	@Override
+	protected Story makeStory(int i) {
+		Story story = super.makeStory(i);
+		story.timestamp = i - (i % 4 == 2 ? 2 : 0);
+		if (i % 2 == 0) {
+			story.sharedUserIds = new String[SHARERS_PER_STORY];
+			for (int u = 0; u < SHARERS_PER_STORY; u++) {
+				story.sharedUserIds[u] = Integer.toString(1 + ((i + u) % 17));
+			}
+		}
+		return story;
+	}
+
+}
@@ -0,0 +1,159 @@
+package com.newsblur.test.database;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.newsblur.database.BlurDatabase;
+import com.newsblur.database.DatabaseConstants;
+import com.newsblur.database.StoryCodec;
+
+/**
+ * Checks that stored story bodies survive compression, and reports how much smaller each
+ * deflate level makes them against how long they take to decode, to choose a level by.
+ */
+public class StoryCodecTest extends AndroidTestCase {
+
+	private static final String TAG = "StoryCodecTest";
+
+	private static final int CORPUS_SIZE = 1000;
+	private static final int[] LEVELS = {1, 3, 6, 9};
+
+	public void testRoundTrip() {
+		String[] texts = {"", "x", "café – 日本", makeStory(7), makeStory(7) + makeStory(8) + makeStory(9)};
+		for (String text : texts) {
+			for (int level : LEVELS) {
+				assertEquals(text, StoryCodec.decode(StoryCodec.encode(text, level)));
+			}
+		}
+		assertNull(StoryCodec.encode(null));
+	}
+
+	public void testCorrupt() {
+		byte[] encoded = StoryCodec.encode(makeStory(1));
+		byte[] truncated = new byte[encoded.length - 4];
+		System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+		try {
+			StoryCodec.decode(truncated);
+			fail("decoded a truncated story");
+		} catch (IllegalArgumentException iae) {
+			; // expected
+		}
+		try {
+			StoryCodec.decode("<p>not encoded</p>".getBytes());
+			fail("decoded a story that was never encoded");
+		} catch (IllegalArgumentException iae) {
+			; // expected
+		}
+	}
+
+	/**
+	 * Compresses a corpus at each level, with and without the preset dictionary, and logs the
+	 * sizes and times.  The corpus is the stories stored on the device under test if there are
+	 * any, as the most realistic sample to hand, else generated ones.
+	 */
+	public void testSizeVersusLatency() {
+		List<String> corpus = loadStoredStories();
+		String source = "stored";
+		if (corpus.size() < 1) {
+			source = "generated";
+			for (int i = 0; i < CORPUS_SIZE; i++) {
+				corpus.add(makeStory(i));
+			}
+		}
+		long rawBytes = 0;
+		for (String text : corpus) {
+			rawBytes += text.getBytes().length;
+		}
+		Log.i(TAG, corpus.size() + " " + source + " stories, " + (rawBytes / 1024L) + "KiB raw");
+
+		for (int level : LEVELS) {
+			long plainBytes = 0;
+			for (String text : corpus) {
+				plainBytes += deflateWithoutDictionary(text, level);
+			}
+
+			List<byte[]> encoded = new ArrayList<byte[]>(corpus.size());
+			long encodedBytes = 0;
+			long start = System.nanoTime();
+			for (String text : corpus) {
+				byte[] e = StoryCodec.encode(text, level);
+				encoded.add(e);
+				encodedBytes += e.length;
+			}
+			long encodeNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (byte[] e : encoded) {
+				StoryCodec.decode(e);
+			}
+			long decodeNanos = System.nanoTime() - start;
+
+			Log.i(TAG, "level " + level + ": " + (encodedBytes / 1024L) + "KiB (" + ((100L * encodedBytes) / rawBytes) + "%), " +
+			           (plainBytes / 1024L) + "KiB without dictionary; " +
+			           ((encodeNanos / corpus.size()) / 1000L) + "us to encode and " +
+			           ((decodeNanos / corpus.size()) / 1000L) + "us to decode per story");
+			assertTrue(encodedBytes < rawBytes);
+		}
+	}
+
+	private List<String> loadStoredStories() {
+		List<String> stories = new ArrayList<String>();
+		File dbFile = getContext().getDatabasePath(BlurDatabase.DB_NAME);
+		if (!dbFile.exists()) return stories;
+		SQLiteDatabase db = SQLiteDatabase.openDatabase(dbFile.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+		try {
+			Cursor c = db.rawQuery("SELECT " + DatabaseConstants.STORY_CONTENT + " FROM " + DatabaseConstants.STORY_CONTENT_TABLE +
+			                       " WHERE " + DatabaseConstants.STORY_CONTENT + " IS NOT NULL LIMIT " + CORPUS_SIZE, null);
+			while (c.moveToNext()) {
+				String text = StoryCodec.decode(c, 0);
+				if (text != null) stories.add(text);
+			}
+			c.close();
+		} finally {
+			db.close();
+		}
+		return stories;
+	}
+
+	private static int deflateWithoutDictionary(String text, int level) {
+		Deflater deflater = new Deflater(level);
+		try {
+			deflater.setInput(text.getBytes());
+			deflater.finish();
+			byte[] buffer = new byte[4096];
+			int size = 0;
+			while (!deflater.finished()) {
+				size += deflater.deflate(buffer);
+			}
+			return size;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * A story shaped like a typical blog post in a feed: a few paragraphs with links, an image,
+	 * and the boilerplate that feed services append.
+	 */
+	private static String makeStory(int i) {
+		StringBuilder s = new StringBuilder();
+		s.append("<div class=\"entry\"><p><img alt=\"\" src=\"https://example").append(i % 37).append(".com/wp-content/uploads/2014/0").append(1 + (i % 9)).append("/photo-").append(i).append(".jpg\" width=\"640\" height=\"480\" /></p>\n");
+		for (int p = 0; p < 3 + (i % 5); p++) {
+			s.append("<p>Paragraph ").append(p).append(" of story ").append(i).append(", in which the author writes at some length about a topic of the day, ");
+			s.append("with <a href=\"https://www.example").append((i + p) % 53).append(".com/2014/").append(p).append("/a-linked-post-").append(i * 31 + p).append("/\" target=\"_blank\">a link</a> ");
+			s.append("to something related, and <em>some emphasis</em> on the point that matters most to them.</p>\n");
+		}
+		s.append("<p>The post <a href=\"https://example").append(i % 37).append(".com/?p=").append(i).append("\">Story ").append(i).append("</a> appeared first on Example.</p></div>");
+		s.append("<div class=\"feedflare\"><a href=\"http://feeds.feedburner.com/~ff/Example?a=").append(Integer.toHexString(i * 7919)).append("\"><img src=\"http://feeds.feedburner.com/~ff/Example?d=yIl2AUoC8zA\" border=\"0\"></img></a></div>");
+		s.append("<img src=\"http://feeds.feedburner.com/~r/Example/~4/").append(Integer.toHexString(i * 104729)).append("\" height=\"1\" width=\"1\" alt=\"\"/>");
+		return s.toString();
+	}
+
+}
@@ -0,0 +1,203 @@
+package com.newsblur.test.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import android.database.Cursor;
+
+import com.newsblur.database.BlurDatabaseHelper;
+import com.newsblur.database.DatabaseConstants;
+import com.newsblur.database.StoryWindowLoader;
+import com.newsblur.util.FeedSet;
+import com.newsblur.util.ReadFilter;
+import com.newsblur.util.StateFilter;
+import com.newsblur.util.StoryOrder;
+
+/**
+ * Checks that each hot story query is served by an index rather than a full scan of the
+ * stories table, by asking SQLite for its query plan.  The queries are built by the same
+ * code that builds them for BlurDatabaseHelper.
+ */
+public class StoryQueryPlanTest extends DatabaseTestCase {
+
+    public void testSingleFeedStories() {
+        List<String> plan = explain(BlurDatabaseHelper.getStoriesQuery(FeedSet.singleFeed("1"), StateFilter.SOME, ReadFilter.UNREAD, StoryOrder.NEWEST));
+        assertUsesIndex(plan, DatabaseConstants.STORY_FEED_TIMESTAMP_INDEX);
+        assertNoStoryScan(plan);
+        assertNoSort(plan);
+    }
+
+    public void testMultiFeedStories() {
+        List<String> plan = explain(BlurDatabaseHelper.getStoriesQuery(getFolder(), StateFilter.SOME, ReadFilter.UNREAD, StoryOrder.NEWEST));
+        assertUsesIndex(plan, DatabaseConstants.STORY_FEED_READ_SCORE_INDEX);
+        assertNoStoryScan(plan);
+    }
+
+    public void testFocusStories() {
+        List<String> plan = explain(BlurDatabaseHelper.getStoriesQuery(FeedSet.singleFeed("1"), StateFilter.BEST, ReadFilter.PURE_UNREAD, StoryOrder.NEWEST));
+        // the score filter should narrow the index range rather than be checked row by row
+        assertUsesIndex(plan, DatabaseConstants.STORY_FEED_READ_SCORE_INDEX + " (" + DatabaseConstants.STORY_FEED_ID + "=? AND " +
+                        DatabaseConstants.STORY_READ + "=? AND " + DatabaseConstants.STORY_SCORE + ">?)");
+        assertNoStoryScan(plan);
+    }
+
+    public void testAllStories() {
+        List<String> plan = explain(BlurDatabaseHelper.getStoriesQuery(FeedSet.allFeeds(), StateFilter.ALL, ReadFilter.ALL, StoryOrder.OLDEST));
+        assertUsesIndex(plan, DatabaseConstants.STORY_TIMESTAMP_INDEX);
+        assertNoSort(plan);
+    }
+
+    public void testStoriesPage() {
+        StoryWindowLoader.Key after = new StoryWindowLoader.Key(2000L, "a");
+        StoryWindowLoader.Key through = new StoryWindowLoader.Key(1000L, "b");
+        List<String> plan = explain(BlurDatabaseHelper.getStoriesPageQuery(FeedSet.singleFeed("1"), StateFilter.SOME, ReadFilter.UNREAD, StoryOrder.NEWEST, after, through, 100));
+        // both keys should bound the index range, so a page costs no more than its own stories
+        assertUsesIndex(plan, DatabaseConstants.STORY_FEED_TIMESTAMP_INDEX + " (" + DatabaseConstants.STORY_FEED_ID + "=? AND " +
+                        DatabaseConstants.STORY_TIMESTAMP + ">? AND " + DatabaseConstants.STORY_TIMESTAMP + "<?)");
+        assertNoSort(plan);
+    }
+
+    public void testAllStoriesPage() {
+        StoryWindowLoader.Key after = new StoryWindowLoader.Key(1000L, "a");
+        List<String> plan = explain(BlurDatabaseHelper.getStoriesPageQuery(FeedSet.allFeeds(), StateFilter.ALL, ReadFilter.ALL, StoryOrder.OLDEST, after, null, 100));
+        assertUsesIndex(plan, DatabaseConstants.STORY_TIMESTAMP_INDEX + " (" + DatabaseConstants.STORY_TIMESTAMP + ">?)");
+        assertNoSort(plan);
+    }
+
+    public void testSocialRiverPage() {
+        StoryWindowLoader.Key after = new StoryWindowLoader.Key(1000L, "a");
+        List<String> plan = explain(BlurDatabaseHelper.getStoriesPageQuery(FeedSet.allSocialFeeds(), StateFilter.SOME, ReadFilter.UNREAD, StoryOrder.NEWEST, after, null, 100));
+        // read in order off the river, with each story looked up by ID
+        assertUsesIndex(plan, DatabaseConstants.SOCIAL_RIVER_INDEX + " (" + DatabaseConstants.SOCIAL_RIVER_TIMESTAMP + "<?)");
+        assertNoStoryScan(plan);
+        assertNoSort(plan);
+    }
+
+    public void testSavedStories() {
+        List<String> plan = explain(BlurDatabaseHelper.getStoriesQuery(FeedSet.allSaved(), StateFilter.ALL, ReadFilter.ALL, StoryOrder.NEWEST));
+        assertUsesIndex(plan, DatabaseConstants.STORY_STARRED_INDEX);
+        assertUsesIndex(plan, DatabaseConstants.STORY_READ_THIS_SESSION_INDEX);
+        assertNoStoryScan(plan);
+    }
+
+    public void testStoryByHash() {
+        String q = "SELECT * FROM " + DatabaseConstants.STORY_TABLE +
+                   " WHERE " + DatabaseConstants.STORY_HASH + " = ?";
+        List<String> plan = explain(q, new String[]{"1:abc"});
+        assertUsesIndex(plan, DatabaseConstants.STORY_HASH_INDEX);
+        assertNoStoryScan(plan);
+    }
+
+    public void testSetStoryReadState() {
+        String q = "UPDATE " + DatabaseConstants.STORY_TABLE +
+                   " SET " + DatabaseConstants.STORY_READ + " = 1, " + DatabaseConstants.STORY_READ_THIS_SESSION + " = 1" +
+                   " WHERE " + DatabaseConstants.STORY_HASH + " = ?";
+        List<String> plan = explain(q, new String[]{"1:abc"});
+        assertUsesIndex(plan, DatabaseConstants.STORY_HASH_INDEX);
+        assertNoStoryScan(plan);
+    }
+
+    public void testStoryReadStates() {
+        String q = "SELECT " + DatabaseConstants.STORY_HASH + ", " + DatabaseConstants.STORY_READ +
+                   " FROM " + DatabaseConstants.STORY_TABLE;
+        List<String> plan = explain(q, null);
+        // this reads every story by design, but should never need to touch the table itself
+        assertUsesIndex(plan, "COVERING INDEX " + DatabaseConstants.STORY_HASH_INDEX);
+    }
+
+    public void testMarkStoriesRead() {
+        String q = "UPDATE " + DatabaseConstants.STORY_TABLE +
+                   " SET " + DatabaseConstants.STORY_READ + " = 1" +
+                   " WHERE " + BlurDatabaseHelper.getMarkStoriesReadSelection(getFolder(), 1000L, null);
+        List<String> plan = explain(q, null);
+        assertUsesIndex(plan, DatabaseConstants.STORY_FEED_TIMESTAMP_INDEX);
+        assertNoStoryScan(plan);
+    }
+
+    public void testUnreadCounts() {
+        List<String> plan = explain(BlurDatabaseHelper.getFeedUnreadCountsQuery(Arrays.asList("1", "2", "3")), null);
+        // counting should never need to touch the table itself
+        assertUsesIndex(plan, "COVERING INDEX " + DatabaseConstants.STORY_FEED_READ_SCORE_INDEX);
+        assertNoStoryScan(plan);
+    }
+
+    public void testCleanupCutoffs() {
+        List<String> plan = explain(BlurDatabaseHelper.getCleanupCutoffsQuery(500), null);
+        assertUsesIndex(plan, "COVERING INDEX " + DatabaseConstants.STORY_FEED_TIMESTAMP_INDEX);
+        assertNoStoryScan(plan);
+        assertNoSort(plan);
+    }
+
+    public void testCleanupStories() {
+        db.execSQL(BlurDatabaseHelper.CLEANUP_CUTOFF_TABLE_SQL);
+        String q = "DELETE FROM " + DatabaseConstants.STORY_TABLE +
+                   " WHERE " + BlurDatabaseHelper.getCleanupStoriesSelection(Arrays.asList("1", "2", "3"));
+        List<String> plan = explain(q, null);
+        assertUsesIndex(plan, DatabaseConstants.STORY_FEED_TIMESTAMP_INDEX);
+        assertNoStoryScan(plan);
+    }
+
+    public void testCleanupOldestStories() {
+        String q = "DELETE FROM " + DatabaseConstants.STORY_TABLE +
+                   " WHERE " + DatabaseConstants.STORY_ID + " IN (" + BlurDatabaseHelper.getOldestReadStoriesQuery() + ")";
+        List<String> plan = explain(q, null);
+        assertUsesIndex(plan, DatabaseConstants.STORY_TIMESTAMP_INDEX);
+        assertNoStoryScan(plan);
+        assertNoSort(plan);
+    }
+
+    public void testUpgradeCreatesIndices() {
+        db.execSQL("DROP INDEX " + DatabaseConstants.STORY_HASH_INDEX);
+        blurDatabase.onUpgrade(db, 2, 3);
+        Cursor c = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND name = ?", new String[]{DatabaseConstants.STORY_HASH_INDEX});
+        assertEquals(1, c.getCount());
+        c.close();
+    }
+
+    /** A folder of a few feeds, which is what the multi-feed queries are run for. */
+    private static FeedSet getFolder() {
+        return FeedSet.folder("folder", new HashSet<String>(Arrays.asList("1", "2", "3")));
+    }
+
+    private List<String> explain(BlurDatabaseHelper.StoryQuery q) {
+        return explain(q.sql, q.args);
+    }
+
+    private List<String> explain(String q, String[] args) {
+        Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + q, args);
+        List<String> details = new ArrayList<String>();
+        int detailIndex = c.getColumnIndexOrThrow("detail");
+        while (c.moveToNext()) {
+            details.add(c.getString(detailIndex));
+        }
+        c.close();
+        return details;
+    }
+
+    private static void assertUsesIndex(List<String> plan, String index) {
+        for (String detail : plan) {
+            if (detail.contains(index)) return;
+        }
+        fail("query plan does not use " + index + ": " + plan);
+    }
+
+    /** Fails if the stories table itself is scanned, rather than searched or read via an index. */
+    private static void assertNoStoryScan(List<String> plan) {
+        for (String detail : plan) {
+            if (detail.matches("SCAN (TABLE )?" + DatabaseConstants.STORY_TABLE + "( AS \\w+)?")) {
+                fail("query plan scans " + DatabaseConstants.STORY_TABLE + ": " + plan);
+            }
+        }
+    }
+
+    private static void assertNoSort(List<String> plan) {
+        for (String detail : plan) {
+            if (detail.contains("TEMP B-TREE")) {
+                fail("query plan needs a sort: " + plan);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.newsblur.test.database;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.util.Log;
+
+import com.newsblur.database.DatabaseConstants;
+import com.newsblur.domain.Story;
+
+/**
+ * Checks that the full-text index is kept in step with stored stories, and measures its size
+ * and how quickly it can be searched.
+ */
+public class StorySearchTest extends DatabaseTestCase {
+
+	private static final String TAG = "StorySearchTest";
+
+	private static final String[] WORDS = {"apple", "banana", "cherry", "damson", "elder", "fig", "grape", "hazel", "lemon", "mango"};
+
+	public void testSearch() {
+		insertStories(100);
+
+		// every tenth story has the rare word in its title, and two of those have it in their
+		// body too, so they rank first, newest first
+		List<String> hashes = dbHelper.searchStoryHashes("zucchini", 100);
+		assertEquals(10, hashes.size());
+		assertEquals("5:55", hashes.get(0));
+		assertEquals("5:5", hashes.get(1));
+
+		// terms match as prefixes, whatever else is typed around them
+		assertEquals(10, dbHelper.searchStoryHashes("\"zucch\" AND (", 100).size());
+		assertEquals(0, dbHelper.searchStoryHashes("-*()", 100).size());
+
+		// authors and tags are indexed too
+		assertEquals(50, dbHelper.searchStoryHashes("author1", 100).size());
+		assertEquals(10, dbHelper.searchStoryHashes("grape", 100).size());
+
+		// markup isn't
+		assertEquals(0, dbHelper.searchStoryHashes("strong", 100).size());
+	}
+
+	public void testStoryText() {
+		insertStories(10);
+		Map<String,String> texts = new HashMap<String,String>();
+		texts.put("3:3", "<p>the original text mentions a quince</p>");
+		dbHelper.putStoryTexts(texts);
+
+		List<String> hashes = dbHelper.searchStoryHashes("quince", 10);
+		assertEquals(1, hashes.size());
+		assertEquals("3:3", hashes.get(0));
+	}
+
+	public void testCleanup() {
+		insertStories(10);
+		db.delete(DatabaseConstants.STORY_TABLE, DatabaseConstants.STORY_HASH + " = ?", new String[]{"5:5"});
+
+		assertEquals(9, count("SELECT COUNT(*) FROM " + DatabaseConstants.STORY_SEARCH_TABLE));
+		assertEquals(0, dbHelper.searchStoryHashes("zucchini", 10).size());
+	}
+
+	public void testIndexUnsearchedStories() {
+		insertStories(100);
+		// as if stored before there was an index
+		db.execSQL("DELETE FROM " + DatabaseConstants.STORY_SEARCH_TABLE);
+		db.execSQL("UPDATE " + DatabaseConstants.STORY_TABLE + " SET " + DatabaseConstants.STORY_SEARCH_ID + " = NULL");
+
+		assertEquals(60, dbHelper.indexUnsearchedStories(60));
+		assertEquals(40, dbHelper.indexUnsearchedStories(60));
+		assertEquals(0, dbHelper.indexUnsearchedStories(60));
+		assertEquals(10, dbHelper.searchStoryHashes("zucchini", 100).size());
+	}
+
+	public void testBenchmark50k() {
+		if (!RUN_BENCHMARKS) return;
+		long start = System.nanoTime();
+		insertStories(50000);
+		long insert = System.nanoTime() - start;
+
+		long indexBytes = count("SELECT SUM(LENGTH(block)) FROM " + DatabaseConstants.STORY_SEARCH_TABLE + "_segments") +
+		                  count("SELECT SUM(LENGTH(root)) FROM " + DatabaseConstants.STORY_SEARCH_TABLE + "_segdir");
+		long contentBytes = count("SELECT SUM(LENGTH(c0title) + LENGTH(c1authors) + LENGTH(c2tags) + LENGTH(c3content)) FROM " + DatabaseConstants.STORY_SEARCH_TABLE + "_content");
+
+		start = System.nanoTime();
+		List<String> rare = dbHelper.searchStoryHashes("zucchini", 100);
+		long rareSearch = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		List<String> common = dbHelper.searchStoryHashes("banana", 100);
+		long commonSearch = System.nanoTime() - start;
+
+		Log.i(TAG, "indexed 50000 stories in " + (insert / 1000000L) + "ms: " + (indexBytes / 1024L) + "KiB of index over " + (contentBytes / 1024L) + "KiB of text");
+		Log.i(TAG, "searched in " + (rareSearch / 1000000L) + "ms for a rare word, " + (commonSearch / 1000000L) + "ms for a common one");
+		assertEquals(100, rare.size());
+		assertEquals(100, common.size());
+	}
+
+	/**
+	 * Story i is tagged and titled with WORDS[i % 10], and every tenth story also has a rare
+	 * word in its title.
+	 */
+	@Override
+	protected Story makeStory(int i) {
+		String word = WORDS[i % WORDS.length];
+		Story story = super.makeStory(i);
+		story.title = "A story about " + word + ((i % 10 == 5) ? " and zucchini" : "");
+		story.authors = "author" + (i % 2);
+		story.tags = new String[]{word, "fruit"};
+		story.content = "<p>Some <strong>words</strong> about " + word + ((i % 50 == 5) ? ", and more zucchini" : "") + ".</p>";
+		return story;
+	}
+
+}
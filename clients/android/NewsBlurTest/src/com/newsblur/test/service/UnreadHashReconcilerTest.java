@@ -0,0 +1,121 @@
+package com.newsblur.test.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import android.util.Log;
+
+import com.newsblur.service.UnreadHashReconciler;
+
+public class UnreadHashReconcilerTest extends TestCase {
+
+	private static final String TAG = "UnreadHashReconcilerTest";
+
+	// best-of runs for each benchmark size, to smooth out GC and JIT noise
+	private static final int BENCHMARK_REPEATS = 3;
+
+	public void testReconcile() {
+		Map<String,Boolean> local = new HashMap<String,Boolean>();
+		local.put("1:a", false);	// still unread
+		local.put("1:b", false);	// read elsewhere
+		local.put("1:c", true);		// already read
+		local.put("2:a", false);	// in an orphaned feed
+
+		Map<String,String[]> server = new HashMap<String,String[]>();
+		server.put("1", new String[] {"1:a", "1:d", "1:d"});
+		server.put("2", new String[] {"2:a", "2:b"});
+
+		Set<String> activeFeeds = new HashSet<String>(Arrays.asList("1"));
+
+		UnreadHashReconciler reconciler = new UnreadHashReconciler(local);
+		reconciler.reconcile(server, activeFeeds);
+
+		assertEquals(Arrays.asList("1:d"), reconciler.getHashesToFetch());
+		assertEquals(new HashSet<String>(Arrays.asList("1:b", "2:a")), new HashSet<String>(reconciler.getHashesToMarkRead()));
+	}
+
+	public void testReconcileEmpty() {
+		UnreadHashReconciler reconciler = new UnreadHashReconciler(new HashMap<String,Boolean>());
+		reconciler.reconcile(new HashMap<String,String[]>(), new HashSet<String>());
+		assertEquals(0, reconciler.getHashesToFetch().size());
+		assertEquals(0, reconciler.getHashesToMarkRead().size());
+	}
+
+	public void testBenchmark10k() {
+		benchmark(10000);
+	}
+
+	public void testBenchmark100k() {
+		benchmark(100000);
+	}
+
+	public void testBenchmark500k() {
+		benchmark(500000);
+	}
+
+	/**
+	 * Reconciles a synthetic account with the given number of server-side unread hashes spread
+	 * over many feeds, one of which is orphaned.  We have the newest 90% of them locally, half
+	 * read, plus a tail of local unreads the server no longer lists.
+	 */
+	private void benchmark(int hashCount) {
+		int feedCount = Math.max(2, hashCount / 200);
+		int localStart = hashCount / 10;
+		int localEnd = hashCount + (hashCount / 10);
+
+		Map<String,String[]> server = new HashMap<String,String[]>();
+		Map<String,Integer> fill = new HashMap<String,Integer>();
+		for (int feed = 0; feed < feedCount; feed++) {
+			int size = (hashCount / feedCount) + ((feed < (hashCount % feedCount)) ? 1 : 0);
+			server.put(Integer.toString(feed), new String[size]);
+			fill.put(Integer.toString(feed), 0);
+		}
+		Set<String> activeFeeds = new HashSet<String>();
+		for (int feed = 1; feed < feedCount; feed++) {
+			activeFeeds.add(Integer.toString(feed));
+		}
+
+		int expectedFetch = 0;
+		int expectedMarkRead = 0;
+		Map<String,Boolean> local = new HashMap<String,Boolean>();
+		for (int i = 0; i < localEnd; i++) {
+			String feedId = Integer.toString(i % feedCount);
+			String hash = feedId + ":" + Integer.toHexString(i);
+			boolean onServer = (i < hashCount);
+			boolean isLocal = (i >= localStart);
+			boolean read = ((i % 2) == 1);
+			boolean orphaned = feedId.equals("0");
+			if (onServer) {
+				int pos = fill.get(feedId);
+				server.get(feedId)[pos] = hash;
+				fill.put(feedId, pos + 1);
+			}
+			if (isLocal) local.put(hash, read);
+			if (onServer && !isLocal && !orphaned) expectedFetch++;
+			if (isLocal && !read && (!onServer || orphaned)) expectedMarkRead++;
+		}
+
+		long best = Long.MAX_VALUE;
+		UnreadHashReconciler reconciler = null;
+		for (int run = 0; run < BENCHMARK_REPEATS; run++) {
+			reconciler = new UnreadHashReconciler(local);
+			long start = System.nanoTime();
+			reconciler.reconcile(server, activeFeeds);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		List<String> toFetch = reconciler.getHashesToFetch();
+		List<String> toMarkRead = reconciler.getHashesToMarkRead();
+		Log.i(TAG, "reconciled " + hashCount + " hashes over " + feedCount + " feeds in " + (best / 1000000L) + "ms (best of " + BENCHMARK_REPEATS + "), fetch:" + toFetch.size() + " markRead:" + toMarkRead.size());
+
+		assertEquals(expectedFetch, toFetch.size());
+		assertEquals(expectedMarkRead, toMarkRead.size());
+	}
+
+}